@@ -0,0 +1,64 @@
+package com.wallpaper.management.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缩放基准测试：{@link ImageResampler}与Graphics2D双线性插值对比
+ * <p>
+ * 源图为3000x2000的TYPE_3BYTE_BGR（ImageIO解码JPEG的布局），内容为噪声和棋盘格，
+ * 目标尺寸覆盖缩略图、预览图和各档分辨率派生图。运行方式见pom.xml中的benchmark profile
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageResamplerBenchmark {
+
+    private static final int SOURCE_WIDTH = 3000;
+
+    private static final int SOURCE_HEIGHT = 2000;
+
+    /**
+     * 目标宽度，高度按源图比例计算
+     */
+    @Param({"320", "1280", "1920", "2560"})
+    private int width;
+
+    private int height;
+
+    private BufferedImage source;
+
+    @Setup
+    public void setup() {
+        height = (int) Math.round((double) width * SOURCE_HEIGHT / SOURCE_WIDTH);
+        source = new BufferedImage(SOURCE_WIDTH, SOURCE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(1);
+        for (int y = 0; y < SOURCE_HEIGHT; y++) {
+            for (int x = 0; x < SOURCE_WIDTH; x++) {
+                source.setRGB(x, y, ((x + y) & 1) == 0 ? 0xFFFFFF : random.nextInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public BufferedImage graphics2dBilinear() {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage lanczos3() {
+        return ImageResampler.resize(source, width, height, ImageResampler.Filter.LANCZOS3, false);
+    }
+}
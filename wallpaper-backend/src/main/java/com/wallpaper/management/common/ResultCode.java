@@ -40,6 +40,16 @@ public enum ResultCode {
      */
     PARAM_ERROR(400, "参数错误"),
 
+    /**
+     * 请求过于频繁
+     */
+    TOO_MANY_REQUESTS(429, "请求过于频繁，请稍后再试"),
+
+    /**
+     * 图片尺寸超过限制
+     */
+    IMAGE_TOO_LARGE(413, "图片尺寸超过限制"),
+
     /**
      * 用户名或密码错误
      */
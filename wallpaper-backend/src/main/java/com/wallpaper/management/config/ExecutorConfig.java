@@ -0,0 +1,143 @@
+package com.wallpaper.management.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池配置
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 文件输出线程池
+     * <p>
+     * 与Tomcat工作线程隔离，慢速客户端的下载只占用该线程池，不影响API请求；
+     * 队列有界，饱和时由调用方返回503。
+     *
+     * @param coreSize      核心线程数
+     * @param maxSize       最大线程数
+     * @param queueCapacity 队列容量
+     * @return 文件输出线程池
+     */
+    @Bean(name = "fileServeExecutor")
+    public ThreadPoolTaskExecutor fileServeExecutor(
+            @Value("${file.serve.async.core-size:16}") int coreSize,
+            @Value("${file.serve.async.max-size:64}") int maxSize,
+            @Value("${file.serve.async.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("file-io-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 存储分层迁移线程池
+     * <p>
+     * 负责将文件复制到热存储层，单线程顺序执行以限制对冷存储的读取压力；
+     * 队列满时直接丢弃，文件仍可从冷存储读取，之后再次被访问时会重新提交
+     *
+     * @param queueCapacity 队列容量
+     * @return 存储分层迁移线程池
+     */
+    @Bean(name = "fileTierExecutor")
+    public ThreadPoolTaskExecutor fileTierExecutor(
+            @Value("${file.storage.hot.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("file-tier-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        return executor;
+    }
+
+    /**
+     * 派生图生成线程池
+     * <p>
+     * 缩略图生成需要完整解码原图，CPU和内存开销大，线程数单独限制；
+     * 队列满时拒绝提交，记录仍为待处理，由恢复线程稍后重新提交
+     *
+     * @param threads       线程数
+     * @param queueCapacity 队列容量
+     * @return 派生图生成线程池
+     */
+    @Bean(name = "derivativeExecutor")
+    public ThreadPoolTaskExecutor derivativeExecutor(
+            @Value("${file.derivative.threads:2}") int threads,
+            @Value("${file.derivative.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("derivative-");
+        return executor;
+    }
+
+    /**
+     * 按需缩放线程池
+     * <p>
+     * 限制同时解码的图片数；队列满时拒绝，由调用方返回429
+     *
+     * @param threads       线程数
+     * @param queueCapacity 队列容量
+     * @return 按需缩放线程池
+     */
+    @Bean(name = "resizeExecutor")
+    public ThreadPoolTaskExecutor resizeExecutor(
+            @Value("${file.resize.threads:2}") int threads,
+            @Value("${file.resize.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("resize-");
+        return executor;
+    }
+
+    /**
+     * 雪碧图生成线程池
+     * <p>
+     * 雪碧图只是列表页的加速手段，单线程生成；队列满时拒绝，列表页下次被访问时再提交
+     *
+     * @param queueCapacity 队列容量
+     * @return 雪碧图生成线程池
+     */
+    @Bean(name = "spriteExecutor")
+    public ThreadPoolTaskExecutor spriteExecutor(@Value("${file.sprite.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("sprite-");
+        return executor;
+    }
+
+    /**
+     * 派生图批量重建线程池
+     * <p>
+     * 与上传触发的派生图线程池隔离，重建大批历史图片时不影响新上传的处理；
+     * 并行度即同时解码的图片数
+     *
+     * @param parallelism 并行度
+     * @return 派生图批量重建线程池
+     */
+    @Bean(name = "derivativeRebuildPool", destroyMethod = "shutdown")
+    public ForkJoinPool derivativeRebuildPool(@Value("${file.derivative.rebuild.parallelism:2}") int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("derivative-rebuild-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+}
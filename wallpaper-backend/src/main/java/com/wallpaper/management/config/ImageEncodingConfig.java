@@ -0,0 +1,45 @@
+package com.wallpaper.management.config;
+
+import com.wallpaper.management.util.ImageEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 图片编码配置
+ */
+@Configuration
+public class ImageEncodingConfig {
+
+    /**
+     * 派生图、缩略图、按需缩放结果和雪碧图的编码参数
+     *
+     * @param jpegQuality         JPEG质量（0-1）
+     * @param jpegProgressive     是否写出渐进式JPEG
+     * @param jpegOptimizeHuffman 是否优化哈夫曼表
+     * @param chromaSubsampling   色度抽样方式（444、422、420）
+     * @param pngCompressionLevel PNG压缩级别（0-9）
+     * @param pngReduceColors     PNG是否无损缩减颜色
+     * @param stripMetadata       是否去掉可选的元数据块
+     * @return 编码参数
+     */
+    @Bean
+    public ImageEncoder.Options imageEncoderOptions(
+            @Value("${file.encode.jpeg.quality:0.75}") float jpegQuality,
+            @Value("${file.encode.jpeg.progressive:true}") boolean jpegProgressive,
+            @Value("${file.encode.jpeg.optimize-huffman:true}") boolean jpegOptimizeHuffman,
+            @Value("${file.encode.jpeg.chroma-subsampling:420}") String chromaSubsampling,
+            @Value("${file.encode.png.compression-level:9}") int pngCompressionLevel,
+            @Value("${file.encode.png.reduce-colors:true}") boolean pngReduceColors,
+            @Value("${file.encode.strip-metadata:true}") boolean stripMetadata) {
+        ImageEncoder.Options options = new ImageEncoder.Options();
+        options.setJpegQuality(jpegQuality);
+        options.setJpegProgressive(jpegProgressive);
+        options.setJpegOptimizeHuffman(jpegOptimizeHuffman);
+        options.setChromaSubsampling(ImageEncoder.ChromaSubsampling.of(chromaSubsampling));
+        options.setPngCompressionLevel(pngCompressionLevel);
+        options.setPngReduceColors(pngReduceColors);
+        options.setStripMetadata(stripMetadata);
+        return options;
+    }
+}
@@ -1,31 +1,32 @@
 package com.wallpaper.management.controller;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.util.StrUtil;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.FileServeService;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.ImageResizeService;
+import com.wallpaper.management.service.ImageResizeService.Fit;
+import com.wallpaper.management.service.ThumbnailSpriteService;
+import com.wallpaper.management.service.WpWallpaperService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FilenameUtils;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.File;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * 文件控制器
@@ -37,111 +38,129 @@ import java.nio.file.Paths;
 @Slf4j
 public class FileController {
 
-    @Value("${file.upload.path}")
-    private String uploadPath;
-    
-    private static final String[] IMAGE_EXTENSIONS = {"jpg", "jpeg", "png", "gif", "webp"};
+    private final FileServeService fileServeService;
+    private final FileStorageService fileStorageService;
+    private final ImageResizeService imageResizeService;
+    private final WpWallpaperService wallpaperService;
+    private final ThumbnailSpriteService thumbnailSpriteService;
 
     /**
-     * 获取文件
+     * 按尺寸获取壁纸
+     * <p>
+     * 宽高分别向上取整到允许的档位，不放大原图；cover等比缩放后居中裁剪为目标尺寸，contain等比缩放到目标尺寸以内。
+     * 缩放结果缓存在磁盘上，可长期缓存
      *
-     * @param date 日期目录
-     * @param filename 文件名
+     * @param id 壁纸ID
+     * @param width 宽度，不传时按高度等比缩放
+     * @param height 高度，不传时按宽度等比缩放
+     * @param fit 缩放方式：cover或contain
      * @param request HTTP请求
-     * @return 文件响应
+     * @param response HTTP响应
      */
-    @Operation(summary = "获取文件")
-    @GetMapping("/{date}/{filename}")
-    public ResponseEntity<byte[]> getFile(
-            @Parameter(description = "日期目录", required = true) @PathVariable String date,
-            @Parameter(description = "文件名", required = true) @PathVariable String filename,
-            HttpServletRequest request) {
-        
-        // 构建文件路径
-        String filePath = date + "/" + filename;
-        Path path = Paths.get(uploadPath, filePath);
-        File file = path.toFile();
-        
-        // 检查文件是否存在
-        if (!file.exists()) {
-            log.error("文件不存在: {}", path);
-            return ResponseEntity.notFound().build();
-        }
-        
+    @Operation(summary = "按尺寸获取壁纸")
+    @GetMapping("/resize/{id}")
+    public void resize(
+            @Parameter(description = "壁纸ID", required = true) @PathVariable Long id,
+            @Parameter(description = "宽度") @RequestParam(name = "w", defaultValue = "0") int width,
+            @Parameter(description = "高度") @RequestParam(name = "h", defaultValue = "0") int height,
+            @Parameter(description = "缩放方式：cover或contain") @RequestParam(defaultValue = "contain") String fit,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         try {
-            // 读取文件内容
-            byte[] fileContent = Files.readAllBytes(path);
-            
-            // 判断是否为图片
-            String extension = FilenameUtils.getExtension(filename);
-            boolean isImage = StrUtil.isNotBlank(extension) && isImageExtension(extension);
-            
-            // 设置响应头
-            HttpHeaders headers = new HttpHeaders();
-            
-            if (isImage) {
-                // 图片类型设置Content-Type
-                headers.setContentType(getMediaType(extension));
-            } else {
-                // 下载文件设置Content-Disposition
-                String encodedFilename = URLEncoder.encode(filename, StandardCharsets.UTF_8.toString());
-                headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + encodedFilename + "\"");
+            Fit resizeFit;
+            try {
+                resizeFit = Fit.valueOf(fit.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "不支持的缩放方式: " + fit);
+            }
+            WpWallpaper wallpaper = wallpaperService.getById(id);
+            if (wallpaper == null) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            Path path = imageResizeService.resize(wallpaper, width, height, resizeFit);
+            fileServeService.serveFile(path.getFileName().toString(), path, request, response);
+        } catch (BusinessException e) {
+            response.setStatus(e.getCode());
+            if (e.getCode() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
             }
-            
-            headers.setContentLength(fileContent.length);
-            
-            return new ResponseEntity<>(fileContent, headers, HttpStatus.OK);
+        } catch (NoSuchFileException e) {
+            log.error("原图不存在: wallpaperId={}", id);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
         } catch (IOException e) {
-            log.error("读取文件失败: {}", path, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            log.error("缩放壁纸失败: wallpaperId={}", id, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
-    
+
     /**
-     * 判断是否为图片扩展名
+     * 获取列表页缩略图雪碧图
+     * <p>
+     * 文件名是内容摘要，可长期缓存
      *
-     * @param extension 扩展名
-     * @return 是否为图片
+     * @param name 雪碧图文件名
+     * @param request HTTP请求
+     * @param response HTTP响应
      */
-    private boolean isImageExtension(String extension) {
-        if (StrUtil.isBlank(extension)) {
-            return false;
-        }
-        
-        String lowerExt = extension.toLowerCase();
-        for (String imageExt : IMAGE_EXTENSIONS) {
-            if (imageExt.equals(lowerExt)) {
-                return true;
+    @Operation(summary = "获取缩略图雪碧图")
+    @GetMapping("/sprite/{name}")
+    public void sprite(
+            @Parameter(description = "雪碧图文件名", required = true) @PathVariable String name,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        try {
+            Path path = thumbnailSpriteService.resolve(name);
+            fileServeService.serveFile(name, path, request, response);
+        } catch (NoSuchFileException e) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+        } catch (IOException e) {
+            log.error("读取雪碧图失败: {}", name, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
             }
         }
-        
-        return false;
     }
-    
+
     /**
-     * 根据扩展名获取媒体类型
+     * 获取文件
+     * <p>
+     * 同时支持"日期目录/文件名"平铺布局和分层布局；布局迁移期间，
+     * 按请求路径找不到文件时再按另一种布局查找一次。热存储有副本时优先从热存储读取
      *
-     * @param extension 扩展名
-     * @return 媒体类型
+     * @param requestPath 文件相对路径
+     * @param request HTTP请求
+     * @param response HTTP响应
      */
-    private MediaType getMediaType(String extension) {
-        if (StrUtil.isBlank(extension)) {
-            return MediaType.APPLICATION_OCTET_STREAM;
+    @Operation(summary = "获取文件")
+    @GetMapping("/{*filePath}")
+    public void getFile(
+            @Parameter(description = "文件相对路径", required = true) @PathVariable("filePath") String requestPath,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+
+        String filePath = fileStorageService.normalize(requestPath);
+        if (filePath == null) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
         }
-        
-        switch (extension.toLowerCase()) {
-            case "jpg":
-            case "jpeg":
-                return MediaType.IMAGE_JPEG;
-            case "png":
-                return MediaType.IMAGE_PNG;
-            case "gif":
-                return MediaType.IMAGE_GIF;
-            case "webp":
-                // WebP没有标准MediaType，使用通用图片类型
-                return MediaType.valueOf("image/webp");
-            default:
-                return MediaType.APPLICATION_OCTET_STREAM;
+
+        try {
+            // 流式输出文件内容，不再整体读入内存
+            fileServeService.serveStoredFile(filePath, request, response, null);
+        } catch (NoSuchFileException e) {
+            log.error("文件不存在: {}", filePath);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+        } catch (IOException e) {
+            log.error("读取文件失败: {}", filePath, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
-} 
\ No newline at end of file
+}
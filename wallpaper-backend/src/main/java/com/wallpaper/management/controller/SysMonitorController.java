@@ -0,0 +1,191 @@
+package com.wallpaper.management.controller;
+
+import com.wallpaper.management.common.Result;
+import com.wallpaper.management.service.BandwidthShapingService;
+import com.wallpaper.management.service.ChunkedUploadService;
+import com.wallpaper.management.service.DerivativeService;
+import com.wallpaper.management.service.DuplicateDetectionService;
+import com.wallpaper.management.service.FileCacheService;
+import com.wallpaper.management.service.FileServeService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.service.ImageResizeService;
+import com.wallpaper.management.service.ThumbnailSpriteService;
+import com.wallpaper.management.service.WpDownloadRecordService;
+import com.wallpaper.management.service.ZipDownloadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.apache.shiro.authz.annotation.RequiresRoles;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 系统监控控制器
+ */
+@Tag(name = "系统监控")
+@RestController
+@RequestMapping("/monitor")
+@RequiredArgsConstructor
+public class SysMonitorController {
+
+    private final FileCacheService fileCacheService;
+    private final FileServeService fileServeService;
+    private final FileTierService fileTierService;
+    private final WpDownloadRecordService downloadRecordService;
+    private final ZipDownloadService zipDownloadService;
+    private final BandwidthShapingService bandwidthShapingService;
+    private final DerivativeService derivativeService;
+    private final ImageResizeService imageResizeService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final ThumbnailSpriteService thumbnailSpriteService;
+    private final ImageDecodeService imageDecodeService;
+    private final ChunkedUploadService chunkedUploadService;
+
+    /**
+     * 获取文件缓存统计信息
+     *
+     * @return 命中、未命中、淘汰等计数
+     */
+    @Operation(summary = "获取文件缓存统计信息")
+    @GetMapping("/file-cache")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> fileCacheStats() {
+        return Result.success(fileCacheService.getStats());
+    }
+
+    /**
+     * 获取文件输出线程池统计信息
+     *
+     * @return 活跃线程、队列长度、拒绝次数等
+     */
+    @Operation(summary = "获取文件输出线程池统计信息")
+    @GetMapping("/file-executor")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> fileExecutorStats() {
+        return Result.success(fileServeService.getAsyncStats());
+    }
+
+    /**
+     * 获取存储分层统计信息
+     *
+     * @return 热/冷存储命中、提升、淘汰等计数
+     */
+    @Operation(summary = "获取存储分层统计信息")
+    @GetMapping("/file-tier")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> fileTierStats() {
+        return Result.success(fileTierService.getStats());
+    }
+
+    /**
+     * 获取下载记录队列统计信息
+     *
+     * @return 排队、写入、丢弃等计数
+     */
+    @Operation(summary = "获取下载记录队列统计信息")
+    @GetMapping("/download-record")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> downloadRecordStats() {
+        return Result.success(downloadRecordService.getStats());
+    }
+
+    /**
+     * 获取打包下载统计信息
+     *
+     * @return 进行中、完成、限流次数及输出字节数
+     */
+    @Operation(summary = "获取打包下载统计信息")
+    @GetMapping("/zip-download")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> zipDownloadStats() {
+        return Result.success(zipDownloadService.getStats());
+    }
+
+    /**
+     * 获取下载带宽整形统计信息
+     *
+     * @return 放行、限速、拒绝次数及积压最多的客户端
+     */
+    @Operation(summary = "获取下载带宽整形统计信息")
+    @GetMapping("/bandwidth")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> bandwidthStats() {
+        return Result.success(bandwidthShapingService.getStats());
+    }
+
+    /**
+     * 获取派生图生成统计信息
+     *
+     * @return 排队、成功、重试、失败计数及各状态的记录数
+     */
+    @Operation(summary = "获取派生图生成统计信息")
+    @GetMapping("/derivative")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> derivativeStats() {
+        return Result.success(derivativeService.getStats());
+    }
+
+    /**
+     * 获取按需缩放缓存统计信息
+     *
+     * @return 命中、合并、生成、拒绝及淘汰计数
+     */
+    @Operation(summary = "获取按需缩放缓存统计信息")
+    @GetMapping("/resize")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> resizeStats() {
+        return Result.success(imageResizeService.getStats());
+    }
+
+    /**
+     * 获取重复壁纸检测统计信息
+     *
+     * @return 索引大小、检测和标记次数及平均查询耗时
+     */
+    @Operation(summary = "获取重复壁纸检测统计信息")
+    @GetMapping("/duplicate")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> duplicateStats() {
+        return Result.success(duplicateDetectionService.getStats());
+    }
+
+    /**
+     * 获取缩略图雪碧图统计信息
+     *
+     * @return 命中、生成、复用和解码的格子数及淘汰计数
+     */
+    @Operation(summary = "获取缩略图雪碧图统计信息")
+    @GetMapping("/sprite")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> spriteStats() {
+        return Result.success(thumbnailSpriteService.getStats());
+    }
+
+    /**
+     * 获取图片解码预算统计信息
+     *
+     * @return 预算占用、排队数、超时和超限拒绝计数
+     */
+    @Operation(summary = "获取图片解码预算统计信息")
+    @GetMapping("/decode")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> decodeStats() {
+        return Result.success(imageDecodeService.getStats());
+    }
+
+    /**
+     * 获取分片上传统计信息
+     *
+     * @return 未完成的上传数、已接收字节数、校验失败和完成、取消、过期计数
+     */
+    @Operation(summary = "获取分片上传统计信息")
+    @GetMapping("/upload")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> uploadStats() {
+        return Result.success(chunkedUploadService.getStats());
+    }
+}
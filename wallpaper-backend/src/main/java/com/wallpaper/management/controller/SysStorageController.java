@@ -0,0 +1,169 @@
+package com.wallpaper.management.controller;
+
+import com.wallpaper.management.common.Result;
+import com.wallpaper.management.service.DerivativeRebuildService;
+import com.wallpaper.management.service.DerivativeService;
+import com.wallpaper.management.service.FileLayoutMigrationService;
+import com.wallpaper.management.service.WpWallpaperColorService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.apache.shiro.authz.annotation.RequiresRoles;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 文件存储管理控制器
+ */
+@Tag(name = "文件存储管理")
+@RestController
+@RequestMapping("/storage")
+@RequiredArgsConstructor
+public class SysStorageController {
+
+    private final FileLayoutMigrationService fileLayoutMigrationService;
+    private final DerivativeService derivativeService;
+    private final DerivativeRebuildService derivativeRebuildService;
+    private final WpWallpaperColorService wallpaperColorService;
+
+    /**
+     * 启动文件布局迁移
+     *
+     * @return 迁移进度
+     */
+    @Operation(summary = "启动文件布局迁移")
+    @PostMapping("/layout-migration")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> startLayoutMigration() {
+        if (!fileLayoutMigrationService.start()) {
+            return Result.error("迁移任务正在运行");
+        }
+        return Result.success(fileLayoutMigrationService.getProgress());
+    }
+
+    /**
+     * 停止文件布局迁移
+     *
+     * @return 迁移进度
+     */
+    @Operation(summary = "停止文件布局迁移")
+    @DeleteMapping("/layout-migration")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> stopLayoutMigration() {
+        fileLayoutMigrationService.stop();
+        return Result.success(fileLayoutMigrationService.getProgress());
+    }
+
+    /**
+     * 获取文件布局迁移进度
+     *
+     * @return 迁移进度
+     */
+    @Operation(summary = "获取文件布局迁移进度")
+    @GetMapping("/layout-migration")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> layoutMigrationProgress() {
+        return Result.success(fileLayoutMigrationService.getProgress());
+    }
+
+    /**
+     * 重新生成处理失败的派生图
+     *
+     * @return 重置为待处理的记录数
+     */
+    @Operation(summary = "重新生成处理失败的派生图")
+    @PostMapping("/derivative/retry")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Integer> retryFailedDerivatives() {
+        return Result.success(derivativeService.retryFailed());
+    }
+
+    /**
+     * 启动派生图批量重建，修改缩略图尺寸或编码参数后使用
+     *
+     * @param restart 是否忽略断点从头开始
+     * @return 重建进度
+     */
+    @Operation(summary = "启动派生图批量重建")
+    @PostMapping("/derivative/rebuild")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> startDerivativeRebuild(
+            @Parameter(description = "是否忽略断点从头开始") @RequestParam(defaultValue = "false") boolean restart) {
+        if (!derivativeRebuildService.start(restart)) {
+            return Result.error("重建任务正在运行");
+        }
+        return Result.success(derivativeRebuildService.getProgress());
+    }
+
+    /**
+     * 停止派生图批量重建，保留断点
+     *
+     * @return 重建进度
+     */
+    @Operation(summary = "停止派生图批量重建")
+    @DeleteMapping("/derivative/rebuild")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> stopDerivativeRebuild() {
+        derivativeRebuildService.stop();
+        return Result.success(derivativeRebuildService.getProgress());
+    }
+
+    /**
+     * 获取派生图批量重建进度
+     *
+     * @return 重建进度，含吞吐量、预计剩余秒数和最近失败的文件内容ID
+     */
+    @Operation(summary = "获取派生图批量重建进度")
+    @GetMapping("/derivative/rebuild")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> derivativeRebuildProgress() {
+        return Result.success(derivativeRebuildService.getProgress());
+    }
+
+    /**
+     * 启动历史壁纸的调色板和感知哈希回填
+     *
+     * @return 回填进度
+     */
+    @Operation(summary = "启动调色板和感知哈希回填")
+    @PostMapping("/color-backfill")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> startColorBackfill() {
+        if (!wallpaperColorService.startBackfill()) {
+            return Result.error("回填任务正在运行");
+        }
+        return Result.success(wallpaperColorService.getBackfillProgress());
+    }
+
+    /**
+     * 停止调色板回填
+     *
+     * @return 回填进度
+     */
+    @Operation(summary = "停止调色板回填")
+    @DeleteMapping("/color-backfill")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> stopColorBackfill() {
+        wallpaperColorService.stopBackfill();
+        return Result.success(wallpaperColorService.getBackfillProgress());
+    }
+
+    /**
+     * 获取调色板回填进度
+     *
+     * @return 回填进度
+     */
+    @Operation(summary = "获取调色板回填进度")
+    @GetMapping("/color-backfill")
+    @RequiresRoles("ROLE_ADMIN")
+    public Result<Map<String, Object>> colorBackfillProgress() {
+        return Result.success(wallpaperColorService.getBackfillProgress());
+    }
+}
@@ -0,0 +1,136 @@
+package com.wallpaper.management.controller;
+
+import com.wallpaper.management.common.Result;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.ChunkedUploadService;
+import com.wallpaper.management.service.WpWallpaperService;
+import com.wallpaper.management.utils.ShiroUtil;
+import com.wallpaper.management.vo.UploadSessionVO;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 分片上传控制器
+ * <p>
+ * 大文件按分片上传：先创建上传获得uploadId和分片大小，各分片可并行、乱序上传，
+ * 中断后查询已接收的分片只补传缺失部分，全部分片到齐后完成上传，之后与普通上传流程相同
+ */
+@Tag(name = "分片上传")
+@RestController
+@RequestMapping("/wallpaper/upload")
+@RequiredArgsConstructor
+@Validated
+public class WpUploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+    private final WpWallpaperService wallpaperService;
+
+    /**
+     * 创建分片上传
+     *
+     * @param fileName 原始文件名
+     * @param fileSize 文件大小（字节）
+     * @param sha256   整个文件的SHA-256，完成时校验
+     * @return 上传会话
+     */
+    @Operation(summary = "创建分片上传")
+    @PostMapping("/init")
+    @RequiresPermissions("wallpaper:upload")
+    public Result<UploadSessionVO> init(
+            @Parameter(description = "原始文件名", required = true) @RequestParam String fileName,
+            @Parameter(description = "文件大小（字节）", required = true) @RequestParam Long fileSize,
+            @Parameter(description = "整个文件的SHA-256") @RequestParam(required = false) String sha256) {
+        return Result.success(chunkedUploadService.init(fileName, fileSize, sha256, ShiroUtil.getCurrentUserId()));
+    }
+
+    /**
+     * 查询分片上传进度
+     *
+     * @param uploadId 上传ID
+     * @return 上传会话，包含已接收的分片序号
+     */
+    @Operation(summary = "查询分片上传进度")
+    @GetMapping("/{uploadId}")
+    @RequiresPermissions("wallpaper:upload")
+    public Result<UploadSessionVO> get(
+            @Parameter(description = "上传ID", required = true) @PathVariable String uploadId) {
+        return Result.success(chunkedUploadService.getSession(uploadId, ShiroUtil.getCurrentUserId()));
+    }
+
+    /**
+     * 上传分片
+     * <p>
+     * 请求体为分片原始内容，除最后一个分片外长度必须等于分片大小；重复上传同一分片会覆盖之前的内容
+     *
+     * @param uploadId 上传ID
+     * @param index    分片序号，从0开始
+     * @param sha256   分片内容的SHA-256
+     * @param request  HTTP请求
+     * @return 上传会话
+     */
+    @Operation(summary = "上传分片")
+    @PutMapping("/{uploadId}/chunks/{index}")
+    @RequiresPermissions("wallpaper:upload")
+    public Result<UploadSessionVO> uploadChunk(
+            @Parameter(description = "上传ID", required = true) @PathVariable String uploadId,
+            @Parameter(description = "分片序号", required = true) @PathVariable Integer index,
+            @Parameter(description = "分片内容的SHA-256", required = true) @RequestHeader("X-Chunk-Sha256") String sha256,
+            HttpServletRequest request) {
+        try (InputStream input = request.getInputStream()) {
+            return Result.success(chunkedUploadService.writeChunk(uploadId, index, sha256, input, ShiroUtil.getCurrentUserId()));
+        } catch (IOException e) {
+            throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), "分片接收中断，请重新上传该分片");
+        }
+    }
+
+    /**
+     * 完成分片上传
+     *
+     * @param uploadId     上传ID
+     * @param wallpaper    壁纸信息
+     * @param tagIds       标签ID列表
+     * @param uploadUserId 上传用户ID
+     * @return 结果
+     */
+    @Operation(summary = "完成分片上传")
+    @PostMapping("/{uploadId}/complete")
+    @RequiresPermissions("wallpaper:upload")
+    public Result<WpWallpaper> complete(
+            @Parameter(description = "上传ID", required = true) @PathVariable String uploadId,
+            @Parameter(description = "壁纸信息", required = true) @Valid WpWallpaper wallpaper,
+            @Parameter(description = "标签ID列表") @RequestParam(required = false, value = "tagIds") List<Long> tagIds,
+            @Parameter(description = "上传用户ID", required = true) @RequestParam Long uploadUserId) {
+        WpWallpaper uploadedWallpaper = chunkedUploadService.complete(uploadId, wallpaper, tagIds, uploadUserId,
+                ShiroUtil.getCurrentUserId());
+        wallpaperService.updateWallpaperTagCountByWallpaperId(uploadedWallpaper.getId());
+        return Result.success(uploadedWallpaper, "上传成功");
+    }
+
+    /**
+     * 取消分片上传
+     *
+     * @param uploadId 上传ID
+     * @return 结果
+     */
+    @Operation(summary = "取消分片上传")
+    @DeleteMapping("/{uploadId}")
+    @RequiresPermissions("wallpaper:upload")
+    public Result<Void> abort(
+            @Parameter(description = "上传ID", required = true) @PathVariable String uploadId) {
+        chunkedUploadService.abort(uploadId, ShiroUtil.getCurrentUserId());
+        return Result.success();
+    }
+}
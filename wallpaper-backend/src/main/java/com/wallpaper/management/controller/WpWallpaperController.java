@@ -1,32 +1,72 @@
 package com.wallpaper.management.controller;
 
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.wallpaper.management.common.Result;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpFileDerivative;
 import com.wallpaper.management.entity.WpTag;
 import com.wallpaper.management.entity.WpWallpaper;
 import com.wallpaper.management.entity.WpWallpaperTag;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.DuplicateDetectionService;
+import com.wallpaper.management.service.FileServeService;
+import com.wallpaper.management.service.WpFileBlobService;
+import com.wallpaper.management.service.ThumbnailSpriteService;
 import com.wallpaper.management.service.WpCategoryService;
+import com.wallpaper.management.service.WpDownloadRecordService;
 import com.wallpaper.management.service.WpTagService;
 import com.wallpaper.management.service.WpWallpaperService;
 import com.wallpaper.management.service.WpWallpaperTagService;
+import com.wallpaper.management.service.ZipDownloadService;
+import com.wallpaper.management.util.BlurHash;
+import com.wallpaper.management.util.ColorPalette;
+import com.wallpaper.management.util.ImageIngest;
 import com.wallpaper.management.util.ImageUtils;
+import com.wallpaper.management.utils.ShiroUtil;
+import com.wallpaper.management.vo.ImageVariantVO;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.validation.BindException;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -40,14 +80,30 @@ import java.util.stream.Collectors;
 @Validated
 public class WpWallpaperController {
 
+    /**
+     * 上传请求中表单字段的总大小上限
+     */
+    private static final long FORM_FIELDS_MAX_SIZE = 1024 * 1024;
+
     private final WpWallpaperService wallpaperService;
     private final WpCategoryService categoryService;
     private final WpTagService tagService;
     private final WpWallpaperTagService wallpaperTagService;
+    private final WpDownloadRecordService downloadRecordService;
+    private final FileServeService fileServeService;
+    private final ZipDownloadService zipDownloadService;
+    private final WpFileBlobService fileBlobService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final ThumbnailSpriteService thumbnailSpriteService;
+    
+    private final Validator validator;
     
     @Value("${file.upload.base-url}")
     private String baseUrl;
 
+    @Value("${file.upload.max-size}")
+    private long maxSize;
+
     /**
      * 分页查询壁纸列表
      *
@@ -56,6 +112,7 @@ public class WpWallpaperController {
      * @param categoryId 分类ID
      * @param tagId      标签ID
      * @param keyword    关键词
+     * @param color      颜色分类名称，可选值见/wallpaper/colors
      * @return 结果
      */
     @Operation(summary = "分页查询壁纸列表")
@@ -65,15 +122,40 @@ public class WpWallpaperController {
             @Parameter(description = "页大小", required = true) @RequestParam(defaultValue = "10") Integer pageSize,
             @Parameter(description = "分类ID") @RequestParam(required = false) Long categoryId,
             @Parameter(description = "标签ID") @RequestParam(required = false) Long tagId,
-            @Parameter(description = "关键词") @RequestParam(required = false) String keyword) {
-        IPage<WpWallpaper> pageResult = wallpaperService.pageWallpapers(page, pageSize, categoryId, tagId, keyword);
+            @Parameter(description = "关键词") @RequestParam(required = false) String keyword,
+            @Parameter(description = "颜色分类，如red、blue") @RequestParam(required = false) String color) {
+        IPage<WpWallpaper> pageResult = wallpaperService.pageWallpapers(page, pageSize, categoryId, tagId, keyword, color);
         
         // 填充附加信息
         enhanceWallpaperList(pageResult.getRecords());
+
+        // 搜索结果不固定，只为列表页生成雪碧图
+        if (StrUtil.isBlank(keyword)) {
+            thumbnailSpriteService.attach("page:" + categoryId + ":" + tagId + ":" + color + ":" + page + ":" + pageSize,
+                    pageResult.getRecords());
+        }
         
         return Result.success(pageResult);
     }
 
+    /**
+     * 获取可用于筛选的颜色分类
+     *
+     * @return 结果，key为筛选参数，hex为展示用的代表色
+     */
+    @Operation(summary = "获取颜色分类")
+    @GetMapping("/colors")
+    public Result<List<Map<String, String>>> colors() {
+        List<Map<String, String>> colors = new ArrayList<>();
+        for (ColorPalette.Bucket bucket : ColorPalette.Bucket.values()) {
+            Map<String, String> color = new LinkedHashMap<>();
+            color.put("key", bucket.getKey());
+            color.put("hex", bucket.getHex());
+            colors.add(color);
+        }
+        return Result.success(colors);
+    }
+
     /**
      * 获取壁纸详情
      *
@@ -96,24 +178,64 @@ public class WpWallpaperController {
 
     /**
      * 上传壁纸
+     * <p>
+     * 不经过容器的multipart缓冲，逐个读取请求中的各部分：文件部分（字段名file）直接流式写入上传目录，
+     * 同时计算摘要并解析格式和宽高；其余表单字段（壁纸信息、tagIds、uploadUserId）可在文件前后任意位置
      *
-     * @param file       壁纸文件
-     * @param wallpaper  壁纸信息
-     * @param tagIds     标签ID列表
-     * @param uploadUserId 上传用户ID
+     * @param request HTTP请求
      * @return 结果
+     * @throws BindException 壁纸信息绑定或校验失败
      */
-    @Operation(summary = "上传壁纸")
+    @Operation(summary = "上传壁纸", description = "multipart/form-data：file为壁纸文件，其余字段为壁纸信息、tagIds和uploadUserId")
     @PostMapping("/upload")
     @RequiresPermissions("wallpaper:upload")
-    public Result<WpWallpaper> upload(
-            @Parameter(description = "壁纸文件", required = true) @RequestParam MultipartFile file,
-            @Parameter(description = "壁纸信息", required = true) @Valid WpWallpaper wallpaper,
-            @Parameter(description = "标签ID列表") @RequestParam(required = false,value = "tagIds") List<Long> tagIds,
-            @Parameter(description = "上传用户ID", required = true) @RequestParam Long uploadUserId) {
-        WpWallpaper uploadedWallpaper = wallpaperService.uploadWallpaper(file, wallpaper, tagIds, uploadUserId);
-        wallpaperService.updateWallpaperTagCountByWallpaperId(uploadedWallpaper.getId());
-        return Result.success(uploadedWallpaper, "上传成功");
+    public Result<WpWallpaper> upload(HttpServletRequest request) throws BindException {
+        if (!ServletFileUpload.isMultipartContent(request)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "请使用multipart/form-data上传");
+        }
+        ServletFileUpload parser = new ServletFileUpload();
+        // 文件大小在接收时检查，这里只限制整个请求，避免表单字段过大
+        parser.setSizeMax(maxSize + FORM_FIELDS_MAX_SIZE);
+        parser.setHeaderEncoding(StandardCharsets.UTF_8.name());
+
+        MultiValueMap<String, String> fields = new LinkedMultiValueMap<>();
+        ImageIngest.Result upload = null;
+        String originalFilename = null;
+        try {
+            FileItemIterator items = parser.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                try (InputStream input = item.openStream()) {
+                    if (item.isFormField()) {
+                        fields.add(item.getFieldName(), Streams.asString(input, StandardCharsets.UTF_8.name()));
+                    } else if ("file".equals(item.getFieldName()) && upload == null) {
+                        originalFilename = item.getName();
+                        upload = wallpaperService.receiveFile(input, originalFilename);
+                    }
+                }
+            }
+            if (upload == null) {
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件不能为空");
+            }
+
+            WpWallpaper wallpaper = bindWallpaper(fields);
+            if (wallpaper.getUploadUserId() == null) {
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "上传用户ID不能为空");
+            }
+            WpWallpaper uploadedWallpaper = wallpaperService.uploadWallpaper(upload, originalFilename, wallpaper,
+                    wallpaper.getTagIds(), wallpaper.getUploadUserId());
+            wallpaperService.updateWallpaperTagCountByWallpaperId(uploadedWallpaper.getId());
+            return Result.success(uploadedWallpaper, "上传成功");
+        } catch (FileUploadBase.SizeLimitExceededException e) {
+            throw new BusinessException(ResultCode.FILE_SIZE_ERROR);
+        } catch (FileUploadException | IOException e) {
+            throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), e.getMessage());
+        } finally {
+            // 存储成功时临时文件已被移走，其余情况在这里清理
+            if (upload != null) {
+                FileUtil.del(upload.getFile());
+            }
+        }
     }
 
     /**
@@ -126,7 +248,7 @@ public class WpWallpaperController {
     @DeleteMapping("/{id}")
     @RequiresPermissions("wallpaper:edit")
     public Result<Boolean> delete(@Parameter(description = "壁纸ID", required = true) @PathVariable Long id) {
-        boolean result = wallpaperService.removeById(id);
+        boolean result = wallpaperService.deleteWallpaper(id);
         return Result.success(result, "删除成功");
     }
 
@@ -167,11 +289,65 @@ public class WpWallpaperController {
         return Result.success(result, "审核成功");
     }
 
+    /**
+     * 分页查询待审核的疑似重复壁纸
+     *
+     * @param page     页码
+     * @param pageSize 页大小
+     * @return 结果，duplicateOriginal为疑似重复的已有壁纸
+     */
+    @Operation(summary = "分页查询待审核的疑似重复壁纸")
+    @GetMapping("/duplicates")
+    @RequiresPermissions("wallpaper:audit")
+    public Result<IPage<WpWallpaper>> duplicates(
+            @Parameter(description = "页码", required = true) @RequestParam(defaultValue = "1") Integer page,
+            @Parameter(description = "页大小", required = true) @RequestParam(defaultValue = "10") Integer pageSize) {
+        IPage<WpWallpaper> pageResult = duplicateDetectionService.pageDuplicates(page, pageSize);
+        enhanceWallpaperList(pageResult.getRecords());
+        enhanceWallpaperList(pageResult.getRecords().stream()
+                .map(WpWallpaper::getDuplicateOriginal)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        return Result.success(pageResult);
+    }
+
+    /**
+     * 查找相似壁纸
+     *
+     * @param id          壁纸ID
+     * @param maxDistance 最大汉明距离
+     * @return 结果，按距离升序，duplicateDistance为与该壁纸的距离
+     */
+    @Operation(summary = "查找相似壁纸")
+    @GetMapping("/{id}/similar")
+    @RequiresPermissions("wallpaper:audit")
+    public Result<List<WpWallpaper>> similar(
+            @Parameter(description = "壁纸ID", required = true) @PathVariable Long id,
+            @Parameter(description = "最大汉明距离（0-15）") @RequestParam(required = false) Integer maxDistance) {
+        List<WpWallpaper> wallpapers = duplicateDetectionService.findSimilar(id, maxDistance);
+        enhanceWallpaperList(wallpapers);
+        return Result.success(wallpapers);
+    }
+
+    /**
+     * 确认不是重复，清除重复标记
+     *
+     * @param id 壁纸ID
+     * @return 结果
+     */
+    @Operation(summary = "清除重复标记")
+    @DeleteMapping("/{id}/duplicate")
+    @RequiresPermissions("wallpaper:audit")
+    public Result<Boolean> dismissDuplicate(@Parameter(description = "壁纸ID", required = true) @PathVariable Long id) {
+        return Result.success(duplicateDetectionService.dismiss(id), "已清除重复标记");
+    }
+
     /**
      * 下载壁纸
      *
-     * @param id     壁纸ID
-     * @param userId 用户ID（可选）
+     * @param id      壁纸ID
+     * @param userId  用户ID（可选）
+     * @param request HTTP请求
      * @return 结果
      */
     @Operation(summary = "下载壁纸")
@@ -179,15 +355,16 @@ public class WpWallpaperController {
     @RequiresPermissions("wallpaper:download")
     public Result<String> download(
             @Parameter(description = "壁纸ID", required = true) @PathVariable Long id,
-            @Parameter(description = "用户ID") @RequestParam(required = false) Long userId) {
-        // 增加下载次数
-        wallpaperService.incrementDownloads(id);
-        
+            @Parameter(description = "用户ID") @RequestParam(required = false) Long userId,
+            HttpServletRequest request) {
         // 获取壁纸信息
         WpWallpaper wallpaper = wallpaperService.getById(id);
         if (wallpaper == null) {
             return Result.error("壁纸不存在");
         }
+
+        // 异步记录下载次数
+        downloadRecordService.record(id, ShiroUtil.getUserId(), request.getRemoteAddr());
         
         // 构建完整URL
         String fullUrl = ImageUtils.buildFullUrl(wallpaper.getFilePath(), baseUrl);
@@ -196,6 +373,65 @@ public class WpWallpaperController {
         return Result.success(fullUrl, "获取下载路径成功");
     }
 
+    /**
+     * 直接下载壁纸原图
+     * <p>
+     * 一次请求内以附件形式流式返回原图，支持Range断点续传；
+     * 下载次数和下载记录异步写入，续传请求（Range不从0开始）不重复计数
+     *
+     * @param id       壁纸ID
+     * @param request  HTTP请求
+     * @param response HTTP响应
+     * @throws IOException 输出失败
+     */
+    @Operation(summary = "直接下载壁纸原图")
+    @GetMapping("/download/{id}/file")
+    @RequiresPermissions("wallpaper:download")
+    public void downloadFile(
+            @Parameter(description = "壁纸ID", required = true) @PathVariable Long id,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        WpWallpaper wallpaper = wallpaperService.getById(id);
+        if (wallpaper == null || StrUtil.isBlank(wallpaper.getFilePath())) {
+            throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "壁纸不存在");
+        }
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (!HttpMethod.HEAD.matches(request.getMethod()) && (range == null || range.startsWith("bytes=0-"))) {
+            downloadRecordService.record(id, ShiroUtil.getUserId(), request.getRemoteAddr());
+        }
+
+        try {
+            fileServeService.serveStoredFile(wallpaper.getFilePath(), request, response, wallpaperService.getDownloadName(wallpaper));
+        } catch (NoSuchFileException e) {
+            throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "壁纸文件不存在");
+        }
+    }
+
+    /**
+     * 打包下载壁纸
+     * <p>
+     * 按壁纸ID列表、分类或当前用户的收藏选择壁纸，边读边打包为ZIP输出
+     *
+     * @param ids        壁纸ID列表
+     * @param categoryId 分类ID
+     * @param favorites  是否下载我的收藏
+     * @param request    HTTP请求
+     * @param response   HTTP响应
+     * @throws IOException 输出失败
+     */
+    @Operation(summary = "打包下载壁纸")
+    @GetMapping("/download/zip")
+    @RequiresPermissions("wallpaper:download")
+    public void downloadZip(
+            @Parameter(description = "壁纸ID列表") @RequestParam(required = false) List<Long> ids,
+            @Parameter(description = "分类ID") @RequestParam(required = false) Long categoryId,
+            @Parameter(description = "是否下载我的收藏") @RequestParam(defaultValue = "false") boolean favorites,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        zipDownloadService.download(ids, categoryId, favorites, request, response);
+    }
+
     /**
      * 获取推荐壁纸
      *
@@ -225,6 +461,7 @@ public class WpWallpaperController {
         List<WpWallpaper> latestWallpapers = wallpaperService.getLatestWallpapers(limit);
         // 填充附加信息
         enhanceWallpaperList(latestWallpapers);
+        thumbnailSpriteService.attach("latest:" + limit, latestWallpapers);
         return Result.success(latestWallpapers);
     }
 
@@ -301,6 +538,14 @@ public class WpWallpaperController {
                 new java.util.HashMap<>() :
                 tagService.listByIds(collection).stream()
                     .collect(Collectors.toMap(WpTag::getId, Function.identity(), (a, b) -> a));
+
+        // 批量获取各尺寸派生图
+        List<Long> blobIds = wallpapers.stream()
+                .map(WpWallpaper::getBlobId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Long, List<WpFileDerivative>> derivativeMap = fileBlobService.listDerivatives(blobIds);
         
         // 填充壁纸信息
         for (WpWallpaper wallpaper : wallpapers) {
@@ -311,6 +556,18 @@ public class WpWallpaperController {
             if (wallpaper.getThumbnailPath() != null) {
                 wallpaper.setThumbnailUrl(ImageUtils.buildFullUrl(wallpaper.getThumbnailPath(), baseUrl));
             }
+
+            // 历史数据没有占位图时，用主色生成纯色占位
+            if (wallpaper.getBlurHash() == null && wallpaper.getPalette() != null) {
+                List<ColorPalette.Swatch> swatches = ColorPalette.decode(wallpaper.getPalette());
+                if (!swatches.isEmpty()) {
+                    wallpaper.setBlurHash(BlurHash.ofColor(swatches.get(0).getRgb()));
+                }
+            }
+
+            // 设置各尺寸版本
+            fillVariants(wallpaper, wallpaper.getBlobId() == null ? Collections.emptyList()
+                    : derivativeMap.getOrDefault(wallpaper.getBlobId(), Collections.emptyList()));
             
             // 设置分类名称
             if (wallpaper.getCategoryId() != null && categoryNameMap.containsKey(wallpaper.getCategoryId())) {
@@ -330,6 +587,27 @@ public class WpWallpaperController {
         }
     }
     
+    /**
+     * 填充各尺寸版本及srcset，原图宽度已知时作为最大的一项
+     *
+     * @param wallpaper   壁纸
+     * @param derivatives 派生图列表（按宽度升序）
+     */
+    private void fillVariants(WpWallpaper wallpaper, List<WpFileDerivative> derivatives) {
+        List<ImageVariantVO> variants = new ArrayList<>(derivatives.size() + 1);
+        for (WpFileDerivative derivative : derivatives) {
+            variants.add(new ImageVariantVO(derivative.getWidth(), derivative.getHeight(),
+                    ImageUtils.buildFullUrl(derivative.getFilePath(), baseUrl)));
+        }
+        if (wallpaper.getWidth() != null && wallpaper.getImageUrl() != null) {
+            variants.add(new ImageVariantVO(wallpaper.getWidth(), wallpaper.getHeight(), wallpaper.getImageUrl()));
+        }
+        wallpaper.setVariants(variants);
+        wallpaper.setSrcset(variants.stream()
+                .map(variant -> variant.getUrl() + " " + variant.getWidth() + "w")
+                .collect(Collectors.joining(", ")));
+    }
+
     /**
      * 增强单个壁纸，添加URL和关联信息
      *
@@ -344,4 +622,26 @@ public class WpWallpaperController {
         list.add(wallpaper);
         enhanceWallpaperList(list);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 用表单字段绑定并校验壁纸信息，与@Valid参数的绑定方式相同
+     *
+     * @param fields 表单字段
+     * @return 壁纸信息
+     * @throws BindException 绑定或校验失败
+     */
+    private WpWallpaper bindWallpaper(MultiValueMap<String, String> fields) throws BindException {
+        WpWallpaper wallpaper = new WpWallpaper();
+        WebDataBinder binder = new WebDataBinder(wallpaper, "wallpaper");
+        binder.setConversionService(DefaultConversionService.getSharedInstance());
+        binder.setValidator(new SpringValidatorAdapter(validator));
+        MutablePropertyValues values = new MutablePropertyValues();
+        fields.forEach((name, value) -> values.add(name, value.size() == 1 ? value.get(0) : value.toArray(new String[0])));
+        binder.bind(values);
+        binder.validate();
+        if (binder.getBindingResult().hasErrors()) {
+            throw new BindException(binder.getBindingResult());
+        }
+        return wallpaper;
+    }
+}
@@ -0,0 +1,45 @@
+package com.wallpaper.management.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 下载记录实体
+ */
+@Data
+@TableName("wp_download_record")
+public class WpDownloadRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 用户ID（未登录用户为空）
+     */
+    private Long userId;
+
+    /**
+     * 壁纸ID
+     */
+    private Long wallpaperId;
+
+    /**
+     * IP地址
+     */
+    private String ip;
+
+    /**
+     * 下载时间
+     */
+    private LocalDateTime downloadTime;
+}
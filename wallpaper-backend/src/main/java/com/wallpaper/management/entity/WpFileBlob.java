@@ -0,0 +1,130 @@
+package com.wallpaper.management.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 文件内容实体（按SHA-256去重，多张壁纸可共享同一份文件）
+ */
+@Data
+@TableName("wp_file_blob")
+public class WpFileBlob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 派生图处理状态：待处理
+     */
+    public static final int PROCESSING_PENDING = 0;
+
+    /**
+     * 派生图处理状态：处理中
+     */
+    public static final int PROCESSING_RUNNING = 1;
+
+    /**
+     * 派生图处理状态：已完成
+     */
+    public static final int PROCESSING_DONE = 2;
+
+    /**
+     * 派生图处理状态：失败（已达最大重试次数或文件无法解码）
+     */
+    public static final int PROCESSING_FAILED = 3;
+
+    /**
+     * 主键ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 文件内容SHA-256（十六进制小写）
+     */
+    private String sha256;
+
+    /**
+     * 文件相对路径
+     */
+    private String filePath;
+
+    /**
+     * 缩略图相对路径
+     */
+    private String thumbnailPath;
+
+    /**
+     * 文件大小（字节）
+     */
+    private Long fileSize;
+
+    /**
+     * 宽度（像素）
+     */
+    private Integer width;
+
+    /**
+     * 高度（像素）
+     */
+    private Integer height;
+
+    /**
+     * 文件类型
+     */
+    private String fileType;
+
+    /**
+     * 感知哈希（dHash），派生图生成时计算
+     */
+    private Long phash;
+
+    /**
+     * 主色调色板，派生图生成时提取
+     */
+    private String palette;
+
+    /**
+     * BlurHash占位图，派生图生成时计算
+     */
+    private String blurHash;
+
+    /**
+     * 引用次数
+     */
+    private Integer refCount;
+
+    /**
+     * 派生图处理状态
+     */
+    private Integer processingStatus;
+
+    /**
+     * 处理尝试次数
+     */
+    private Integer processingAttempts;
+
+    /**
+     * 最早可重试时间
+     */
+    private LocalDateTime nextAttemptTime;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String processingError;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,55 @@
+package com.wallpaper.management.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 派生图实体（文件内容按宽度缩放后的版本，与文件内容一起共享和回收）
+ */
+@Data
+@TableName("wp_file_derivative")
+public class WpFileDerivative implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 文件内容ID
+     */
+    private Long blobId;
+
+    /**
+     * 宽度（像素）
+     */
+    private Integer width;
+
+    /**
+     * 高度（像素）
+     */
+    private Integer height;
+
+    /**
+     * 文件相对路径
+     */
+    private String filePath;
+
+    /**
+     * 文件大小（字节）
+     */
+    private Long fileSize;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+}
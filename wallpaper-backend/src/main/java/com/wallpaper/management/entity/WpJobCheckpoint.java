@@ -0,0 +1,63 @@
+package com.wallpaper.management.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 批处理任务断点实体
+ */
+@Data
+@TableName("wp_job_checkpoint")
+public class WpJobCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String STATUS_RUNNING = "RUNNING";
+
+    public static final String STATUS_STOPPED = "STOPPED";
+
+    public static final String STATUS_FINISHED = "FINISHED";
+
+    public static final String STATUS_FAILED = "FAILED";
+
+    /**
+     * 任务名称
+     */
+    @TableId(value = "job_name", type = IdType.INPUT)
+    private String jobName;
+
+    /**
+     * 状态
+     */
+    private String status;
+
+    /**
+     * 已处理完的最大主键
+     */
+    private Long lastId;
+
+    /**
+     * 累计处理条数
+     */
+    private Long processedCount;
+
+    /**
+     * 累计失败条数
+     */
+    private Long failedCount;
+
+    /**
+     * 本轮开始时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -2,6 +2,9 @@ package com.wallpaper.management.entity;
 
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.wallpaper.management.vo.ImageSpriteVO;
+import com.wallpaper.management.vo.ImageVariantVO;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -42,6 +45,42 @@ public class WpWallpaper extends BaseEntity {
      */
     private String thumbnailPath;
 
+    /**
+     * 文件内容ID（历史数据为空）
+     */
+    private Long blobId;
+
+    /**
+     * 派生图处理状态：0待处理 1处理中 2已完成 3失败，未完成时缩略图地址为原图
+     */
+    private Integer processingStatus;
+
+    /**
+     * 感知哈希（dHash），随派生图处理结果从文件内容同步
+     */
+    @JsonIgnore
+    private Long phash;
+
+    /**
+     * 疑似重复的已有壁纸ID，为空表示未发现重复
+     */
+    private Long duplicateOf;
+
+    /**
+     * 与已有壁纸的哈希汉明距离，0表示缩放、重新编码后几乎无差别
+     */
+    private Integer duplicateDistance;
+
+    /**
+     * 主色调色板，如 "#1a2b3c:35,#ddeeff:20"（颜色:占比百分数），随派生图处理结果从文件内容同步
+     */
+    private String palette;
+
+    /**
+     * BlurHash占位图，列表中在缩略图加载完成前绘制，随派生图处理结果从文件内容同步
+     */
+    private String blurHash;
+
     /**
      * 文件大小（字节）
      */
@@ -105,12 +144,36 @@ public class WpWallpaper extends BaseEntity {
      */
     @TableField(exist = false)
     private String thumbnailUrl;
+
+    /**
+     * 各尺寸版本，按宽度升序，最后一项为原图 (不映射数据库字段)
+     */
+    @TableField(exist = false)
+    private List<ImageVariantVO> variants;
+
+    /**
+     * 可直接用于img标签的srcset (不映射数据库字段)
+     */
+    @TableField(exist = false)
+    private String srcset;
+
+    /**
+     * 在所在列表页雪碧图中的位置，雪碧图尚未生成时为空 (不映射数据库字段)
+     */
+    @TableField(exist = false)
+    private ImageSpriteVO sprite;
     
     /**
      * 分类名称 (不映射数据库字段)
      */
     @TableField(exist = false)
     private String categoryName;
+
+    /**
+     * 疑似重复的已有壁纸，审核列表中使用 (不映射数据库字段)
+     */
+    @TableField(exist = false)
+    private WpWallpaper duplicateOriginal;
     
     /**
      * 标签列表 (不映射数据库字段)
@@ -0,0 +1,31 @@
+package com.wallpaper.management.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 壁纸颜色分类实体
+ */
+@Data
+@TableName("wp_wallpaper_color")
+public class WpWallpaperColor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 壁纸ID
+     */
+    private Long wallpaperId;
+
+    /**
+     * 颜色分类编码
+     */
+    private Integer bucket;
+
+    /**
+     * 该分类颜色占画面的百分比
+     */
+    private Integer ratio;
+}
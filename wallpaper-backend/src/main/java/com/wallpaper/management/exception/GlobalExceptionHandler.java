@@ -10,7 +10,6 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
-import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
@@ -99,18 +98,6 @@ public class GlobalExceptionHandler {
         return Result.error(ResultCode.FORBIDDEN);
     }
 
-    /**
-     * 处理文件上传大小超过限制异常
-     *
-     * @param e 文件上传大小超过限制异常
-     * @return 结果
-     */
-    @ExceptionHandler(MaxUploadSizeExceededException.class)
-    public Result<?> handleMaxUploadSizeExceededException(MaxUploadSizeExceededException e) {
-        log.error("文件上传大小超过限制异常：{}", e.getMessage());
-        return Result.error(ResultCode.FILE_SIZE_ERROR);
-    }
-
     /**
      * 处理未知异常
      *
@@ -0,0 +1,23 @@
+package com.wallpaper.management.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.wallpaper.management.entity.WpDownloadRecord;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 下载记录Mapper接口
+ */
+@Mapper
+public interface WpDownloadRecordMapper extends BaseMapper<WpDownloadRecord> {
+
+    /**
+     * 批量保存下载记录
+     *
+     * @param records 下载记录列表
+     * @return 影响的行数
+     */
+    int batchSave(@Param("records") List<WpDownloadRecord> records);
+}
@@ -0,0 +1,127 @@
+package com.wallpaper.management.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.wallpaper.management.entity.WpFileBlob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 文件内容Mapper接口
+ */
+@Mapper
+public interface WpFileBlobMapper extends BaseMapper<WpFileBlob> {
+
+    /**
+     * 根据SHA-256查询文件内容
+     *
+     * @param sha256 文件内容SHA-256
+     * @return 文件内容，不存在时返回null
+     */
+    WpFileBlob selectBySha256(@Param("sha256") String sha256);
+
+    /**
+     * 新增文件内容并占用一次引用，SHA-256已存在时只增加引用次数
+     *
+     * @param blob 文件内容
+     * @return 影响的行数
+     */
+    int insertOrAcquire(WpFileBlob blob);
+
+    /**
+     * 增加引用次数
+     *
+     * @param id 文件内容ID
+     * @return 影响的行数，记录已被回收时为0
+     */
+    int incrementRefCount(@Param("id") Long id);
+
+    /**
+     * 减少引用次数
+     *
+     * @param id 文件内容ID
+     * @return 影响的行数
+     */
+    int decrementRefCount(@Param("id") Long id);
+
+    /**
+     * 删除已无引用的文件内容
+     *
+     * @param id 文件内容ID
+     * @return 影响的行数，仍被引用时为0
+     */
+    int deleteUnreferenced(@Param("id") Long id);
+
+    /**
+     * 将待处理的文件内容标记为处理中，并增加尝试次数
+     *
+     * @param id 文件内容ID
+     * @return 影响的行数，已被其他线程或实例领取时为0
+     */
+    int claimProcessing(@Param("id") Long id);
+
+    /**
+     * 将待处理、已完成或已失败的文件内容标记为处理中，用于批量重建派生图（含刚登记的历史文件）
+     *
+     * @param id 文件内容ID
+     * @return 影响的行数，记录不存在或正在处理时为0
+     */
+    int claimRegeneration(@Param("id") Long id);
+
+    /**
+     * 记录派生图生成结果并标记为已完成
+     *
+     * @param blob 文件内容（ID、缩略图路径、宽高）
+     * @return 影响的行数，记录已被回收或不再处于处理中时为0
+     */
+    int completeProcessing(WpFileBlob blob);
+
+    /**
+     * 记录处理失败
+     *
+     * @param id              文件内容ID
+     * @param status          失败后的状态：待处理（稍后重试）或失败
+     * @param nextAttemptTime 最早可重试时间
+     * @param error           失败原因
+     * @return 影响的行数
+     */
+    int failProcessing(@Param("id") Long id, @Param("status") int status,
+                       @Param("nextAttemptTime") LocalDateTime nextAttemptTime, @Param("error") String error);
+
+    /**
+     * 推迟处理：恢复为待处理，且本次领取不计入尝试次数
+     *
+     * @param id              文件内容ID
+     * @param nextAttemptTime 最早可重新处理的时间
+     * @param error           推迟原因
+     * @return 影响的行数
+     */
+    int deferProcessing(@Param("id") Long id, @Param("nextAttemptTime") LocalDateTime nextAttemptTime,
+                        @Param("error") String error);
+
+    /**
+     * 查询已到重试时间的待处理文件内容
+     *
+     * @param limit 最大条数
+     * @return 文件内容ID列表
+     */
+    List<Long> selectDueProcessingIds(@Param("limit") int limit);
+
+    /**
+     * 将长时间停留在处理中的记录（处理进程已退出）重置为待处理，已达最大尝试次数的标记为失败
+     *
+     * @param staleBefore 最后更新时间早于该时间视为停滞
+     * @param maxAttempts 最大尝试次数
+     * @return 影响的行数
+     */
+    int resetStaleProcessing(@Param("staleBefore") LocalDateTime staleBefore, @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * 将处理失败的记录重置为待处理，并清零尝试次数
+     *
+     * @return 影响的行数
+     */
+    int resetFailedProcessing();
+}
@@ -0,0 +1,33 @@
+package com.wallpaper.management.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.wallpaper.management.entity.WpFileDerivative;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 派生图Mapper接口
+ */
+@Mapper
+public interface WpFileDerivativeMapper extends BaseMapper<WpFileDerivative> {
+
+    /**
+     * 批量保存派生图，同一文件内容的同一宽度已存在时覆盖
+     *
+     * @param derivatives 派生图列表
+     * @return 影响的行数
+     */
+    int batchUpsert(@Param("derivatives") List<WpFileDerivative> derivatives);
+
+    /**
+     * 删除文件内容的所有派生图记录
+     *
+     * @param blobId 文件内容ID
+     * @return 影响的行数
+     */
+    @Delete("DELETE FROM wp_file_derivative WHERE blob_id = #{blobId}")
+    int deleteByBlobId(@Param("blobId") Long blobId);
+}
@@ -0,0 +1,26 @@
+package com.wallpaper.management.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.wallpaper.management.entity.WpJobCheckpoint;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 批处理任务断点Mapper接口
+ */
+@Mapper
+public interface WpJobCheckpointMapper extends BaseMapper<WpJobCheckpoint> {
+
+    /**
+     * 保存断点，已存在时覆盖
+     *
+     * @param checkpoint 断点
+     * @return 影响的行数
+     */
+    @Insert("INSERT INTO wp_job_checkpoint (job_name, status, last_id, processed_count, failed_count, create_time, update_time) "
+            + "VALUES (#{jobName}, #{status}, #{lastId}, #{processedCount}, #{failedCount}, #{createTime}, now()) "
+            + "ON DUPLICATE KEY UPDATE status = VALUES(status), last_id = VALUES(last_id), "
+            + "processed_count = VALUES(processed_count), failed_count = VALUES(failed_count), "
+            + "create_time = VALUES(create_time), update_time = now()")
+    int save(WpJobCheckpoint checkpoint);
+}
@@ -0,0 +1,33 @@
+package com.wallpaper.management.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.wallpaper.management.entity.WpWallpaperColor;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 壁纸颜色分类Mapper接口
+ */
+@Mapper
+public interface WpWallpaperColorMapper extends BaseMapper<WpWallpaperColor> {
+
+    /**
+     * 批量保存壁纸颜色分类
+     *
+     * @param colors 颜色分类列表
+     * @return 影响的行数
+     */
+    int batchSave(@Param("colors") List<WpWallpaperColor> colors);
+
+    /**
+     * 根据壁纸ID删除颜色分类
+     *
+     * @param wallpaperId 壁纸ID
+     * @return 影响的行数
+     */
+    @Delete("DELETE FROM wp_wallpaper_color WHERE wallpaper_id = #{wallpaperId}")
+    int deleteByWallpaperId(@Param("wallpaperId") Long wallpaperId);
+}
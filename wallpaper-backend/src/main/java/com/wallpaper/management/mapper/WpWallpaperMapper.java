@@ -2,6 +2,8 @@ package com.wallpaper.management.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.wallpaper.management.entity.WpWallpaper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -9,4 +11,28 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface WpWallpaperMapper extends BaseMapper<WpWallpaper> {
-} 
\ No newline at end of file
+
+    /**
+     * 增加下载次数
+     *
+     * @param id    壁纸ID
+     * @param delta 增加的次数
+     * @return 影响的行数
+     */
+    @Update("UPDATE wp_wallpaper SET download_count = IFNULL(download_count, 0) + #{delta} WHERE id = #{id}")
+    int incrementDownloadCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * 将文件内容的派生图处理结果（缩略图、宽高、感知哈希、调色板、占位图）同步到引用它的壁纸
+     *
+     * @param blobId 文件内容ID
+     * @return 影响的行数
+     */
+    @Update("UPDATE wp_wallpaper w JOIN wp_file_blob b ON w.blob_id = b.id "
+            + "SET w.thumbnail_path = b.thumbnail_path, w.width = b.width, w.height = b.height, w.processing_status = b.processing_status, "
+            + "w.phash = b.phash, w.palette = b.palette, w.blur_hash = b.blur_hash "
+            + "WHERE w.blob_id = #{blobId} AND (w.processing_status <> b.processing_status OR NOT (w.thumbnail_path <=> b.thumbnail_path) "
+            + "OR NOT (w.width <=> b.width) OR NOT (w.height <=> b.height) OR NOT (w.phash <=> b.phash) "
+            + "OR NOT (w.palette <=> b.palette) OR NOT (w.blur_hash <=> b.blur_hash))")
+    int syncProcessingFromBlob(@Param("blobId") Long blobId);
+}
@@ -0,0 +1,88 @@
+package com.wallpaper.management.service;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * 下载带宽整形服务接口
+ * <p>
+ * 按客户端（登录用户或IP）做令牌桶限速，缩略图与原图按权重计费
+ */
+public interface BandwidthShapingService {
+
+    /**
+     * 为一次响应申请带宽
+     *
+     * @param request      HTTP请求
+     * @param trafficClass 流量类别
+     * @param bytes        响应体字节数，未知时传-1，没有响应体时传0
+     * @return 租约，使用完毕后必须关闭
+     */
+    Lease acquire(HttpServletRequest request, TrafficClass trafficClass, long bytes);
+
+    /**
+     * 获取限速状态
+     *
+     * @return 各客户端积压及限速统计
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * 流量类别
+     */
+    enum TrafficClass {
+
+        /**
+         * 缩略图等小文件
+         */
+        THUMBNAIL,
+
+        /**
+         * 原图及打包下载
+         */
+        ORIGINAL
+    }
+
+    /**
+     * 带宽租约
+     */
+    interface Lease extends Closeable {
+
+        /**
+         * 是否被拒绝（该客户端同时被限速的响应过多）
+         *
+         * @return 是否被拒绝
+         */
+        boolean isRejected();
+
+        /**
+         * 建议的重试等待秒数，仅在被拒绝时有意义
+         *
+         * @return 秒数
+         */
+        long getRetryAfterSeconds();
+
+        /**
+         * 是否需要限速输出；不需要时整个响应体已在突发额度内放行，可使用sendfile
+         *
+         * @return 是否需要限速
+         */
+        boolean isPaced();
+
+        /**
+         * 包装输出流，需要限速时按块申请额度并暂停
+         *
+         * @param out 原输出流
+         * @return 包装后的输出流
+         */
+        OutputStream wrap(OutputStream out);
+
+        /**
+         * 释放租约
+         */
+        @Override
+        void close();
+    }
+}
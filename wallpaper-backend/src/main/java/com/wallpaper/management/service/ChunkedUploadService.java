@@ -0,0 +1,79 @@
+package com.wallpaper.management.service;
+
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.vo.UploadSessionVO;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片上传服务接口
+ * <p>
+ * 初始化时按文件大小预分配临时文件，各分片按序号计算偏移量直接写入对应位置，可以并行上传、以任意顺序到达；
+ * 已接收的分片记录在临时文件旁的状态文件中，连接中断或服务重启后只需补传缺少的分片。
+ * 全部分片到齐后由完成接口交给普通上传流程存储
+ */
+public interface ChunkedUploadService {
+
+    /**
+     * 创建上传会话
+     *
+     * @param fileName 原始文件名
+     * @param fileSize 文件大小（字节）
+     * @param sha256   整个文件的SHA-256（十六进制），为空时不校验
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    UploadSessionVO init(String fileName, long fileSize, String sha256, Long userId);
+
+    /**
+     * 查询上传会话，用于断点续传
+     *
+     * @param uploadId 上传ID
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    UploadSessionVO getSession(String uploadId, Long userId);
+
+    /**
+     * 接收一个分片，边读取边校验边写入临时文件的对应位置
+     *
+     * @param uploadId 上传ID
+     * @param index    分片序号，从0开始
+     * @param sha256   分片内容的SHA-256（十六进制）
+     * @param input    分片内容
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    UploadSessionVO writeChunk(String uploadId, int index, String sha256, InputStream input, Long userId);
+
+    /**
+     * 完成上传：检查分片是否到齐、校验整个文件，再按普通上传流程创建壁纸
+     * <p>
+     * 调用后会话结束，创建失败时需重新上传
+     *
+     * @param uploadId     上传ID
+     * @param wallpaper    壁纸信息
+     * @param tagIds       标签ID列表
+     * @param uploadUserId 上传用户ID
+     * @param userId       当前用户ID
+     * @return 壁纸信息
+     */
+    WpWallpaper complete(String uploadId, WpWallpaper wallpaper, List<Long> tagIds, Long uploadUserId, Long userId);
+
+    /**
+     * 取消上传，删除已接收的分片
+     *
+     * @param uploadId 上传ID
+     * @param userId   当前用户ID
+     */
+    void abort(String uploadId, Long userId);
+
+    /**
+     * 获取分片上传统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,32 @@
+package com.wallpaper.management.service;
+
+import java.util.Map;
+
+/**
+ * 派生图批量重建服务接口
+ * <p>
+ * 修改缩略图尺寸、派生图宽度或编码参数后，按主键分批重新生成已有壁纸的派生图；
+ * 进度按批写入断点表，停止或应用重启后从断点继续
+ */
+public interface DerivativeRebuildService {
+
+    /**
+     * 启动重建任务
+     *
+     * @param restart 是否忽略断点从头开始；为false时从上次未完成的断点继续
+     * @return 是否启动成功，已有任务在运行时返回false
+     */
+    boolean start(boolean restart);
+
+    /**
+     * 请求停止重建任务，当前批次完成并保存断点后停止
+     */
+    void stop();
+
+    /**
+     * 获取重建进度
+     *
+     * @return 进度信息，含吞吐量、预计剩余时间和最近失败的文件内容ID
+     */
+    Map<String, Object> getProgress();
+}
@@ -0,0 +1,62 @@
+package com.wallpaper.management.service;
+
+import java.util.Map;
+
+/**
+ * 派生图生成服务接口
+ * <p>
+ * 上传只保存原图和记录，缩略图等派生图在后台有界线程池中生成，失败时按退避间隔重试
+ */
+public interface DerivativeService {
+
+    /**
+     * 提交文件内容的派生图生成任务，应在记录所在事务提交后调用
+     * <p>
+     * 已在队列中的不重复提交；线程池已满时不报错，由恢复线程稍后重新提交
+     *
+     * @param blobId 文件内容ID
+     */
+    void submit(Long blobId);
+
+    /**
+     * 将处理失败的记录重置为待处理，重新生成
+     *
+     * @return 重置的记录数
+     */
+    int retryFailed();
+
+    /**
+     * 在调用线程中重新生成已处理完（或已失败）的文件内容的派生图，用于修改尺寸或编码参数后批量重建
+     * <p>
+     * 正在处理中的记录由其他线程负责，直接跳过；生成失败时与普通任务一样按退避间隔重试
+     *
+     * @param blobId 文件内容ID
+     * @return 处理结果
+     */
+    RegenerateResult regenerate(Long blobId);
+
+    /**
+     * 重新生成的结果
+     */
+    enum RegenerateResult {
+        /**
+         * 记录不存在或正在处理中，未重新生成
+         */
+        SKIPPED,
+        /**
+         * 生成成功
+         */
+        SUCCEEDED,
+        /**
+         * 生成失败
+         */
+        FAILED
+    }
+
+    /**
+     * 获取派生图生成统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,73 @@
+package com.wallpaper.management.service;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.wallpaper.management.entity.WpWallpaper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重复壁纸检测服务接口
+ * <p>
+ * 按感知哈希的汉明距离查找缩放、重新编码后的重复壁纸，疑似重复的壁纸进入审核列表
+ */
+public interface DuplicateDetectionService {
+
+    /**
+     * 检测引用该文件内容的壁纸是否与已有壁纸重复，并加入索引
+     * <p>
+     * 在派生图生成（计算出感知哈希）并同步到壁纸后调用；已在索引中的壁纸跳过
+     *
+     * @param blobId 文件内容ID
+     */
+    void check(Long blobId);
+
+    /**
+     * 检测单张壁纸是否与已有壁纸重复，并加入索引
+     * <p>
+     * 在回填历史壁纸的感知哈希后调用；没有感知哈希或已在索引中的壁纸跳过
+     *
+     * @param wallpaperId 壁纸ID
+     */
+    void checkWallpaper(Long wallpaperId);
+
+    /**
+     * 壁纸删除后从索引中移除，并清除其他壁纸对它的重复标记
+     *
+     * @param wallpaper 已删除的壁纸
+     */
+    void remove(WpWallpaper wallpaper);
+
+    /**
+     * 查找与壁纸相似的其他壁纸
+     *
+     * @param wallpaperId 壁纸ID
+     * @param maxDistance 最大汉明距离，为null时使用配置值
+     * @return 相似壁纸，按距离升序，duplicateDistance为与该壁纸的距离
+     */
+    List<WpWallpaper> findSimilar(Long wallpaperId, Integer maxDistance);
+
+    /**
+     * 分页查询待审核的疑似重复壁纸，附带疑似重复的已有壁纸
+     *
+     * @param page     页码
+     * @param pageSize 页大小
+     * @return 疑似重复壁纸列表
+     */
+    IPage<WpWallpaper> pageDuplicates(Integer page, Integer pageSize);
+
+    /**
+     * 审核确认不是重复后清除重复标记
+     *
+     * @param wallpaperId 壁纸ID
+     * @return 是否成功
+     */
+    boolean dismiss(Long wallpaperId);
+
+    /**
+     * 获取重复检测统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,78 @@
+package com.wallpaper.management.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * 热点文件内存缓存服务接口
+ */
+public interface FileCacheService {
+
+    /**
+     * 判断文件是否参与缓存
+     *
+     * @param filename 文件名
+     * @return 是否参与缓存
+     */
+    boolean isCacheable(String filename);
+
+    /**
+     * 查询缓存
+     *
+     * @param relativePath 文件相对路径
+     * @return 缓存的文件，未命中时返回null
+     */
+    CachedFile get(String relativePath);
+
+    /**
+     * 尝试将文件加载进缓存，由准入策略决定是否缓存
+     *
+     * @param relativePath 文件相对路径
+     * @param path         文件绝对路径
+     * @param length       文件长度
+     * @param lastModified 文件最后修改时间
+     * @return 缓存的文件，未被准入时返回null
+     */
+    CachedFile load(String relativePath, Path path, long length, long lastModified);
+
+    /**
+     * 使文件缓存失效
+     *
+     * @param relativePath 文件相对路径
+     */
+    void invalidate(String relativePath);
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * 缓存的文件内容
+     */
+    @Getter
+    @RequiredArgsConstructor
+    class CachedFile {
+
+        /**
+         * 文件内容（只读直接内存）
+         */
+        private final ByteBuffer data;
+
+        /**
+         * 文件长度
+         */
+        private final long length;
+
+        /**
+         * 最后修改时间
+         */
+        private final long lastModified;
+    }
+}
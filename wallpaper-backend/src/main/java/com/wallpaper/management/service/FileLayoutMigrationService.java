@@ -0,0 +1,30 @@
+package com.wallpaper.management.service;
+
+import java.util.Map;
+
+/**
+ * 文件布局迁移服务接口
+ * <p>
+ * 在线将平铺布局的历史文件移动到分层布局，并分批改写数据库中的路径
+ */
+public interface FileLayoutMigrationService {
+
+    /**
+     * 启动迁移任务
+     *
+     * @return 是否启动成功，已有任务在运行时返回false
+     */
+    boolean start();
+
+    /**
+     * 请求停止迁移任务，当前批次完成后停止
+     */
+    void stop();
+
+    /**
+     * 获取迁移进度
+     *
+     * @return 进度信息
+     */
+    Map<String, Object> getProgress();
+}
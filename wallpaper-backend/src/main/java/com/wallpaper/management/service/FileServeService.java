@@ -0,0 +1,103 @@
+package com.wallpaper.management.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * 文件输出服务接口
+ */
+public interface FileServeService {
+
+    /**
+     * 以流式方式输出文件，不将文件整体读入内存
+     * <p>
+     * 支持单区间、多区间（multipart/byteranges）及If-Range条件请求，
+     * 并根据ETag/Last-Modified处理条件GET
+     *
+     * @param relativePath 文件相对路径
+     * @param path         文件绝对路径
+     * @param request      HTTP请求
+     * @param response     HTTP响应
+     * @throws IOException 输出失败，文件不存在时为NoSuchFileException
+     */
+    void serveFile(String relativePath, Path path, HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    /**
+     * 以附件形式流式输出文件，支持Range断点续传
+     *
+     * @param relativePath   文件相对路径
+     * @param path           文件绝对路径
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @param attachmentName 下载文件名（Content-Disposition），为null时按文件类型决定是否作为附件
+     * @throws IOException 输出失败，文件不存在时为NoSuchFileException
+     */
+    void serveFile(String relativePath, Path path, HttpServletRequest request, HttpServletResponse response,
+                   String attachmentName) throws IOException;
+
+    /**
+     * 按存储分层和布局查找并输出上传目录中的文件
+     * <p>
+     * 热存储有副本时优先读取副本；布局迁移期间按请求路径找不到文件时，
+     * 再按另一种布局查找一次
+     *
+     * @param relativePath   规范化后的文件相对路径
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @param attachmentName 下载文件名，为null时按文件类型决定是否作为附件
+     * @throws IOException 输出失败，文件不存在时为NoSuchFileException
+     */
+    void serveStoredFile(String relativePath, HttpServletRequest request, HttpServletResponse response,
+                         String attachmentName) throws IOException;
+
+    /**
+     * 以附件形式输出动态生成的内容（长度未知，分块传输）
+     * <p>
+     * 与文件输出共用异步线程池，线程池饱和时返回503；
+     * 无论写出完成、失败还是被拒绝，都会关闭响应体
+     *
+     * @param contentType    内容类型
+     * @param attachmentName 下载文件名
+     * @param body           响应体
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @throws IOException 输出失败
+     */
+    void serveStream(String contentType, String attachmentName, StreamBody body,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    /**
+     * 获取文件输出线程池统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getAsyncStats();
+
+    /**
+     * 动态生成的响应体
+     */
+    interface StreamBody extends Closeable {
+
+        /**
+         * 写出响应体
+         *
+         * @param out 输出流
+         * @throws IOException 输出失败
+         */
+        void write(OutputStream out) throws IOException;
+
+        /**
+         * 释放响应体占用的资源
+         *
+         * @throws IOException 释放失败
+         */
+        @Override
+        default void close() throws IOException {
+        }
+    }
+}
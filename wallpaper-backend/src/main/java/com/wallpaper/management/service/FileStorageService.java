@@ -0,0 +1,53 @@
+package com.wallpaper.management.service;
+
+import java.nio.file.Path;
+
+/**
+ * 文件存储布局服务接口
+ * <p>
+ * 新文件按"日期目录/哈希前缀目录.../文件名"分层存放；
+ * 历史的"日期目录/文件名"平铺布局仍可访问
+ */
+public interface FileStorageService {
+
+    /**
+     * 按当前分层布局生成新文件的相对路径
+     *
+     * @param name   文件名（不含后缀），应为十六进制哈希或UUID
+     * @param suffix 文件后缀
+     * @return 文件相对路径
+     */
+    String newRelativePath(String name, String suffix);
+
+    /**
+     * 规范化请求中的相对路径，拒绝越出上传目录或访问隐藏目录的路径
+     *
+     * @param relativePath 请求中的相对路径
+     * @return 规范化后的相对路径，非法时返回null
+     */
+    String normalize(String relativePath);
+
+    /**
+     * 获取相对路径对应的绝对路径
+     *
+     * @param relativePath 规范化后的相对路径
+     * @return 绝对路径
+     */
+    Path toAbsolutePath(String relativePath);
+
+    /**
+     * 获取同一文件在另一种布局下的路径，用于迁移期间的回退查找
+     *
+     * @param relativePath 规范化后的相对路径
+     * @return 另一种布局下的路径，无法换算时返回null
+     */
+    String alternatePath(String relativePath);
+
+    /**
+     * 将平铺布局的路径换算为分层布局的路径
+     *
+     * @param relativePath 相对路径
+     * @return 分层布局的路径，已是分层布局或未启用分层时返回null
+     */
+    String toShardedPath(String relativePath);
+}
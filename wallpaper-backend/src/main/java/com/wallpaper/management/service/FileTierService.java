@@ -0,0 +1,44 @@
+package com.wallpaper.management.service;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * 文件存储分层服务接口
+ * <p>
+ * 冷存储（上传目录）始终保存全部文件；热存储为容量受限的快速磁盘目录，
+ * 保存新上传和频繁读取文件的副本，按最近访问时间淘汰
+ */
+public interface FileTierService {
+
+    /**
+     * 获取读取文件时应使用的路径，热存储有副本时返回热存储路径
+     * <p>
+     * 同时记录访问频率，冷存储上的文件被频繁读取时异步提升到热存储
+     *
+     * @param relativePath 规范化后的相对路径
+     * @return 文件绝对路径
+     */
+    Path resolve(String relativePath);
+
+    /**
+     * 将新写入冷存储的文件异步复制到热存储
+     *
+     * @param relativePath 相对路径
+     */
+    void admit(String relativePath);
+
+    /**
+     * 删除文件在热存储中的副本（文件被删除或移动时调用）
+     *
+     * @param relativePath 相对路径
+     */
+    void evict(String relativePath);
+
+    /**
+     * 获取分层统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,94 @@
+package com.wallpaper.management.service;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 图片解码准入服务接口
+ * <p>
+ * 所有像素解码共享一个按像素计量的内存预算：解码前按文件头中的宽高估算解码结果的像素数，
+ * 加上调用方声明的解码后处理（缩放、裁剪）占用的内存，预算不足时排队等待，超时返回429；
+ * 尺寸超过上限的图片直接拒绝，不会尝试解码
+ */
+public interface ImageDecodeService {
+
+    /**
+     * 判断图片尺寸是否允许解码，用于上传时按文件头提前拒绝
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @return 是否允许
+     */
+    boolean isAllowed(int width, int height);
+
+    /**
+     * 在预算内降采样解码图片，预算占用到返回的租约关闭为止
+     * <p>
+     * 解码结果的宽高不小于指定的最小值，见ImageUtils.readSubsampled
+     *
+     * @param file      图片文件
+     * @param minWidth  解码结果的最小宽度，0表示不限
+     * @param minHeight 解码结果的最小高度，0表示不限
+     * @return 解码租约，使用完图片后需关闭
+     * @throws IOException 读取失败或不是可识别的图片格式
+     * @throws com.wallpaper.management.exception.BusinessException 尺寸超过限制（IMAGE_TOO_LARGE）或等待预算超时（TOO_MANY_REQUESTS）
+     */
+    Lease acquire(File file, int minWidth, int minHeight) throws IOException;
+
+    /**
+     * 在预算内降采样解码图片，同时为解码后的处理预留内存，预算占用到返回的租约关闭为止
+     *
+     * @param file       图片文件
+     * @param minWidth   解码结果的最小宽度，0表示不限
+     * @param minHeight  解码结果的最小高度，0表示不限
+     * @param workingSet 按解码结果的宽高估算处理过程中额外占用的内存
+     * @return 解码租约，使用完图片后需关闭
+     * @throws IOException 读取失败或不是可识别的图片格式
+     * @throws com.wallpaper.management.exception.BusinessException 尺寸超过限制（IMAGE_TOO_LARGE）或等待预算超时（TOO_MANY_REQUESTS）
+     */
+    Lease acquire(File file, int minWidth, int minHeight, WorkingSet workingSet) throws IOException;
+
+    /**
+     * 获取解码预算统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * 解码后处理的内存估算
+     */
+    @FunctionalInterface
+    interface WorkingSet {
+
+        /**
+         * 估算处理过程中除解码结果外同时占用的堆内存
+         *
+         * @param width  解码结果的宽度
+         * @param height 解码结果的高度
+         * @return 字节数
+         */
+        long estimate(int width, int height);
+    }
+
+    /**
+     * 解码租约，关闭时归还占用的预算
+     */
+    interface Lease extends AutoCloseable {
+
+        /**
+         * 获取解码后的图片
+         *
+         * @return 解码后的图片
+         */
+        BufferedImage getImage();
+
+        /**
+         * 归还预算，重复调用无效果
+         */
+        @Override
+        void close();
+    }
+}
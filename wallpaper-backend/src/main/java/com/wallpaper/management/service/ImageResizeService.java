@@ -0,0 +1,50 @@
+package com.wallpaper.management.service;
+
+import com.wallpaper.management.entity.WpWallpaper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * 按需缩放服务接口
+ * <p>
+ * 请求尺寸向上取整到白名单中的档位后缩放并缓存到磁盘，同一尺寸的并发请求只解码一次
+ */
+public interface ImageResizeService {
+
+    /**
+     * 获取壁纸缩放到指定尺寸的图片文件，缓存中没有时生成
+     *
+     * @param wallpaper 壁纸
+     * @param width     请求宽度，0表示按高度等比缩放
+     * @param height    请求高度，0表示按宽度等比缩放
+     * @param fit       缩放方式
+     * @return 缓存文件路径
+     * @throws IOException 原图读取或缓存写入失败，原图不存在时为NoSuchFileException
+     */
+    Path resize(WpWallpaper wallpaper, int width, int height, Fit fit) throws IOException;
+
+    /**
+     * 获取缩放缓存统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * 缩放方式
+     */
+    enum Fit {
+
+        /**
+         * 等比缩放到完全覆盖目标尺寸，居中裁掉多余部分，输出恰好为目标尺寸
+         */
+        COVER,
+
+        /**
+         * 等比缩放到完全放入目标尺寸，不裁剪
+         */
+        CONTAIN
+    }
+}
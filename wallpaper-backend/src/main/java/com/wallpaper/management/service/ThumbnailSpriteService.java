@@ -0,0 +1,42 @@
+package com.wallpaper.management.service;
+
+import com.wallpaper.management.entity.WpWallpaper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缩略图雪碧图服务接口
+ * <p>
+ * 把固定列表页（最新、按分类分页等）的缩略图拼成一张雪碧图，前端一次请求即可画出整页网格
+ */
+public interface ThumbnailSpriteService {
+
+    /**
+     * 为一页壁纸填充雪碧图位置
+     * <p>
+     * 雪碧图由页内缩略图按顺序决定；尚未生成时提交后台生成，本次不填充，前端按单张缩略图加载
+     *
+     * @param pageKey    列表页标识，同一列表页成员变化后据此复用旧雪碧图中未变的格子
+     * @param wallpapers 页内壁纸，按展示顺序
+     */
+    void attach(String pageKey, List<WpWallpaper> wallpapers);
+
+    /**
+     * 获取雪碧图文件
+     *
+     * @param name 文件名
+     * @return 文件路径
+     * @throws IOException 文件名不合法或文件不存在时为NoSuchFileException
+     */
+    Path resolve(String name) throws IOException;
+
+    /**
+     * 获取雪碧图统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
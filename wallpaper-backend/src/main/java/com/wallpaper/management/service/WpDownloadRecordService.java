@@ -0,0 +1,28 @@
+package com.wallpaper.management.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.wallpaper.management.entity.WpDownloadRecord;
+
+import java.util.Map;
+
+/**
+ * 下载记录服务接口
+ */
+public interface WpDownloadRecordService extends IService<WpDownloadRecord> {
+
+    /**
+     * 记录一次下载，异步批量写入下载次数和下载记录，不阻塞请求
+     *
+     * @param wallpaperId 壁纸ID
+     * @param userId      用户ID，未登录时为null
+     * @param ip          客户端IP
+     */
+    void record(Long wallpaperId, Long userId, String ip);
+
+    /**
+     * 获取下载记录队列统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
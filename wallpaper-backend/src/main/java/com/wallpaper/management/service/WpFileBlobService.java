@@ -0,0 +1,71 @@
+package com.wallpaper.management.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.wallpaper.management.entity.WpFileBlob;
+import com.wallpaper.management.entity.WpFileDerivative;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.util.ImageIngest;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件内容服务接口（按SHA-256去重存储）
+ */
+public interface WpFileBlobService extends IService<WpFileBlob> {
+
+    /**
+     * 存储上传的临时文件并占用一次引用
+     * <p>
+     * 使用接收时已计算的SHA-256和宽高，不再读取文件内容。内容已存在时直接复用已有文件和缩略图，丢弃临时文件；
+     * 否则将临时文件重命名到以SHA-256命名的路径，记录为待处理，缩略图等派生图由后台生成；
+     * 宽高超过解码上限时拒绝存储（IMAGE_TOO_LARGE）
+     *
+     * @param upload 接收结果，其中的临时文件调用后不再可用
+     * @param suffix 文件后缀
+     * @return 文件内容
+     * @throws IOException 文件移动失败
+     */
+    WpFileBlob store(ImageIngest.Result upload, String suffix) throws IOException;
+
+    /**
+     * 为没有文件内容记录的历史壁纸登记文件内容并占用一次引用
+     * <p>
+     * 读取原图计算SHA-256：内容已存在时壁纸改为引用已有文件，提交后删除历史原图和缩略图；
+     * 否则以历史文件原地登记为待处理的文件内容（不移动文件），历史缩略图在派生图生成后被替换
+     *
+     * @param wallpaper 壁纸（ID、文件路径、缩略图路径）
+     * @return 文件内容，壁纸已被删除或已有文件内容记录时返回null
+     * @throws IOException 原图不存在或读取失败
+     */
+    WpFileBlob adopt(WpWallpaper wallpaper) throws IOException;
+
+    /**
+     * 释放一次引用，引用归零时删除记录和物理文件（含缩略图和各尺寸派生图）
+     *
+     * @param blobId 文件内容ID
+     */
+    void release(Long blobId);
+
+    /**
+     * 记录派生图生成结果，替换该文件内容已有的派生图记录，并同步到引用它的壁纸
+     * <p>
+     * 与回收在同一把锁下执行；提交后删除被替换的旧版本文件。返回false时（如记录在生成期间已被回收）
+     * 不删除任何文件，刚生成的缩略图和派生图由调用方删除
+     *
+     * @param blob        文件内容（ID、SHA-256、缩略图路径、宽高）
+     * @param derivatives 各尺寸派生图
+     * @return 是否记录成功
+     */
+    boolean completeProcessing(WpFileBlob blob, List<WpFileDerivative> derivatives);
+
+    /**
+     * 批量查询文件内容的派生图
+     *
+     * @param blobIds 文件内容ID
+     * @return 文件内容ID到派生图列表（按宽度升序）的映射
+     */
+    Map<Long, List<WpFileDerivative>> listDerivatives(Collection<Long> blobIds);
+}
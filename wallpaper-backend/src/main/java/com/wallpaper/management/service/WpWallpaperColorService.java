@@ -0,0 +1,71 @@
+package com.wallpaper.management.service;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+
+/**
+ * 壁纸颜色服务接口
+ * <p>
+ * 提取主色调色板并维护按颜色分类的索引表，供按颜色筛选壁纸使用
+ */
+public interface WpWallpaperColorService {
+
+    /**
+     * 从已解码的图片提取主色调色板
+     *
+     * @param image 图片，通常为缩略图源
+     * @return 调色板紧凑字符串，图片全透明时返回null
+     */
+    String extractPalette(BufferedImage image);
+
+    /**
+     * 按调色板重写壁纸的颜色分类
+     *
+     * @param wallpaperId 壁纸ID
+     * @param palette     调色板
+     */
+    void saveColors(Long wallpaperId, String palette);
+
+    /**
+     * 为引用该文件内容、已有调色板但尚未建立颜色分类的壁纸建立颜色分类
+     * <p>
+     * 在派生图生成（计算出调色板）并同步到壁纸后调用
+     *
+     * @param blobId 文件内容ID
+     */
+    void indexBlob(Long blobId);
+
+    /**
+     * 删除壁纸的颜色分类
+     *
+     * @param wallpaperId 壁纸ID
+     */
+    void deleteByWallpaperId(Long wallpaperId);
+
+    /**
+     * 生成按颜色筛选壁纸ID的子查询
+     *
+     * @param color 颜色分类名称
+     * @return 子查询SQL，返回壁纸ID
+     */
+    String buildColorFilterSql(String color);
+
+    /**
+     * 启动历史壁纸的调色板和感知哈希回填任务
+     *
+     * @return 是否启动成功，已有任务在运行时返回false
+     */
+    boolean startBackfill();
+
+    /**
+     * 请求停止回填任务，当前批次完成后停止
+     */
+    void stopBackfill();
+
+    /**
+     * 获取回填进度
+     *
+     * @return 进度信息
+     */
+    Map<String, Object> getBackfillProgress();
+}
@@ -3,8 +3,9 @@ package com.wallpaper.management.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.wallpaper.management.entity.WpWallpaper;
-import org.springframework.web.multipart.MultipartFile;
+import com.wallpaper.management.util.ImageIngest;
 
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -13,15 +14,38 @@ import java.util.List;
 public interface WpWallpaperService extends IService<WpWallpaper> {
 
     /**
-     * 上传壁纸
+     * 接收上传的文件
+     * <p>
+     * 流式写入上传目录下的临时文件，同一次读取中计算SHA-256、按魔数识别格式并从文件头解析宽高；
+     * 超过大小上限时停止读取并拒绝
      *
-     * @param file       壁纸文件
-     * @param wallpaper  壁纸信息
-     * @param tagIds     标签ID列表
-     * @param uploadUserId 上传用户ID
+     * @param input            文件内容
+     * @param originalFilename 原始文件名，用于检查后缀
+     * @return 接收结果
+     */
+    ImageIngest.Result receiveFile(InputStream input, String originalFilename);
+
+    /**
+     * 用已接收完整的文件创建壁纸，如普通上传或分片上传合并后的文件
+     * <p>
+     * 文件格式以魔数为准，不是允许的图片格式时拒绝；临时文件需与上传目录同盘，调用后不再可用
+     *
+     * @param upload           接收结果
+     * @param originalFilename 原始文件名，用于取得后缀
+     * @param wallpaper        壁纸信息
+     * @param tagIds           标签ID列表
+     * @param uploadUserId     上传用户ID
      * @return 壁纸信息
      */
-    WpWallpaper uploadWallpaper(MultipartFile file, WpWallpaper wallpaper, List<Long> tagIds, Long uploadUserId);
+    WpWallpaper uploadWallpaper(ImageIngest.Result upload, String originalFilename, WpWallpaper wallpaper, List<Long> tagIds, Long uploadUserId);
+
+    /**
+     * 删除壁纸，并释放其文件内容引用
+     *
+     * @param id 壁纸ID
+     * @return 是否成功
+     */
+    boolean deleteWallpaper(Long id);
 
     /**
      * 分页查询壁纸列表
@@ -31,9 +55,10 @@ public interface WpWallpaperService extends IService<WpWallpaper> {
      * @param categoryId 分类ID
      * @param tagId      标签ID
      * @param keyword    关键词
+     * @param color      颜色分类名称
      * @return 壁纸列表
      */
-    IPage<WpWallpaper> pageWallpapers(Integer page, Integer pageSize, Long categoryId, Long tagId, String keyword);
+    IPage<WpWallpaper> pageWallpapers(Integer page, Integer pageSize, Long categoryId, Long tagId, String keyword, String color);
 
     /**
      * 获取推荐壁纸
@@ -85,4 +110,12 @@ public interface WpWallpaperService extends IService<WpWallpaper> {
     boolean auditWallpaper(Long id, Integer status);
 
     void updateWallpaperTagCountByWallpaperId(Long wallpaperId);
-} 
\ No newline at end of file
+
+    /**
+     * 生成下载文件名：标题去掉文件名中不允许的字符，加上原图后缀
+     *
+     * @param wallpaper 壁纸
+     * @return 下载文件名
+     */
+    String getDownloadName(WpWallpaper wallpaper);
+}
@@ -0,0 +1,35 @@
+package com.wallpaper.management.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 壁纸打包下载服务接口
+ */
+public interface ZipDownloadService {
+
+    /**
+     * 将选中的壁纸原图边读边打包为ZIP输出，不产生临时文件
+     * <p>
+     * ids、categoryId、favorites三者必须且只能指定一个
+     *
+     * @param ids        壁纸ID列表
+     * @param categoryId 分类ID（包含子分类）
+     * @param favorites  是否下载当前用户的收藏
+     * @param request    HTTP请求
+     * @param response   HTTP响应
+     * @throws IOException 输出失败
+     */
+    void download(List<Long> ids, Long categoryId, boolean favorites,
+                  HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    /**
+     * 获取打包下载统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,391 @@
+package com.wallpaper.management.service.impl;
+
+import com.wallpaper.management.service.BandwidthShapingService;
+import com.wallpaper.management.util.GcraRateLimiter;
+import com.wallpaper.management.utils.ShiroUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shiro.SecurityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * 下载带宽整形服务实现类
+ * <p>
+ * 每个客户端一个GCRA令牌桶，另有一个可选的全局桶限制总带宽。费用为字节数除以类别权重，
+ * 缩略图权重高，同样的额度能取得更多缩略图；全局桶饱和时各类别按权重分享带宽。
+ * 响应体在突发额度内时一次性放行（仍可走sendfile），否则按块申请额度并暂停，
+ * 每块只有一到两次CAS，没有锁。限速输出会占用文件输出线程，因此限制每个客户端同时被限速的响应数。
+ */
+@Slf4j
+@Service
+public class BandwidthShapingServiceImpl implements BandwidthShapingService {
+
+    /**
+     * 限速输出时每次申请额度的块大小
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final int TOP_CLIENTS = 20;
+
+    private static final Lease UNLIMITED = new UnlimitedLease();
+
+    @Value("${file.shaping.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.shaping.client-rate:10485760}")
+    private long clientRate;
+
+    @Value("${file.shaping.client-burst:33554432}")
+    private long clientBurst;
+
+    @Value("${file.shaping.global-rate:0}")
+    private long globalRate;
+
+    @Value("${file.shaping.global-burst:67108864}")
+    private long globalBurst;
+
+    @Value("${file.shaping.thumbnail-weight:4}")
+    private double thumbnailWeight;
+
+    @Value("${file.shaping.original-weight:1}")
+    private double originalWeight;
+
+    @Value("${file.shaping.max-paced-per-client:2}")
+    private int maxPacedPerClient;
+
+    @Value("${file.shaping.max-clients:100000}")
+    private int maxClients;
+
+    private final Map<String, ClientState> clients = new ConcurrentHashMap<>();
+
+    private GcraRateLimiter globalLimiter;
+
+    private final AtomicLong admitted = new AtomicLong();
+
+    private final AtomicLong paced = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong delayNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (thumbnailWeight <= 0 || originalWeight <= 0) {
+            throw new IllegalStateException("file.shaping权重必须大于0");
+        }
+        globalLimiter = globalRate > 0 ? new GcraRateLimiter(globalRate, globalBurst) : null;
+        log.info("下载带宽整形: enabled={}，客户端{}字节/秒（突发{}），全局{}字节/秒", enabled, clientRate, clientBurst, globalRate);
+    }
+
+    /**
+     * 为一次响应申请带宽
+     *
+     * @param request      HTTP请求
+     * @param trafficClass 流量类别
+     * @param bytes        响应体字节数，未知时传-1
+     * @return 租约
+     */
+    @Override
+    public Lease acquire(HttpServletRequest request, TrafficClass trafficClass, long bytes) {
+        if (!enabled || bytes == 0) {
+            return UNLIMITED;
+        }
+        ClientState client = clientFor(request);
+        double weight = trafficClass == TrafficClass.THUMBNAIL ? thumbnailWeight : originalWeight;
+
+        boolean clientPrepaid = false;
+        if (bytes >= 0) {
+            double cost = bytes / weight;
+            clientPrepaid = client.limiter.tryAcquire(cost);
+            if (clientPrepaid && (globalLimiter == null || globalLimiter.tryAcquire(cost))) {
+                client.bytes.addAndGet(bytes);
+                admitted.incrementAndGet();
+                return UNLIMITED;
+            }
+        }
+
+        if (client.pacedResponses.incrementAndGet() > maxPacedPerClient) {
+            client.pacedResponses.decrementAndGet();
+            rejected.incrementAndGet();
+            long delay = client.limiter.delayFor(CHUNK_SIZE / weight);
+            return new RejectedLease(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(delay) + 1));
+        }
+        paced.incrementAndGet();
+        return new PacedLease(client, weight, !clientPrepaid);
+    }
+
+    /**
+     * 获取限速状态
+     *
+     * @return 各客户端积压及限速统计
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> topClients = clients.entrySet().stream()
+                .filter(e -> e.getValue().limiter.backlogNanos() > 0 || e.getValue().pacedResponses.get() > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, ClientState> e) -> e.getValue().limiter.backlogNanos()).reversed())
+                .limit(TOP_CLIENTS)
+                .map(e -> {
+                    Map<String, Object> client = new LinkedHashMap<>();
+                    client.put("client", e.getKey());
+                    client.put("backlogMillis", TimeUnit.NANOSECONDS.toMillis(e.getValue().limiter.backlogNanos()));
+                    client.put("pacedResponses", e.getValue().pacedResponses.get());
+                    client.put("bytes", e.getValue().bytes.get());
+                    client.put("delayMillis", TimeUnit.NANOSECONDS.toMillis(e.getValue().delayNanos.get()));
+                    return client;
+                })
+                .collect(Collectors.toList());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("clientRate", clientRate);
+        stats.put("clientBurst", clientBurst);
+        stats.put("globalRate", globalRate);
+        stats.put("globalBacklogMillis", globalLimiter == null ? 0 : TimeUnit.NANOSECONDS.toMillis(globalLimiter.backlogNanos()));
+        stats.put("thumbnailWeight", thumbnailWeight);
+        stats.put("originalWeight", originalWeight);
+        stats.put("trackedClients", clients.size());
+        stats.put("admitted", admitted.get());
+        stats.put("paced", paced.get());
+        stats.put("rejected", rejected.get());
+        stats.put("delayMillis", TimeUnit.NANOSECONDS.toMillis(delayNanos.get()));
+        stats.put("topClients", topClients);
+        return stats;
+    }
+
+    /**
+     * 获取客户端状态，登录用户按用户ID，否则按IP
+     *
+     * @param request HTTP请求
+     * @return 客户端状态
+     */
+    private ClientState clientFor(HttpServletRequest request) {
+        Long userId = SecurityUtils.getSubject().isAuthenticated() ? ShiroUtil.getUserId() : null;
+        String key = userId != null ? "user:" + userId : "ip:" + request.getRemoteAddr();
+        ClientState client = clients.get(key);
+        if (client != null) {
+            return client;
+        }
+        if (clients.size() >= maxClients) {
+            evictIdleClients();
+        }
+        return clients.computeIfAbsent(key, k -> new ClientState(new GcraRateLimiter(clientRate, clientBurst)));
+    }
+
+    /**
+     * 移除额度已完全恢复且没有进行中响应的客户端，它们的状态与新建时相同
+     */
+    private void evictIdleClients() {
+        List<String> idle = new ArrayList<>();
+        clients.forEach((key, client) -> {
+            if (client.limiter.backlogNanos() == 0 && client.pacedResponses.get() == 0) {
+                idle.add(key);
+            }
+        });
+        idle.forEach(clients::remove);
+    }
+
+    /**
+     * 客户端限速状态
+     */
+    private static class ClientState {
+
+        private final GcraRateLimiter limiter;
+
+        private final AtomicInteger pacedResponses = new AtomicInteger();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final AtomicLong delayNanos = new AtomicLong();
+
+        ClientState(GcraRateLimiter limiter) {
+            this.limiter = limiter;
+        }
+    }
+
+    /**
+     * 不限速的租约
+     */
+    private static class UnlimitedLease implements Lease {
+
+        @Override
+        public boolean isRejected() {
+            return false;
+        }
+
+        @Override
+        public long getRetryAfterSeconds() {
+            return 0;
+        }
+
+        @Override
+        public boolean isPaced() {
+            return false;
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 被拒绝的租约
+     */
+    private static class RejectedLease extends UnlimitedLease {
+
+        private final long retryAfterSeconds;
+
+        RejectedLease(long retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public boolean isRejected() {
+            return true;
+        }
+
+        @Override
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    /**
+     * 限速输出的租约
+     */
+    private class PacedLease implements Lease {
+
+        private final ClientState client;
+
+        private final double weight;
+
+        /**
+         * 客户端桶是否还需按块计费（申请时已一次性扣过则为false）
+         */
+        private final boolean chargeClient;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        PacedLease(ClientState client, double weight, boolean chargeClient) {
+            this.client = client;
+            this.weight = weight;
+            this.chargeClient = chargeClient;
+        }
+
+        @Override
+        public boolean isRejected() {
+            return false;
+        }
+
+        @Override
+        public long getRetryAfterSeconds() {
+            return 0;
+        }
+
+        @Override
+        public boolean isPaced() {
+            return true;
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            return new PacedOutputStream(out, this);
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                client.pacedResponses.decrementAndGet();
+            }
+        }
+
+        /**
+         * 申请一块的额度并在需要时暂停
+         *
+         * @param bytes 本块字节数
+         * @throws IOException 暂停被中断
+         */
+        void pace(int bytes) throws IOException {
+            double cost = bytes / weight;
+            long wait = chargeClient ? client.limiter.reserve(cost) : 0;
+            if (globalLimiter != null) {
+                wait = Math.max(wait, globalLimiter.reserve(cost));
+            }
+            client.bytes.addAndGet(bytes);
+            if (wait > 0) {
+                client.delayNanos.addAndGet(wait);
+                delayNanos.addAndGet(wait);
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("限速输出被中断");
+                }
+            }
+        }
+    }
+
+    /**
+     * 限速输出流，按块申请额度
+     */
+    private static class PacedOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final PacedLease lease;
+
+        PacedOutputStream(OutputStream out, PacedLease lease) {
+            this.out = out;
+            this.lease = lease;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            lease.pace(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, CHUNK_SIZE);
+                lease.pace(chunk);
+                out.write(b, off, chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
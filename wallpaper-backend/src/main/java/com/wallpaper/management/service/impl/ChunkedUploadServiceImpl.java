@@ -0,0 +1,608 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.ChunkedUploadService;
+import com.wallpaper.management.service.WpWallpaperService;
+import com.wallpaper.management.util.ImageIngest;
+import com.wallpaper.management.vo.UploadSessionVO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 分片上传服务实现类
+ * <p>
+ * 每个上传在上传目录的.tmp/chunked下对应两个文件：按文件大小预分配的数据文件（.part），
+ * 以及记录会话信息和已接收分片位图的状态文件（.properties）。状态文件在每个分片写入并落盘后整体替换，
+ * 服务重启时据此恢复会话；同一分片同时只允许一个请求写入，不同分片的写入互不影响
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadServiceImpl implements ChunkedUploadService {
+
+    /**
+     * 上传目录下的临时目录，与普通上传相同，保证合并后的文件与正式目录同盘
+     */
+    private static final String TEMP_DIR = ".tmp";
+
+    private static final String CHUNK_DIR = "chunked";
+
+    private static final String DATA_SUFFIX = ".part";
+
+    private static final String STATE_SUFFIX = ".properties";
+
+    private static final Pattern UPLOAD_ID = Pattern.compile("[0-9a-f]{32}");
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-fA-F]{64}");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WpWallpaperService wallpaperService;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @Value("${file.upload.allowed-types}")
+    private String allowedTypes;
+
+    @Value("${file.upload.chunk.size:5242880}")
+    private int chunkSize;
+
+    @Value("${file.upload.chunk.max-file-size:104857600}")
+    private long maxFileSize;
+
+    @Value("${file.upload.chunk.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    @Value("${file.upload.chunk.expire:86400000}")
+    private long expire;
+
+    @Value("${file.upload.chunk.cleanup-interval:600000}")
+    private long cleanupInterval;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private final AtomicLong acceptedChunks = new AtomicLong();
+
+    private final AtomicLong checksumFailures = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong aborted = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private Path root;
+
+    private volatile boolean running;
+
+    private Thread cleaner;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(uploadPath, TEMP_DIR, CHUNK_DIR).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        load();
+        running = true;
+        cleaner = new Thread(this::runCleaner, "chunked-upload-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+        log.info("分片上传初始化完成，目录={}，分片大小={}字节，恢复未完成的上传{}个", root, chunkSize, sessions.size());
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        cleaner.interrupt();
+        cleaner.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 创建上传会话
+     *
+     * @param fileName 原始文件名
+     * @param fileSize 文件大小（字节）
+     * @param sha256   整个文件的SHA-256，为空时不校验
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    @Override
+    public UploadSessionVO init(String fileName, long fileSize, String sha256, Long userId) {
+        if (StrUtil.isBlank(fileName)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件名不能为空");
+        }
+        String suffix = FileUtil.getSuffix(fileName);
+        if (StrUtil.isBlank(suffix) || !Arrays.asList(allowedTypes.split(",")).contains(suffix.toLowerCase())) {
+            throw new BusinessException(ResultCode.FILE_TYPE_ERROR);
+        }
+        if (fileSize <= 0) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件不能为空");
+        }
+        if (fileSize > maxFileSize) {
+            throw new BusinessException(ResultCode.FILE_SIZE_ERROR);
+        }
+        if (StrUtil.isNotBlank(sha256) && !SHA256.matcher(sha256).matches()) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件校验值格式错误");
+        }
+
+        Session session = new Session(IdUtil.fastSimpleUUID(), userId, fileName, fileSize, chunkSize,
+                StrUtil.isBlank(sha256) ? null : sha256.toLowerCase(), new BitSet(), System.currentTimeMillis());
+        synchronized (sessions) {
+            long active = sessions.values().stream().filter(s -> s.userId.equals(userId)).count();
+            if (active >= maxSessionsPerUser) {
+                throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "未完成的上传过多，请先完成或取消");
+            }
+            try {
+                // 预分配整个文件，各分片按偏移量直接写入，合并时无需复制
+                try (RandomAccessFile file = new RandomAccessFile(dataPath(session.id).toFile(), "rw")) {
+                    file.setLength(fileSize);
+                }
+                writeState(session);
+            } catch (IOException e) {
+                deleteFiles(session.id);
+                log.error("创建分片上传失败: {}", fileName, e);
+                throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), "创建上传失败");
+            }
+            sessions.put(session.id, session);
+        }
+        log.info("创建分片上传: uploadId={}, userId={}, 文件={}, 大小={}, 分片数={}",
+                session.id, userId, fileName, fileSize, session.chunkCount);
+        return toVO(session);
+    }
+
+    /**
+     * 查询上传会话
+     *
+     * @param uploadId 上传ID
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    @Override
+    public UploadSessionVO getSession(String uploadId, Long userId) {
+        return toVO(sessionOf(uploadId, userId));
+    }
+
+    /**
+     * 接收一个分片
+     *
+     * @param uploadId 上传ID
+     * @param index    分片序号，从0开始
+     * @param sha256   分片内容的SHA-256
+     * @param input    分片内容
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    @Override
+    public UploadSessionVO writeChunk(String uploadId, int index, String sha256, InputStream input, Long userId) {
+        Session session = sessionOf(uploadId, userId);
+        if (index < 0 || index >= session.chunkCount) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "分片序号超出范围: " + index);
+        }
+        if (StrUtil.isBlank(sha256) || !SHA256.matcher(sha256).matches()) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "分片校验值格式错误");
+        }
+        synchronized (session) {
+            if (session.closed) {
+                throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "上传不存在或已结束");
+            }
+            if (!session.writing.add(index)) {
+                throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "分片正在上传: " + index);
+            }
+            // 重传已接收的分片时先撤销记录，写入中途中断不会留下已接收但内容不完整的分片
+            if (session.received.get(index)) {
+                session.received.clear(index);
+                writeStateQuietly(session);
+            }
+        }
+
+        boolean accepted = false;
+        try {
+            long length = session.chunkLength(index);
+            String actual = receive(session, (long) index * session.chunkSize, length, input);
+            if (!actual.equalsIgnoreCase(sha256)) {
+                checksumFailures.incrementAndGet();
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "分片校验失败: " + index);
+            }
+            accepted = true;
+            receivedBytes.addAndGet(length);
+            acceptedChunks.incrementAndGet();
+        } finally {
+            synchronized (session) {
+                session.writing.remove(index);
+                session.lastActive = System.currentTimeMillis();
+                if (accepted && !session.closed) {
+                    session.received.set(index);
+                    writeStateQuietly(session);
+                }
+            }
+        }
+        return toVO(session);
+    }
+
+    /**
+     * 完成上传
+     *
+     * @param uploadId     上传ID
+     * @param wallpaper    壁纸信息
+     * @param tagIds       标签ID列表
+     * @param uploadUserId 上传用户ID
+     * @param userId       当前用户ID
+     * @return 壁纸信息
+     */
+    @Override
+    public WpWallpaper complete(String uploadId, WpWallpaper wallpaper, List<Long> tagIds, Long uploadUserId, Long userId) {
+        Session session = sessionOf(uploadId, userId);
+        synchronized (session) {
+            if (session.closed) {
+                throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "上传不存在或已结束");
+            }
+            if (!session.writing.isEmpty()) {
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "仍有分片正在上传");
+            }
+            int received = session.received.cardinality();
+            if (received != session.chunkCount) {
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(),
+                        "分片未全部上传: " + received + "/" + session.chunkCount);
+            }
+            session.closed = true;
+        }
+        sessions.remove(session.id);
+
+        // 一次读取合并后的文件，同时得到摘要、格式和宽高，存储时不再读取
+        ImageIngest.Result upload;
+        try {
+            Files.deleteIfExists(statePath(session.id));
+            upload = ImageIngest.scan(dataPath(session.id).toFile());
+            if (session.sha256 != null && !session.sha256.equals(upload.getSha256())) {
+                checksumFailures.incrementAndGet();
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件校验失败，请重新上传");
+            }
+        } catch (IOException e) {
+            deleteFiles(session.id);
+            throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), e.getMessage());
+        } catch (RuntimeException e) {
+            deleteFiles(session.id);
+            throw e;
+        }
+
+        // 合并后的文件按普通上传的临时文件处理，存储时重命名到正式目录
+        WpWallpaper uploaded = wallpaperService.uploadWallpaper(upload, session.fileName, wallpaper, tagIds, uploadUserId);
+        completed.incrementAndGet();
+        log.info("分片上传完成: uploadId={}, wallpaperId={}", session.id, uploaded.getId());
+        return uploaded;
+    }
+
+    /**
+     * 取消上传
+     *
+     * @param uploadId 上传ID
+     * @param userId   当前用户ID
+     */
+    @Override
+    public void abort(String uploadId, Long userId) {
+        Session session = sessionOf(uploadId, userId);
+        synchronized (session) {
+            if (session.closed) {
+                return;
+            }
+            session.closed = true;
+        }
+        sessions.remove(session.id);
+        deleteFiles(session.id);
+        aborted.incrementAndGet();
+    }
+
+    /**
+     * 获取分片上传统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("reservedBytes", sessions.values().stream().mapToLong(s -> s.fileSize).sum());
+        stats.put("receivedBytes", receivedBytes.get());
+        stats.put("acceptedChunks", acceptedChunks.get());
+        stats.put("checksumFailures", checksumFailures.get());
+        stats.put("completed", completed.get());
+        stats.put("aborted", aborted.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+
+    /**
+     * 读取分片内容，计算SHA-256的同时按偏移量写入数据文件，写完后落盘
+     *
+     * @param session  上传会话
+     * @param position 分片在文件中的偏移量
+     * @param length   分片应有的长度
+     * @param input    分片内容
+     * @return 分片内容的SHA-256
+     */
+    private String receive(Session session, long position, long length, InputStream input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(dataPath(session.id), StandardOpenOption.WRITE)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                if (written + read > length) {
+                    throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "分片长度应为" + length + "字节");
+                }
+                digest.update(buffer, 0, read);
+                wrapper.clear().limit(read);
+                while (wrapper.hasRemaining()) {
+                    written += channel.write(wrapper, position + written);
+                }
+            }
+            if (written != length) {
+                throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "分片长度应为" + length + "字节");
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.warn("分片接收中断: uploadId={}, offset={}, {}", session.id, position, e.toString());
+            throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), "分片接收中断，请重新上传该分片");
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 查找上传会话并检查所属用户
+     *
+     * @param uploadId 上传ID
+     * @param userId   当前用户ID
+     * @return 上传会话
+     */
+    private Session sessionOf(String uploadId, Long userId) {
+        Session session = uploadId == null || !UPLOAD_ID.matcher(uploadId).matches() ? null : sessions.get(uploadId);
+        if (session == null) {
+            throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "上传不存在或已过期");
+        }
+        if (!session.userId.equals(userId)) {
+            throw new BusinessException(ResultCode.FORBIDDEN);
+        }
+        return session;
+    }
+
+    /**
+     * 启动时恢复未完成的上传，删除缺少状态文件或数据文件的残留
+     */
+    private void load() throws IOException {
+        Set<String> ids = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                if (dot > 0) {
+                    ids.add(name.substring(0, dot));
+                }
+            }
+        }
+        for (String id : ids) {
+            Path state = statePath(id);
+            if (!UPLOAD_ID.matcher(id).matches() || !Files.exists(state) || !Files.exists(dataPath(id))) {
+                deleteFiles(id);
+                continue;
+            }
+            try (Reader reader = Files.newBufferedReader(state, StandardCharsets.UTF_8)) {
+                Properties properties = new Properties();
+                properties.load(reader);
+                Session session = new Session(id,
+                        Long.valueOf(properties.getProperty("userId")),
+                        properties.getProperty("fileName"),
+                        Long.parseLong(properties.getProperty("fileSize")),
+                        Integer.parseInt(properties.getProperty("chunkSize")),
+                        StrUtil.emptyToNull(properties.getProperty("sha256")),
+                        BitSet.valueOf(Base64.getDecoder().decode(properties.getProperty("received", ""))),
+                        Long.parseLong(properties.getProperty("lastActive")));
+                sessions.put(id, session);
+            } catch (IOException | RuntimeException e) {
+                log.warn("分片上传状态文件损坏，删除: {}", state, e);
+                deleteFiles(id);
+            }
+        }
+    }
+
+    /**
+     * 写入状态文件：先写临时文件再原子替换，中途崩溃不会留下不完整的状态
+     *
+     * @param session 上传会话，调用方需持有会话锁或会话尚未发布
+     * @throws IOException 写入失败
+     */
+    private void writeState(Session session) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("userId", String.valueOf(session.userId));
+        properties.setProperty("fileName", session.fileName);
+        properties.setProperty("fileSize", String.valueOf(session.fileSize));
+        properties.setProperty("chunkSize", String.valueOf(session.chunkSize));
+        properties.setProperty("sha256", StrUtil.nullToEmpty(session.sha256));
+        properties.setProperty("received", Base64.getEncoder().encodeToString(session.received.toByteArray()));
+        properties.setProperty("lastActive", String.valueOf(session.lastActive));
+        Path state = statePath(session.id);
+        Path temp = root.resolve(session.id + STATE_SUFFIX + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(temp, state, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 写入状态文件，失败时只记录日志：内存中的状态仍然正确，只影响重启后的恢复
+     *
+     * @param session 上传会话
+     */
+    private void writeStateQuietly(Session session) {
+        try {
+            writeState(session);
+        } catch (IOException e) {
+            log.warn("写入分片上传状态失败: uploadId={}", session.id, e);
+        }
+    }
+
+    private void deleteFiles(String id) {
+        for (Path path : new Path[]{dataPath(id), statePath(id), root.resolve(id + STATE_SUFFIX + ".tmp")}) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("删除分片上传文件失败: {}", path, e);
+            }
+        }
+    }
+
+    private Path dataPath(String id) {
+        return root.resolve(id + DATA_SUFFIX);
+    }
+
+    private Path statePath(String id) {
+        return root.resolve(id + STATE_SUFFIX);
+    }
+
+    private UploadSessionVO toVO(Session session) {
+        UploadSessionVO vo = new UploadSessionVO();
+        synchronized (session) {
+            vo.setUploadId(session.id);
+            vo.setFileName(session.fileName);
+            vo.setFileSize(session.fileSize);
+            vo.setChunkSize(session.chunkSize);
+            vo.setChunkCount(session.chunkCount);
+            vo.setReceivedChunks(session.received.stream().boxed().collect(Collectors.toList()));
+            vo.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(session.lastActive + expire), ZoneId.systemDefault()));
+        }
+        return vo;
+    }
+
+    private void runCleaner() {
+        while (running) {
+            try {
+                Thread.sleep(cleanupInterval);
+            } catch (InterruptedException e) {
+                // 停止时由running退出
+                continue;
+            }
+            long deadline = System.currentTimeMillis() - expire;
+            for (Session session : sessions.values()) {
+                synchronized (session) {
+                    if (session.closed || !session.writing.isEmpty() || session.lastActive > deadline) {
+                        continue;
+                    }
+                    session.closed = true;
+                }
+                sessions.remove(session.id);
+                deleteFiles(session.id);
+                expired.incrementAndGet();
+                log.info("删除过期的分片上传: uploadId={}, 已接收{}/{}",
+                        session.id, session.received.cardinality(), session.chunkCount);
+            }
+        }
+    }
+
+    /**
+     * 上传会话，可变字段由会话对象自身的锁保护
+     */
+    private static class Session {
+
+        private final String id;
+
+        private final Long userId;
+
+        private final String fileName;
+
+        private final long fileSize;
+
+        private final int chunkSize;
+
+        private final int chunkCount;
+
+        private final String sha256;
+
+        /**
+         * 已接收并校验通过的分片
+         */
+        private final BitSet received;
+
+        /**
+         * 正在写入的分片
+         */
+        private final Set<Integer> writing = new HashSet<>();
+
+        private long lastActive;
+
+        /**
+         * 已完成、取消或过期，不再接收分片
+         */
+        private boolean closed;
+
+        Session(String id, Long userId, String fileName, long fileSize, int chunkSize, String sha256,
+                BitSet received, long lastActive) {
+            this.id = id;
+            this.userId = userId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (int) ((fileSize + chunkSize - 1) / chunkSize);
+            this.sha256 = sha256;
+            this.received = received;
+            this.lastActive = lastActive;
+        }
+
+        long chunkLength(int index) {
+            return index == chunkCount - 1 ? fileSize - (long) index * chunkSize : chunkSize;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.wallpaper.management.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.wallpaper.management.entity.WpFileBlob;
+import com.wallpaper.management.entity.WpJobCheckpoint;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.mapper.WpFileBlobMapper;
+import com.wallpaper.management.mapper.WpJobCheckpointMapper;
+import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.DerivativeRebuildService;
+import com.wallpaper.management.service.DerivativeService;
+import com.wallpaper.management.service.WpFileBlobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 派生图批量重建服务实现类
+ * <p>
+ * 按主键分批（keyset）扫描壁纸表，每个文件内容只由引用它的最小ID壁纸负责，共享内容不会重复生成；
+ * 一批内的文件内容提交到独立的ForkJoin线程池并行生成，整批完成后才推进断点，
+ * 因此断点之前的记录都已处理完，重启后从断点继续不会遗漏。
+ * 读取原图按字节数限速，避免重建期间占满磁盘带宽影响文件下载。
+ * 没有文件内容记录的历史壁纸先读取原图登记文件内容（内容已存在时改为引用已有文件），再按同样的方式生成。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DerivativeRebuildServiceImpl implements DerivativeRebuildService {
+
+    private static final String JOB_NAME = "derivative-rebuild";
+
+    /**
+     * 进度中保留的最近失败记录数
+     */
+    private static final int RECENT_FAILURES = 20;
+
+    private final WpWallpaperMapper wallpaperMapper;
+    private final WpFileBlobMapper fileBlobMapper;
+    private final WpJobCheckpointMapper jobCheckpointMapper;
+    private final DerivativeService derivativeService;
+    private final WpFileBlobService fileBlobService;
+
+    @Resource(name = "derivativeRebuildPool")
+    private ForkJoinPool rebuildPool;
+
+    @Value("${file.derivative.rebuild.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.derivative.rebuild.pause-millis:100}")
+    private long pauseMillis;
+
+    @Value("${file.derivative.rebuild.max-bytes-per-second:52428800}")
+    private long maxBytesPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean stopRequested;
+
+    private volatile String phase = "IDLE";
+
+    private volatile long lastId;
+
+    private volatile long total;
+
+    private volatile LocalDateTime roundStartTime;
+
+    private volatile LocalDateTime startTime;
+
+    private volatile LocalDateTime finishTime;
+
+    /**
+     * 本轮（含重启前）累计处理的文件内容数
+     */
+    private final AtomicLong processed = new AtomicLong();
+
+    /**
+     * 本次启动以来处理的文件内容数，用于计算吞吐量
+     */
+    private final AtomicLong sessionProcessed = new AtomicLong();
+
+    private final AtomicLong succeeded = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * 本次启动以来登记了文件内容的历史壁纸数
+     */
+    private final AtomicLong adopted = new AtomicLong();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final Deque<Long> recentFailures = new ConcurrentLinkedDeque<>();
+
+    private final Object throttleLock = new Object();
+
+    /**
+     * 限速：下一次读取最早可以开始的时间
+     */
+    private long nextReadNanos;
+
+    /**
+     * 应用启动后继续上次因停机中断的重建任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        try {
+            WpJobCheckpoint checkpoint = jobCheckpointMapper.selectById(JOB_NAME);
+            if (checkpoint != null && WpJobCheckpoint.STATUS_RUNNING.equals(checkpoint.getStatus())) {
+                log.info("派生图重建上次未完成，从断点继续: lastId={}", checkpoint.getLastId());
+                start(false);
+            }
+        } catch (Exception e) {
+            log.warn("读取派生图重建断点失败: {}", e.toString());
+        }
+    }
+
+    /**
+     * 启动重建任务
+     *
+     * @param restart 是否忽略断点从头开始
+     * @return 是否启动成功
+     */
+    @Override
+    public boolean start(boolean restart) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            WpJobCheckpoint checkpoint = jobCheckpointMapper.selectById(JOB_NAME);
+            if (restart || checkpoint == null || WpJobCheckpoint.STATUS_FINISHED.equals(checkpoint.getStatus())) {
+                checkpoint = new WpJobCheckpoint();
+                checkpoint.setJobName(JOB_NAME);
+                checkpoint.setLastId(0L);
+                checkpoint.setProcessedCount(0L);
+                checkpoint.setFailedCount(0L);
+                checkpoint.setCreateTime(LocalDateTime.now());
+            }
+            checkpoint.setStatus(WpJobCheckpoint.STATUS_RUNNING);
+            jobCheckpointMapper.save(checkpoint);
+
+            stopRequested = false;
+            lastId = checkpoint.getLastId();
+            roundStartTime = checkpoint.getCreateTime();
+            processed.set(checkpoint.getProcessedCount());
+            failed.set(checkpoint.getFailedCount());
+            sessionProcessed.set(0);
+            succeeded.set(0);
+            skipped.set(0);
+            adopted.set(0);
+            bytesRead.set(0);
+            recentFailures.clear();
+            total = processed.get() + wallpaperMapper.selectCount(ownerQuery().gt(WpWallpaper::getId, lastId));
+            startTime = LocalDateTime.now();
+            finishTime = null;
+            phase = "RUNNING";
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+
+        Thread worker = new Thread(this::run, "derivative-rebuild");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    /**
+     * 请求停止重建任务
+     */
+    @Override
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * 获取重建进度
+     *
+     * @return 进度信息
+     */
+    @Override
+    public Map<String, Object> getProgress() {
+        long done = processed.get();
+        long sessionDone = sessionProcessed.get();
+        LocalDateTime from = startTime;
+        LocalDateTime to = finishTime == null ? LocalDateTime.now() : finishTime;
+        double seconds = from == null ? 0 : Math.max(1, Duration.between(from, to).toMillis()) / 1000D;
+        double perSecond = seconds == 0 ? 0 : sessionDone / seconds;
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", running.get());
+        progress.put("phase", phase);
+        progress.put("lastId", lastId);
+        progress.put("total", total);
+        progress.put("processed", done);
+        progress.put("succeeded", succeeded.get());
+        progress.put("skipped", skipped.get());
+        progress.put("failed", failed.get());
+        progress.put("adopted", adopted.get());
+        progress.put("itemsPerSecond", Math.round(perSecond * 100) / 100D);
+        progress.put("bytesPerSecond", seconds == 0 ? 0 : Math.round(bytesRead.get() / seconds));
+        progress.put("etaSeconds", running.get() && perSecond > 0 ? Math.round(Math.max(0, total - done) / perSecond) : null);
+        progress.put("recentFailures", new ArrayList<>(recentFailures));
+        progress.put("roundStartTime", roundStartTime);
+        progress.put("startTime", startTime);
+        progress.put("finishTime", finishTime);
+        return progress;
+    }
+
+    private void run() {
+        log.info("派生图重建开始，lastId={}，每批{}条，并行度{}", lastId, batchSize, rebuildPool.getParallelism());
+        String status = WpJobCheckpoint.STATUS_FAILED;
+        try {
+            rebuild();
+            status = stopRequested ? WpJobCheckpoint.STATUS_STOPPED : WpJobCheckpoint.STATUS_FINISHED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = WpJobCheckpoint.STATUS_STOPPED;
+        } catch (Exception e) {
+            log.error("派生图重建失败，lastId={}", lastId, e);
+        } finally {
+            phase = status;
+            try {
+                saveCheckpoint(status);
+            } catch (Exception e) {
+                log.error("保存派生图重建断点失败，lastId={}", lastId, e);
+            }
+            finishTime = LocalDateTime.now();
+            running.set(false);
+            log.info("派生图重建结束: {}", getProgress());
+        }
+    }
+
+    private void rebuild() throws InterruptedException {
+        while (!stopRequested) {
+            List<WpWallpaper> batch = wallpaperMapper.selectList(ownerQuery()
+                    .select(WpWallpaper::getId, WpWallpaper::getBlobId, WpWallpaper::getFilePath,
+                            WpWallpaper::getThumbnailPath, WpWallpaper::getFileSize)
+                    .gt(WpWallpaper::getId, lastId)
+                    .orderByAsc(WpWallpaper::getId)
+                    .last("LIMIT " + batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(batch.size());
+            batch.stream()
+                    .filter(wallpaper -> wallpaper.getBlobId() == null)
+                    .forEach(wallpaper -> tasks.add(rebuildPool.submit(() -> rebuildLegacy(wallpaper))));
+
+            List<Long> blobIds = batch.stream()
+                    .map(WpWallpaper::getBlobId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            Map<Long, Long> sizes = blobIds.isEmpty() ? Collections.emptyMap()
+                    : fileBlobMapper.selectList(Wrappers.<WpFileBlob>lambdaQuery()
+                            .select(WpFileBlob::getId, WpFileBlob::getFileSize)
+                            .in(WpFileBlob::getId, blobIds))
+                    .stream()
+                    .filter(blob -> blob.getFileSize() != null)
+                    .collect(Collectors.toMap(WpFileBlob::getId, WpFileBlob::getFileSize));
+
+            for (Long blobId : blobIds) {
+                long size = sizes.getOrDefault(blobId, 0L);
+                tasks.add(rebuildPool.submit(() -> rebuildOne(blobId, size)));
+            }
+            tasks.forEach(ForkJoinTask::join);
+
+            // 整批完成后才推进断点
+            lastId = batch.get(batch.size() - 1).getId();
+            saveCheckpoint(WpJobCheckpoint.STATUS_RUNNING);
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    /**
+     * 重新生成一个文件内容的派生图，异常只计入失败，不影响同批其他记录
+     *
+     * @param blobId 文件内容ID
+     * @param size   原图大小（字节），用于限速
+     */
+    private void rebuildOne(Long blobId, long size) {
+        try {
+            throttle(size);
+            DerivativeService.RegenerateResult result = derivativeService.regenerate(blobId);
+            if (result == DerivativeService.RegenerateResult.SUCCEEDED) {
+                succeeded.incrementAndGet();
+                bytesRead.addAndGet(size);
+            } else if (result == DerivativeService.RegenerateResult.SKIPPED) {
+                skipped.incrementAndGet();
+            } else {
+                recordFailure(blobId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recordFailure(blobId);
+        } catch (RuntimeException e) {
+            log.warn("派生图重建失败: blobId={}", blobId, e);
+            recordFailure(blobId);
+        } finally {
+            countProcessed();
+        }
+    }
+
+    /**
+     * 为历史壁纸登记文件内容后重新生成派生图；内容已由更小ID的壁纸引用时由该壁纸负责，不重复生成
+     *
+     * @param wallpaper 没有文件内容记录的壁纸
+     */
+    private void rebuildLegacy(WpWallpaper wallpaper) {
+        WpFileBlob blob;
+        try {
+            // 登记时读取整个原图计算SHA-256
+            throttle(wallpaper.getFileSize() == null ? 0 : wallpaper.getFileSize());
+            blob = fileBlobService.adopt(wallpaper);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.incrementAndGet();
+            countProcessed();
+            return;
+        } catch (IOException | RuntimeException e) {
+            log.warn("历史壁纸登记文件内容失败: wallpaperId={}", wallpaper.getId(), e);
+            failed.incrementAndGet();
+            countProcessed();
+            return;
+        }
+        if (blob == null) {
+            skipped.incrementAndGet();
+            countProcessed();
+            return;
+        }
+        adopted.incrementAndGet();
+        boolean owner = wallpaperMapper.selectCount(Wrappers.<WpWallpaper>lambdaQuery()
+                .eq(WpWallpaper::getBlobId, blob.getId())
+                .lt(WpWallpaper::getId, wallpaper.getId())) == 0;
+        if (!owner) {
+            skipped.incrementAndGet();
+            countProcessed();
+            return;
+        }
+        rebuildOne(blob.getId(), blob.getFileSize() == null ? 0 : blob.getFileSize());
+    }
+
+    private void countProcessed() {
+        processed.incrementAndGet();
+        sessionProcessed.incrementAndGet();
+    }
+
+    private void recordFailure(Long blobId) {
+        failed.incrementAndGet();
+        recentFailures.addFirst(blobId);
+        while (recentFailures.size() > RECENT_FAILURES) {
+            recentFailures.pollLast();
+        }
+    }
+
+    /**
+     * 按字节数限速，所有并行任务共享同一额度
+     *
+     * @param bytes 即将读取的字节数
+     * @throws InterruptedException 等待时被中断
+     */
+    private void throttle(long bytes) throws InterruptedException {
+        if (maxBytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (throttleLock) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextReadNanos);
+            nextReadNanos = start + bytes * TimeUnit.SECONDS.toNanos(1) / maxBytesPerSecond;
+            wait = start - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void saveCheckpoint(String status) {
+        WpJobCheckpoint checkpoint = new WpJobCheckpoint();
+        checkpoint.setJobName(JOB_NAME);
+        checkpoint.setStatus(status);
+        checkpoint.setLastId(lastId);
+        checkpoint.setProcessedCount(processed.get());
+        checkpoint.setFailedCount(failed.get());
+        checkpoint.setCreateTime(roundStartTime);
+        jobCheckpointMapper.save(checkpoint);
+    }
+
+    /**
+     * 每个文件内容只取引用它的最小ID壁纸；没有文件内容记录的历史壁纸（blob_id为NULL，子查询不成立）全部纳入
+     *
+     * @return 查询条件
+     */
+    private LambdaQueryWrapper<WpWallpaper> ownerQuery() {
+        return Wrappers.<WpWallpaper>lambdaQuery()
+                .notExists("SELECT 1 FROM wp_wallpaper o WHERE o.blob_id = wp_wallpaper.blob_id "
+                        + "AND o.id < wp_wallpaper.id AND o.is_deleted = 0");
+    }
+}
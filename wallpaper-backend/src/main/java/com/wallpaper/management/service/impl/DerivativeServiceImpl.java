@@ -0,0 +1,470 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpFileBlob;
+import com.wallpaper.management.entity.WpFileDerivative;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.mapper.WpFileBlobMapper;
+import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.DerivativeService;
+import com.wallpaper.management.service.DuplicateDetectionService;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.service.WpFileBlobService;
+import com.wallpaper.management.service.WpWallpaperColorService;
+import com.wallpaper.management.util.BlurHash;
+import com.wallpaper.management.util.ImageEncoder;
+import com.wallpaper.management.util.ImageUtils;
+import com.wallpaper.management.util.PerceptualHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 派生图生成服务实现类
+ * <p>
+ * 每个文件内容生成一组按宽度缩放的版本（小于原图宽度的档位）和一张缩略图。
+ * 处理状态保存在文件内容记录上，任务领取通过条件更新完成，多实例部署时同一记录只会被一个实例处理。
+ * 恢复线程定期把到期的待处理记录重新提交，并把长时间停留在处理中（进程退出）的记录重置，
+ * 因此提交被拒绝或服务重启都不会丢失任务。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DerivativeServiceImpl implements DerivativeService {
+
+    private static final int ERROR_MAX_LENGTH = 500;
+
+    private final WpFileBlobMapper fileBlobMapper;
+    private final WpWallpaperMapper wallpaperMapper;
+    private final WpFileBlobService fileBlobService;
+    private final FileStorageService fileStorageService;
+    private final FileTierService fileTierService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final WpWallpaperColorService wallpaperColorService;
+    private final ImageEncoder.Options imageEncoderOptions;
+    private final ImageDecodeService imageDecodeService;
+
+    @Resource(name = "derivativeExecutor")
+    private ThreadPoolTaskExecutor derivativeExecutor;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @Value("${file.upload.thumbnail.width}")
+    private int thumbnailWidth;
+
+    @Value("${file.upload.thumbnail.height}")
+    private int thumbnailHeight;
+
+    @Value("${file.derivative.widths:320,640,1280,1920,2560}")
+    private int[] widths;
+
+    @Value("${file.derivative.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${file.derivative.retry-delay:60000}")
+    private long retryDelay;
+
+    @Value("${file.derivative.recovery-interval:30000}")
+    private long recoveryInterval;
+
+    @Value("${file.derivative.stale-timeout:600000}")
+    private long staleTimeout;
+
+    @Value("${file.derivative.recovery-batch-size:100}")
+    private int recoveryBatchSize;
+
+    /**
+     * 已提交到线程池、尚未执行完的文件内容ID
+     */
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    private Thread recovery;
+
+    private volatile boolean running;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong deferred = new AtomicLong();
+
+    private final AtomicLong succeeded = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        running = true;
+        recovery = new Thread(this::runRecovery, "derivative-recovery");
+        recovery.setDaemon(true);
+        recovery.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        recovery.interrupt();
+        recovery.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 提交文件内容的派生图生成任务
+     *
+     * @param blobId 文件内容ID
+     */
+    @Override
+    public void submit(Long blobId) {
+        if (blobId == null || !queued.add(blobId)) {
+            return;
+        }
+        try {
+            derivativeExecutor.execute(() -> {
+                try {
+                    process(blobId);
+                } finally {
+                    queued.remove(blobId);
+                }
+            });
+            submitted.incrementAndGet();
+        } catch (TaskRejectedException e) {
+            queued.remove(blobId);
+            deferred.incrementAndGet();
+            log.debug("派生图线程池已满，稍后重新提交: blobId={}", blobId);
+        }
+    }
+
+    /**
+     * 将处理失败的记录重置为待处理
+     *
+     * @return 重置的记录数
+     */
+    @Override
+    public int retryFailed() {
+        int count = fileBlobMapper.resetFailedProcessing();
+        if (count > 0) {
+            fileBlobMapper.selectDueProcessingIds(recoveryBatchSize).forEach(this::submit);
+        }
+        return count;
+    }
+
+    /**
+     * 在调用线程中重新生成派生图
+     *
+     * @param blobId 文件内容ID
+     * @return 处理结果
+     */
+    @Override
+    public RegenerateResult regenerate(Long blobId) {
+        WpFileBlob blob = fileBlobMapper.selectById(blobId);
+        if (blob == null || fileBlobMapper.claimRegeneration(blobId) == 0) {
+            return RegenerateResult.SKIPPED;
+        }
+        // 领取时尝试次数已重新计为1
+        blob.setProcessingAttempts(0);
+        boolean generated = generate(blob);
+        wallpaperMapper.syncProcessingFromBlob(blobId);
+        duplicateDetectionService.check(blobId);
+        wallpaperColorService.indexBlob(blobId);
+        return generated ? RegenerateResult.SUCCEEDED : RegenerateResult.FAILED;
+    }
+
+    /**
+     * 获取派生图生成统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued.size());
+        stats.put("activeThreads", derivativeExecutor.getActiveCount());
+        stats.put("submitted", submitted.get());
+        stats.put("deferred", deferred.get());
+        stats.put("succeeded", succeeded.get());
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        stats.put("pending", countByStatus(WpFileBlob.PROCESSING_PENDING));
+        stats.put("running", countByStatus(WpFileBlob.PROCESSING_RUNNING));
+        stats.put("failedTotal", countByStatus(WpFileBlob.PROCESSING_FAILED));
+        return stats;
+    }
+
+    /**
+     * 生成一个文件内容的派生图，并把结果同步到引用它的壁纸
+     *
+     * @param blobId 文件内容ID
+     */
+    private void process(Long blobId) {
+        WpFileBlob blob = fileBlobMapper.selectById(blobId);
+        if (blob == null) {
+            // 已被回收
+            return;
+        }
+        if (blob.getProcessingStatus() == WpFileBlob.PROCESSING_PENDING && fileBlobMapper.claimProcessing(blobId) > 0) {
+            generate(blob);
+        }
+        // 已处理完的内容被新壁纸引用时，也在这里补齐壁纸上的缩略图、宽高、感知哈希、调色板和占位图
+        wallpaperMapper.syncProcessingFromBlob(blobId);
+        duplicateDetectionService.check(blobId);
+        wallpaperColorService.indexBlob(blobId);
+    }
+
+    /**
+     * 按所需的最大尺寸降采样解码原图一次，从大到小逐级生成各尺寸派生图，最后以最小一级生成缩略图
+     *
+     * @param blob 已领取的文件内容
+     * @return 是否生成成功
+     */
+    private boolean generate(WpFileBlob blob) {
+        int attempts = blob.getProcessingAttempts() == null ? 1 : blob.getProcessingAttempts() + 1;
+        List<String> written = new ArrayList<>();
+        try {
+            String relativePath = blob.getFilePath();
+            if (!Files.exists(fileStorageService.toAbsolutePath(relativePath))) {
+                // 布局迁移期间文件可能已移动而记录尚未更新
+                String alternate = fileStorageService.alternatePath(relativePath);
+                if (alternate != null && Files.exists(fileStorageService.toAbsolutePath(alternate))) {
+                    relativePath = alternate;
+                }
+            }
+
+            File file = fileStorageService.toAbsolutePath(relativePath).toFile();
+            int[] size;
+            try {
+                size = ImageUtils.probeSize(file);
+            } catch (IOException e) {
+                if (Files.exists(file.toPath())) {
+                    // 文件存在但文件头无法识别，重试没有意义
+                    fail(blob, attempts, e.getMessage(), false);
+                    return false;
+                }
+                throw e;
+            }
+            int width = size[0];
+            int height = size[1];
+            if (!imageDecodeService.isAllowed(width, height)) {
+                fail(blob, attempts, "图片尺寸超过限制: " + width + "x" + height, false);
+                return false;
+            }
+            int[] ladder = Arrays.stream(widths).filter(w -> w > 0 && w < width).distinct().sorted().toArray();
+
+            // 解码结果只需覆盖最大一级和缩略图，超大原图按整数倍降采样解码；逐级缩放占用的内存一并计入解码预算
+            int decodeWidth = Math.max(ladder.length > 0 ? ladder[ladder.length - 1] : 0, thumbnailWidth);
+            try (ImageDecodeService.Lease lease = imageDecodeService.acquire(file, decodeWidth, thumbnailHeight,
+                    (w, h) -> ladderBytes(w, h, width, height, ladder))) {
+                BufferedImage image = lease.getImage();
+                String format = FileUtil.getSuffix(relativePath).toLowerCase();
+                boolean keepAlpha = !"jpg".equals(format) && !"jpeg".equals(format);
+
+                // 每一级以上一级为源缩放，缩放比例小，且原图只解码一次；
+                // 输出写到新版本的文件名，不覆盖当前记录引用的文件，失败时删除的也只是本次生成的文件
+                String generation = ImageUtils.newGeneration();
+                List<WpFileDerivative> derivatives = new ArrayList<>();
+                BufferedImage thumbnailSource = image;
+                BufferedImage source = image;
+                for (int i = ladder.length - 1; i >= 0; i--) {
+                    int targetWidth = ladder[i];
+                    int targetHeight = Math.max(1, (int) Math.round((double) height * targetWidth / width));
+                    source = ImageUtils.resize(source, targetWidth, targetHeight, keepAlpha);
+
+                    String derivativePath = ImageUtils.derivativePath(relativePath, generation, "w" + targetWidth);
+                    Path target = fileStorageService.toAbsolutePath(derivativePath);
+                    ImageUtils.writeImage(source, format, target.toFile(), imageEncoderOptions);
+                    written.add(derivativePath);
+
+                    WpFileDerivative derivative = new WpFileDerivative();
+                    derivative.setBlobId(blob.getId());
+                    derivative.setWidth(targetWidth);
+                    derivative.setHeight(targetHeight);
+                    derivative.setFilePath(derivativePath);
+                    derivative.setFileSize(Files.size(target));
+                    derivatives.add(derivative);
+
+                    // 仍不小于缩略图尺寸的最小一级作为缩略图的源
+                    if (targetWidth >= thumbnailWidth || targetHeight >= thumbnailHeight) {
+                        thumbnailSource = source;
+                    }
+                }
+                image = null;
+                source = null;
+                blob.setPhash(PerceptualHash.dHash(thumbnailSource));
+                blob.setPalette(wallpaperColorService.extractPalette(thumbnailSource));
+                blob.setBlurHash(BlurHash.encode(thumbnailSource));
+
+                String thumbnailPath = ImageUtils.derivativePath(relativePath, generation, "thumb");
+                written.add(thumbnailPath);
+                if (ImageUtils.generateThumbnail(thumbnailSource, thumbnailPath, uploadPath, thumbnailWidth, thumbnailHeight,
+                        imageEncoderOptions) == null) {
+                    deleteQuietly(written);
+                    fail(blob, attempts, "缩略图生成失败", true);
+                    return false;
+                }
+                // 图片已不再使用，提前归还解码预算
+                lease.close();
+
+                blob.setThumbnailPath(thumbnailPath);
+                blob.setWidth(width);
+                blob.setHeight(height);
+                // 记录与引用它的壁纸在同一事务中切换到新版本，旧版本文件在提交后删除
+                if (!fileBlobService.completeProcessing(blob, derivatives)) {
+                    deleteQuietly(written);
+                    return false;
+                }
+                fileTierService.admit(thumbnailPath);
+                succeeded.incrementAndGet();
+                log.info("派生图生成完成: blobId={}, {}x{}, 尺寸{}", blob.getId(), width, height, Arrays.toString(ladder));
+                return true;
+            }
+        } catch (BusinessException e) {
+            deleteQuietly(written);
+            if (ResultCode.TOO_MANY_REQUESTS.getCode().equals(e.getCode())) {
+                // 解码预算不足，不计入尝试次数，稍后重新处理
+                log.info("解码预算不足，推迟生成派生图: blobId={}", blob.getId());
+                fileBlobMapper.deferProcessing(blob.getId(),
+                        LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(retryDelay)), e.getMessage());
+                deferred.incrementAndGet();
+                return false;
+            }
+            fail(blob, attempts, e.getMessage(), false);
+            return false;
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            log.warn("派生图生成失败: blobId={}, attempts={}", blob.getId(), attempts, e);
+            deleteQuietly(written);
+            fail(blob, attempts, e.toString(), true);
+            return false;
+        }
+    }
+
+    /**
+     * 删除本次生成的部分派生图
+     *
+     * @param relativePaths 文件相对路径
+     */
+    private void deleteQuietly(List<String> relativePaths) {
+        for (String relativePath : relativePaths) {
+            try {
+                Files.deleteIfExists(fileStorageService.toAbsolutePath(relativePath));
+            } catch (IOException e) {
+                log.warn("删除派生图失败: {}", relativePath, e);
+            }
+        }
+    }
+
+    /**
+     * 估算逐级缩放时除解码结果外的内存占用上限
+     * <p>
+     * 同一时刻最多有一次重采样（缩放结果和缓冲）在进行，另有作为源的上一级和保留的缩略图源，
+     * 两者都不大于最大一级，缩略图的缩放按最大一级为源估算
+     *
+     * @param decodedWidth 解码结果的宽度
+     * @param decodedHeight 解码结果的高度
+     * @param width 原图宽度
+     * @param height 原图高度
+     * @param ladder 要生成的宽度档位，升序
+     * @return 字节数
+     */
+    private long ladderBytes(int decodedWidth, int decodedHeight, int width, int height, int[] ladder) {
+        // 最大一级，没有档位时缩略图直接以解码结果为源
+        int largestWidth = decodedWidth;
+        int largestHeight = decodedHeight;
+        int sourceWidth = decodedWidth;
+        int sourceHeight = decodedHeight;
+        long resample = 0;
+        for (int i = ladder.length - 1; i >= 0; i--) {
+            int targetWidth = ladder[i];
+            int targetHeight = Math.max(1, (int) Math.round((double) height * targetWidth / width));
+            resample = Math.max(resample, ImageUtils.resizeBytes(sourceWidth, sourceHeight, targetWidth, targetHeight));
+            if (i == ladder.length - 1) {
+                largestWidth = targetWidth;
+                largestHeight = targetHeight;
+            }
+            sourceWidth = targetWidth;
+            sourceHeight = targetHeight;
+        }
+        resample = Math.max(resample, ImageUtils.resizeBytes(largestWidth, largestHeight,
+                Math.min(thumbnailWidth, largestWidth), Math.min(thumbnailHeight, largestHeight)));
+        long retained = ladder.length > 0 ? 2L * largestWidth * largestHeight * 4 : 0;
+        return resample + retained;
+    }
+
+    /**
+     * 记录失败；未达最大尝试次数时按指数退避安排重试
+     *
+     * @param blob      文件内容
+     * @param attempts  已尝试次数（含本次）
+     * @param error     失败原因
+     * @param retryable 是否可以重试
+     */
+    private void fail(WpFileBlob blob, int attempts, String error, boolean retryable) {
+        String message = StrUtil.sub(error, 0, ERROR_MAX_LENGTH);
+        if (retryable && attempts < maxAttempts) {
+            long delay = retryDelay << Math.min(attempts - 1, 10);
+            LocalDateTime nextAttemptTime = LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+            fileBlobMapper.failProcessing(blob.getId(), WpFileBlob.PROCESSING_PENDING, nextAttemptTime, message);
+            retried.incrementAndGet();
+            return;
+        }
+        fileBlobMapper.failProcessing(blob.getId(), WpFileBlob.PROCESSING_FAILED, null, message);
+        failed.incrementAndGet();
+        log.error("派生图生成失败，不再重试: blobId={}, attempts={}, error={}", blob.getId(), attempts, message);
+    }
+
+    private void runRecovery() {
+        while (running) {
+            try {
+                recover();
+            } catch (Exception e) {
+                log.error("派生图任务恢复失败", e);
+            }
+            try {
+                Thread.sleep(recoveryInterval);
+            } catch (InterruptedException e) {
+                // 停止时由running退出
+            }
+        }
+    }
+
+    /**
+     * 重置停滞的记录，并重新提交到期的待处理记录
+     */
+    private void recover() {
+        int stale = fileBlobMapper.resetStaleProcessing(
+                LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(staleTimeout)), maxAttempts);
+        if (stale > 0) {
+            log.warn("重置停滞的派生图任务{}个", stale);
+        }
+        fileBlobMapper.selectDueProcessingIds(recoveryBatchSize).forEach(this::submit);
+    }
+
+    private long countByStatus(int status) {
+        return fileBlobMapper.selectCount(Wrappers.<WpFileBlob>lambdaQuery().eq(WpFileBlob::getProcessingStatus, status));
+    }
+}
@@ -0,0 +1,372 @@
+package com.wallpaper.management.service.impl;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.DuplicateDetectionService;
+import com.wallpaper.management.util.HammingIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 重复壁纸检测服务实现类
+ * <p>
+ * 所有壁纸的感知哈希保存在内存中的多索引哈希表里，检测一次只需毫秒级。
+ * 索引在启动时从数据库加载，之后定期整体重建，以纳入其他实例上传和删除的壁纸；
+ * 重建期间本实例的增删会在新索引建好后重放，不会丢失。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DuplicateDetectionServiceImpl implements DuplicateDetectionService {
+
+    private final WpWallpaperMapper wallpaperMapper;
+
+    @Value("${file.duplicate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.duplicate.max-distance:8}")
+    private int maxDistance;
+
+    @Value("${file.duplicate.reload-interval:600000}")
+    private long reloadInterval;
+
+    @Value("${file.duplicate.load-batch-size:5000}")
+    private int loadBatchSize;
+
+    private volatile HammingIndex index = new HammingIndex();
+
+    /**
+     * 保护索引的增删和替换
+     */
+    private final Object mutationLock = new Object();
+
+    /**
+     * 重建期间发生的增删，新索引建好后重放；不在重建时为null
+     */
+    private List<Consumer<HammingIndex>> pendingOps;
+
+    private Thread loader;
+
+    private volatile boolean running;
+
+    private volatile boolean loaded;
+
+    private volatile long lastReloadMillis;
+
+    private final AtomicLong checked = new AtomicLong();
+
+    private final AtomicLong flagged = new AtomicLong();
+
+    private final AtomicLong queries = new AtomicLong();
+
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        loader = new Thread(this::runLoader, "duplicate-index");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (loader == null) {
+            return;
+        }
+        running = false;
+        loader.interrupt();
+        loader.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 检测引用该文件内容的壁纸是否与已有壁纸重复，并加入索引
+     *
+     * @param blobId 文件内容ID
+     */
+    @Override
+    public void check(Long blobId) {
+        if (!enabled || blobId == null) {
+            return;
+        }
+        checkAll(wallpaperMapper.selectList(Wrappers.<WpWallpaper>lambdaQuery()
+                .select(WpWallpaper::getId, WpWallpaper::getPhash, WpWallpaper::getDuplicateOf)
+                .eq(WpWallpaper::getBlobId, blobId)
+                .isNotNull(WpWallpaper::getPhash)
+                .orderByAsc(WpWallpaper::getId)));
+    }
+
+    /**
+     * 检测单张壁纸是否与已有壁纸重复，并加入索引
+     *
+     * @param wallpaperId 壁纸ID
+     */
+    @Override
+    public void checkWallpaper(Long wallpaperId) {
+        if (!enabled || wallpaperId == null) {
+            return;
+        }
+        checkAll(wallpaperMapper.selectList(Wrappers.<WpWallpaper>lambdaQuery()
+                .select(WpWallpaper::getId, WpWallpaper::getPhash, WpWallpaper::getDuplicateOf)
+                .eq(WpWallpaper::getId, wallpaperId)
+                .isNotNull(WpWallpaper::getPhash)));
+    }
+
+    /**
+     * 逐张查找相似壁纸并加入索引，发现重复时标记
+     *
+     * @param wallpapers 有感知哈希的壁纸
+     */
+    private void checkAll(List<WpWallpaper> wallpapers) {
+        for (WpWallpaper wallpaper : wallpapers) {
+            long id = wallpaper.getId();
+            long hash = wallpaper.getPhash();
+            HammingIndex.Match original;
+            // 查询和加入索引放在同一把锁内，同时处理的两张重复壁纸至少有一张能发现另一张
+            synchronized (mutationLock) {
+                if (index.contains(hash, id)) {
+                    continue;
+                }
+                original = search(hash, maxDistance).stream()
+                        .filter(match -> match.getId() != id)
+                        .findFirst()
+                        .orElse(null);
+                apply(target -> target.add(hash, id));
+            }
+            checked.incrementAndGet();
+            if (original != null && wallpaper.getDuplicateOf() == null) {
+                wallpaperMapper.update(null, Wrappers.<WpWallpaper>lambdaUpdate()
+                        .set(WpWallpaper::getDuplicateOf, original.getId())
+                        .set(WpWallpaper::getDuplicateDistance, original.getDistance())
+                        .eq(WpWallpaper::getId, id));
+                flagged.incrementAndGet();
+                log.info("发现疑似重复壁纸: id={}, duplicateOf={}, distance={}", id, original.getId(), original.getDistance());
+            }
+        }
+    }
+
+    /**
+     * 壁纸删除后从索引中移除，并清除其他壁纸对它的重复标记
+     *
+     * @param wallpaper 已删除的壁纸
+     */
+    @Override
+    public void remove(WpWallpaper wallpaper) {
+        if (wallpaper.getPhash() != null) {
+            long hash = wallpaper.getPhash();
+            long id = wallpaper.getId();
+            synchronized (mutationLock) {
+                apply(target -> target.remove(hash, id));
+            }
+        }
+        wallpaperMapper.update(null, Wrappers.<WpWallpaper>lambdaUpdate()
+                .set(WpWallpaper::getDuplicateOf, null)
+                .set(WpWallpaper::getDuplicateDistance, null)
+                .eq(WpWallpaper::getDuplicateOf, wallpaper.getId()));
+    }
+
+    /**
+     * 查找与壁纸相似的其他壁纸
+     *
+     * @param wallpaperId 壁纸ID
+     * @param maxDistance 最大汉明距离，为null时使用配置值
+     * @return 相似壁纸，按距离升序
+     */
+    @Override
+    public List<WpWallpaper> findSimilar(Long wallpaperId, Integer maxDistance) {
+        int distance = maxDistance == null ? this.maxDistance : maxDistance;
+        if (distance < 0 || distance > HammingIndex.MAX_DISTANCE) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "汉明距离应在0-" + HammingIndex.MAX_DISTANCE + "之间");
+        }
+        WpWallpaper wallpaper = wallpaperMapper.selectById(wallpaperId);
+        if (wallpaper == null) {
+            throw new BusinessException(ResultCode.NOT_FOUND);
+        }
+        if (wallpaper.getPhash() == null) {
+            // 派生图尚未生成，还没有感知哈希
+            return Collections.emptyList();
+        }
+
+        Map<Long, Integer> distances = new LinkedHashMap<>();
+        for (HammingIndex.Match match : search(wallpaper.getPhash(), distance)) {
+            if (match.getId() != wallpaperId) {
+                distances.putIfAbsent(match.getId(), match.getDistance());
+            }
+        }
+        if (distances.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, WpWallpaper> wallpapers = wallpaperMapper.selectBatchIds(distances.keySet()).stream()
+                .collect(Collectors.toMap(WpWallpaper::getId, Function.identity()));
+        List<WpWallpaper> result = new ArrayList<>(distances.size());
+        distances.forEach((id, d) -> {
+            WpWallpaper similar = wallpapers.get(id);
+            if (similar != null) {
+                similar.setDuplicateDistance(d);
+                result.add(similar);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 分页查询待审核的疑似重复壁纸
+     *
+     * @param page     页码
+     * @param pageSize 页大小
+     * @return 疑似重复壁纸列表
+     */
+    @Override
+    public IPage<WpWallpaper> pageDuplicates(Integer page, Integer pageSize) {
+        IPage<WpWallpaper> result = wallpaperMapper.selectPage(new Page<>(page, pageSize), Wrappers.<WpWallpaper>lambdaQuery()
+                .isNotNull(WpWallpaper::getDuplicateOf)
+                .eq(WpWallpaper::getStatus, 0)
+                .orderByDesc(WpWallpaper::getId));
+        List<Long> originalIds = result.getRecords().stream()
+                .map(WpWallpaper::getDuplicateOf)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if (!originalIds.isEmpty()) {
+            Map<Long, WpWallpaper> originals = wallpaperMapper.selectBatchIds(originalIds).stream()
+                    .collect(Collectors.toMap(WpWallpaper::getId, Function.identity()));
+            result.getRecords().forEach(wallpaper -> wallpaper.setDuplicateOriginal(originals.get(wallpaper.getDuplicateOf())));
+        }
+        return result;
+    }
+
+    /**
+     * 清除重复标记
+     *
+     * @param wallpaperId 壁纸ID
+     * @return 是否成功
+     */
+    @Override
+    public boolean dismiss(Long wallpaperId) {
+        return wallpaperMapper.update(null, Wrappers.<WpWallpaper>lambdaUpdate()
+                .set(WpWallpaper::getDuplicateOf, null)
+                .set(WpWallpaper::getDuplicateDistance, null)
+                .eq(WpWallpaper::getId, wallpaperId)) > 0;
+    }
+
+    /**
+     * 获取重复检测统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        long queryCount = queries.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("loaded", loaded);
+        stats.put("indexSize", index.size());
+        stats.put("maxDistance", maxDistance);
+        stats.put("lastReloadMillis", lastReloadMillis);
+        stats.put("checked", checked.get());
+        stats.put("flagged", flagged.get());
+        stats.put("queries", queryCount);
+        stats.put("avgQueryMicros", queryCount == 0 ? 0D : queryNanos.get() / 1000D / queryCount);
+        return stats;
+    }
+
+    private List<HammingIndex.Match> search(long hash, int distance) {
+        long start = System.nanoTime();
+        List<HammingIndex.Match> matches = index.search(hash, distance);
+        queries.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - start);
+        return matches;
+    }
+
+    /**
+     * 对当前索引执行增删，重建期间同时记录下来，调用方需持有mutationLock
+     *
+     * @param op 增删操作
+     */
+    private void apply(Consumer<HammingIndex> op) {
+        op.accept(index);
+        if (pendingOps != null) {
+            pendingOps.add(op);
+        }
+    }
+
+    private void runLoader() {
+        while (running) {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.error("重复检测索引加载失败", e);
+            }
+            try {
+                Thread.sleep(reloadInterval);
+            } catch (InterruptedException e) {
+                // 停止时由running退出
+            }
+        }
+    }
+
+    /**
+     * 按主键分批读取所有壁纸的感知哈希，建好新索引后重放期间的增删并替换
+     */
+    private void reload() {
+        long start = System.currentTimeMillis();
+        synchronized (mutationLock) {
+            pendingOps = new ArrayList<>();
+        }
+        HammingIndex fresh = new HammingIndex();
+        try {
+            long afterId = 0;
+            List<WpWallpaper> batch;
+            do {
+                batch = wallpaperMapper.selectList(Wrappers.<WpWallpaper>lambdaQuery()
+                        .select(WpWallpaper::getId, WpWallpaper::getPhash)
+                        .isNotNull(WpWallpaper::getPhash)
+                        .gt(WpWallpaper::getId, afterId)
+                        .orderByAsc(WpWallpaper::getId)
+                        .last("LIMIT " + loadBatchSize));
+                for (WpWallpaper wallpaper : batch) {
+                    fresh.add(wallpaper.getPhash(), wallpaper.getId());
+                    afterId = wallpaper.getId();
+                }
+            } while (running && batch.size() == loadBatchSize);
+        } catch (RuntimeException e) {
+            synchronized (mutationLock) {
+                pendingOps = null;
+            }
+            throw e;
+        }
+
+        synchronized (mutationLock) {
+            pendingOps.forEach(op -> op.accept(fresh));
+            pendingOps = null;
+            index = fresh;
+        }
+        loaded = true;
+        lastReloadMillis = System.currentTimeMillis() - start;
+        log.info("重复检测索引加载完成，{}张壁纸，耗时{}ms", fresh.size(), lastReloadMillis);
+    }
+}
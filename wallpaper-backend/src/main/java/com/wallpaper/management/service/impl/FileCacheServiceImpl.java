@@ -0,0 +1,330 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.wallpaper.management.service.FileCacheService;
+import com.wallpaper.management.util.FrequencySketch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点文件内存缓存服务实现类
+ * <p>
+ * 按总字节数限制容量，内容存放在直接内存中；命中路径无锁，
+ * 淘汰采用CLOCK近似LRU，并由TinyLFU频率估计决定新文件是否值得替换淘汰对象。
+ */
+@Slf4j
+@Service
+public class FileCacheServiceImpl implements FileCacheService {
+
+    /**
+     * 判断频率时，新文件至少被访问过的次数（过滤只访问一次的文件）
+     */
+    private static final int ADMISSION_THRESHOLD = 2;
+
+    /**
+     * 预判准入时最多查看的CLOCK队首对象数，避免持锁遍历整个队列
+     */
+    private static final int ADMISSION_SCAN = 64;
+
+    @Value("${file.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${file.cache.max-entry-bytes:1048576}")
+    private long maxEntryBytes;
+
+    @Value("${file.cache.expected-entries:100000}")
+    private int expectedEntries;
+
+    @Value("${file.cache.suffixes:_thumb}")
+    private String[] suffixes;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * CLOCK淘汰队列，仅在写入和淘汰时加锁
+     */
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile long usedBytes;
+
+    private FrequencySketch sketch;
+
+    @PostConstruct
+    public void init() {
+        sketch = new FrequencySketch(expectedEntries);
+        log.info("文件缓存初始化完成，enabled={}，容量={}字节，单文件上限={}字节", enabled, maxBytes, maxEntryBytes);
+    }
+
+    /**
+     * 判断文件是否参与缓存
+     *
+     * @param filename 文件名
+     * @return 是否参与缓存
+     */
+    @Override
+    public boolean isCacheable(String filename) {
+        if (!enabled || StrUtil.isBlank(filename)) {
+            return false;
+        }
+        for (String suffix : suffixes) {
+            if (StrUtil.isNotBlank(suffix) && filename.contains(suffix.trim() + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param relativePath 文件相对路径
+     * @return 缓存的文件，未命中时返回null
+     */
+    @Override
+    public CachedFile get(String relativePath) {
+        String key = normalizeKey(relativePath);
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.referenced = true;
+        hits.incrementAndGet();
+        return entry.file;
+    }
+
+    /**
+     * 尝试将文件加载进缓存
+     *
+     * @param relativePath 文件相对路径
+     * @param path         文件绝对路径
+     * @param length       文件长度
+     * @param lastModified 文件最后修改时间
+     * @return 缓存的文件，未被准入时返回null
+     */
+    @Override
+    public CachedFile load(String relativePath, Path path, long length, long lastModified) {
+        String key = normalizeKey(relativePath);
+        if (length <= 0 || length > maxEntryBytes || length > maxBytes
+                || sketch.frequency(key) < ADMISSION_THRESHOLD) {
+            return null;
+        }
+        // 先按淘汰对象的频率判断能否准入，被拒绝的文件不分配直接内存、不读取内容
+        lock.lock();
+        try {
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                return existing.file;
+            }
+            if (!isAdmissible(key, length)) {
+                rejections.incrementAndGet();
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocateDirect((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // 读取过程中文件被截断，不缓存
+                    return null;
+                }
+            }
+            buffer.flip();
+        } catch (IOException e) {
+            log.warn("加载文件缓存失败: {}", path, e);
+            return null;
+        }
+
+        Entry entry = new Entry(key, new CachedFile(buffer.asReadOnlyBuffer(), length, lastModified));
+        lock.lock();
+        try {
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                return existing.file;
+            }
+            if (!makeRoom(key, length)) {
+                rejections.incrementAndGet();
+                return null;
+            }
+            entries.put(key, entry);
+            clock.addLast(entry);
+            usedBytes += length;
+        } finally {
+            lock.unlock();
+        }
+        return entry.file;
+    }
+
+    /**
+     * 使文件缓存失效
+     *
+     * @param relativePath 文件相对路径
+     */
+    @Override
+    public void invalidate(String relativePath) {
+        if (StrUtil.isBlank(relativePath)) {
+            return;
+        }
+        String key = normalizeKey(relativePath);
+        lock.lock();
+        try {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                clock.remove(entry);
+                usedBytes -= entry.file.getLength();
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("usedBytes", usedBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0D : (double) hitCount / total);
+        stats.put("evictions", evictions.get());
+        stats.put("rejections", rejections.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    /**
+     * 预判新文件能否准入，不修改CLOCK队列，调用方需持有锁
+     * <p>
+     * 空间不足时按CLOCK顺序在队首的若干对象中找到第一个未被访问过的（都被访问过时取队首），
+     * 新文件的访问频率高于它才可能腾出空间；读取期间其他请求可能改变队列，写入时仍以{@link #makeRoom}为准
+     *
+     * @param candidateKey 新文件键
+     * @param length       新文件长度
+     * @return 是否可能准入
+     */
+    private boolean isAdmissible(String candidateKey, long length) {
+        if (usedBytes + length <= maxBytes) {
+            return true;
+        }
+        Entry victim = clock.peekFirst();
+        if (victim == null) {
+            return false;
+        }
+        int scanned = 0;
+        for (Entry entry : clock) {
+            if (!entry.referenced) {
+                victim = entry;
+                break;
+            }
+            if (++scanned >= ADMISSION_SCAN) {
+                break;
+            }
+        }
+        return sketch.frequency(candidateKey) > sketch.frequency(victim.key);
+    }
+
+    /**
+     * 为新文件腾出空间，调用方需持有锁
+     * <p>
+     * 队首对象近期被访问过则给予第二次机会；否则与新文件比较访问频率，
+     * 新文件更热时淘汰队首对象，不然拒绝新文件。
+     *
+     * @param candidateKey 新文件键
+     * @param length       新文件长度
+     * @return 是否腾出足够空间
+     */
+    private boolean makeRoom(String candidateKey, long length) {
+        int candidateFrequency = sketch.frequency(candidateKey);
+        int secondChances = clock.size();
+        while (usedBytes + length > maxBytes) {
+            Entry victim = clock.pollFirst();
+            if (victim == null) {
+                return false;
+            }
+            if (victim.referenced && secondChances-- > 0) {
+                victim.referenced = false;
+                clock.addLast(victim);
+                continue;
+            }
+            if (candidateFrequency <= sketch.frequency(victim.key)) {
+                clock.addFirst(victim);
+                return false;
+            }
+            entries.remove(victim.key);
+            usedBytes -= victim.file.getLength();
+            evictions.incrementAndGet();
+        }
+        return true;
+    }
+
+    private String normalizeKey(String relativePath) {
+        String key = relativePath.replace('\\', '/');
+        return key.startsWith("/") ? key.substring(1) : key;
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry {
+
+        private final String key;
+
+        private final CachedFile file;
+
+        /**
+         * CLOCK访问位，命中时置位，无需加锁
+         */
+        private volatile boolean referenced;
+
+        Entry(String key, CachedFile file) {
+            this.key = key;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.wallpaper.management.entity.WpFileBlob;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.service.FileCacheService;
+import com.wallpaper.management.service.FileLayoutMigrationService;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.WpFileBlobService;
+import com.wallpaper.management.service.WpWallpaperService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件布局迁移服务实现类
+ * <p>
+ * 按主键分批（keyset）扫描壁纸表和文件内容表：先移动文件，再以旧路径为条件改写记录，
+ * 期间FileController按两种布局回退查找，因此迁移过程中文件始终可访问。
+ * 多条记录共享同一文件时，后处理的记录发现目标已存在，直接改写路径即可。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileLayoutMigrationServiceImpl implements FileLayoutMigrationService {
+
+    private final FileStorageService fileStorageService;
+    private final FileCacheService fileCacheService;
+    private final FileTierService fileTierService;
+    private final WpWallpaperService wallpaperService;
+    private final WpFileBlobService fileBlobService;
+
+    @Value("${file.storage.migration.batch-size:200}")
+    private int batchSize;
+
+    @Value("${file.storage.migration.pause-millis:100}")
+    private long pauseMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean stopRequested;
+
+    private volatile String phase = "IDLE";
+
+    private volatile long lastId;
+
+    private volatile LocalDateTime startTime;
+
+    private volatile LocalDateTime finishTime;
+
+    private final AtomicLong scannedRows = new AtomicLong();
+
+    private final AtomicLong updatedRows = new AtomicLong();
+
+    private final AtomicLong movedFiles = new AtomicLong();
+
+    private final AtomicLong missingFiles = new AtomicLong();
+
+    private final AtomicLong failedFiles = new AtomicLong();
+
+    /**
+     * 启动迁移任务
+     *
+     * @return 是否启动成功，已有任务在运行时返回false
+     */
+    @Override
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        stopRequested = false;
+        scannedRows.set(0);
+        updatedRows.set(0);
+        movedFiles.set(0);
+        missingFiles.set(0);
+        failedFiles.set(0);
+        startTime = LocalDateTime.now();
+        finishTime = null;
+
+        Thread worker = new Thread(this::run, "file-layout-migration");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    /**
+     * 请求停止迁移任务，当前批次完成后停止
+     */
+    @Override
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * 获取迁移进度
+     *
+     * @return 进度信息
+     */
+    @Override
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", running.get());
+        progress.put("phase", phase);
+        progress.put("lastId", lastId);
+        progress.put("scannedRows", scannedRows.get());
+        progress.put("updatedRows", updatedRows.get());
+        progress.put("movedFiles", movedFiles.get());
+        progress.put("missingFiles", missingFiles.get());
+        progress.put("failedFiles", failedFiles.get());
+        progress.put("startTime", startTime);
+        progress.put("finishTime", finishTime);
+        return progress;
+    }
+
+    private void run() {
+        log.info("文件布局迁移开始，每批{}条", batchSize);
+        try {
+            phase = "WALLPAPER";
+            migrateWallpapers();
+            if (!stopRequested) {
+                phase = "BLOB";
+                migrateBlobs();
+            }
+            phase = stopRequested ? "STOPPED" : "FINISHED";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            phase = "STOPPED";
+        } catch (Exception e) {
+            log.error("文件布局迁移失败，lastId={}", lastId, e);
+            phase = "FAILED";
+        } finally {
+            finishTime = LocalDateTime.now();
+            running.set(false);
+            log.info("文件布局迁移结束: {}", getProgress());
+        }
+    }
+
+    private void migrateWallpapers() throws InterruptedException {
+        lastId = 0;
+        while (!stopRequested) {
+            List<WpWallpaper> batch = wallpaperService.lambdaQuery()
+                    .select(WpWallpaper::getId, WpWallpaper::getFilePath, WpWallpaper::getThumbnailPath)
+                    .gt(WpWallpaper::getId, lastId)
+                    .orderByAsc(WpWallpaper::getId)
+                    .last("LIMIT " + batchSize)
+                    .list();
+            if (batch.isEmpty()) {
+                return;
+            }
+            for (WpWallpaper wallpaper : batch) {
+                String filePath = migrateFile(wallpaper.getFilePath());
+                String thumbnailPath = migrateFile(wallpaper.getThumbnailPath());
+                if (filePath != null || thumbnailPath != null) {
+                    boolean updated = wallpaperService.lambdaUpdate()
+                            .eq(WpWallpaper::getId, wallpaper.getId())
+                            .eq(WpWallpaper::getFilePath, wallpaper.getFilePath())
+                            .set(filePath != null, WpWallpaper::getFilePath, filePath)
+                            .set(thumbnailPath != null, WpWallpaper::getThumbnailPath, thumbnailPath)
+                            .update();
+                    if (updated) {
+                        updatedRows.incrementAndGet();
+                    }
+                }
+                scannedRows.incrementAndGet();
+                lastId = wallpaper.getId();
+            }
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    private void migrateBlobs() throws InterruptedException {
+        lastId = 0;
+        while (!stopRequested) {
+            List<WpFileBlob> batch = fileBlobService.lambdaQuery()
+                    .select(WpFileBlob::getId, WpFileBlob::getFilePath, WpFileBlob::getThumbnailPath)
+                    .gt(WpFileBlob::getId, lastId)
+                    .orderByAsc(WpFileBlob::getId)
+                    .last("LIMIT " + batchSize)
+                    .list();
+            if (batch.isEmpty()) {
+                return;
+            }
+            for (WpFileBlob blob : batch) {
+                String filePath = migrateFile(blob.getFilePath());
+                String thumbnailPath = migrateFile(blob.getThumbnailPath());
+                if (filePath != null || thumbnailPath != null) {
+                    boolean updated = fileBlobService.lambdaUpdate()
+                            .eq(WpFileBlob::getId, blob.getId())
+                            .eq(WpFileBlob::getFilePath, blob.getFilePath())
+                            .set(filePath != null, WpFileBlob::getFilePath, filePath)
+                            .set(thumbnailPath != null, WpFileBlob::getThumbnailPath, thumbnailPath)
+                            .update();
+                    if (updated) {
+                        updatedRows.incrementAndGet();
+                    }
+                }
+                scannedRows.incrementAndGet();
+                lastId = blob.getId();
+            }
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    /**
+     * 将文件移动到分层布局
+     *
+     * @param relativePath 原相对路径
+     * @return 新相对路径，无需迁移或迁移失败时返回null
+     */
+    private String migrateFile(String relativePath) {
+        String target = fileStorageService.toShardedPath(relativePath);
+        if (StrUtil.isBlank(target)) {
+            return null;
+        }
+        Path source = fileStorageService.toAbsolutePath(relativePath);
+        Path destination = fileStorageService.toAbsolutePath(target);
+        boolean sourceExists = Files.exists(source);
+        boolean destinationExists = Files.exists(destination);
+        if (sourceExists && destinationExists) {
+            // 新旧两处都有文件，保留原样等待人工处理（原子重命名会直接覆盖目标）
+            log.warn("迁移目标已存在，跳过: {} -> {}", relativePath, target);
+            failedFiles.incrementAndGet();
+            return null;
+        }
+        if (!sourceExists) {
+            // 目标已存在说明文件已被共享它的其他记录迁移过
+            if (!destinationExists) {
+                missingFiles.incrementAndGet();
+                return null;
+            }
+            return target;
+        }
+        try {
+            FileUtil.mkParentDirs(destination.toFile());
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+            fileCacheService.invalidate(relativePath);
+            fileTierService.evict(relativePath);
+            movedFiles.incrementAndGet();
+            return target;
+        } catch (IOException e) {
+            log.warn("迁移文件失败: {} -> {}", relativePath, target, e);
+            failedFiles.incrementAndGet();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,981 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.wallpaper.management.service.BandwidthShapingService;
+import com.wallpaper.management.service.BandwidthShapingService.Lease;
+import com.wallpaper.management.service.BandwidthShapingService.TrafficClass;
+import com.wallpaper.management.service.FileCacheService;
+import com.wallpaper.management.service.FileCacheService.CachedFile;
+import com.wallpaper.management.service.FileServeService;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.annotation.Resource;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 文件输出服务实现类
+ * <p>
+ * 优先使用Tomcat的sendfile（由内核直接从页缓存写入socket），
+ * 不支持时退回到FileChannel.transferTo，每个请求只占用固定大小的缓冲区；
+ * 缩略图等热点文件由FileCacheService在内存中缓存；
+ * 每次响应先向BandwidthShapingService申请带宽，超出突发额度的响应改为限速输出。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileServeServiceImpl implements FileServeService {
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String[] IMAGE_EXTENSIONS = {"jpg", "jpeg", "png", "gif", "webp"};
+
+    /**
+     * 内容不可变的文件名：上传时生成的32位UUID（或64位哈希），可带带版本的派生后缀如_gk2x9f0a1_thumb；
+     * 不带版本的派生文件（旧缩略图、按需缩放结果）会被重新生成，不在此列
+     */
+    private static final Pattern IMMUTABLE_FILENAME = Pattern.compile("^[0-9a-fA-F]{32}([0-9a-fA-F]{32})?(_g[0-9a-z]+_[0-9a-zA-Z]+)?\\.[0-9a-zA-Z]+$");
+
+    private static final String BYTES_UNIT = "bytes";
+    private static final String CRLF = "\r\n";
+
+    private final FileCacheService fileCacheService;
+    private final FileStorageService fileStorageService;
+    private final FileTierService fileTierService;
+    private final BandwidthShapingService bandwidthShapingService;
+
+    @Resource(name = "fileServeExecutor")
+    private ThreadPoolTaskExecutor fileServeExecutor;
+
+    @Value("${file.serve.sendfile:true}")
+    private boolean sendfileEnabled;
+
+    @Value("${file.serve.max-ranges:16}")
+    private int maxRanges;
+
+    @Value("${file.serve.max-age:3600}")
+    private long maxAge;
+
+    @Value("${file.serve.immutable-max-age:31536000}")
+    private long immutableMaxAge;
+
+    @Value("${file.serve.async.enabled:true}")
+    private boolean asyncEnabled;
+
+    @Value("${file.serve.async.timeout:1800000}")
+    private long asyncTimeout;
+
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * 以流式方式输出文件，支持Range请求及条件GET
+     *
+     * @param relativePath 文件相对路径
+     * @param path         文件绝对路径
+     * @param request      HTTP请求
+     * @param response     HTTP响应
+     * @throws IOException 输出失败
+     */
+    @Override
+    public void serveFile(String relativePath, Path path, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serveFile(relativePath, path, request, response, null);
+    }
+
+    /**
+     * 以附件形式流式输出文件，支持Range断点续传
+     *
+     * @param relativePath   文件相对路径
+     * @param path           文件绝对路径
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @param attachmentName 下载文件名，为null时按文件类型决定是否作为附件
+     * @throws IOException 输出失败
+     */
+    @Override
+    public void serveFile(String relativePath, Path path, HttpServletRequest request, HttpServletResponse response,
+                          String attachmentName) throws IOException {
+        String filename = FilenameUtils.getName(relativePath);
+
+        // 热点文件（缩略图）优先从内存缓存读取，命中时不访问磁盘
+        boolean cacheable = fileCacheService.isCacheable(filename);
+        CachedFile cached = cacheable ? fileCacheService.get(relativePath) : null;
+
+        long length;
+        long lastModified;
+        if (cached != null) {
+            length = cached.getLength();
+            lastModified = cached.getLastModified();
+        } else {
+            // 一次stat取得长度与修改时间，文件不存在时抛出NoSuchFileException
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw new NoSuchFileException(path.toString());
+            }
+            length = attributes.size();
+            // HTTP日期只精确到秒
+            lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        }
+
+        String etag = buildEtag(length, lastModified);
+
+        // 缓存策略：上传文件名由UUID生成且内容不会变化，可长期缓存；
+        // 下载需要鉴权和计数，只允许浏览器私有缓存且每次重新验证
+        response.setHeader(HttpHeaders.CACHE_CONTROL, attachmentName != null ? "private, no-cache" : buildCacheControl(filename));
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+
+        // 条件GET：仅依据文件元数据判断，命中时直接返回304/412，不打开文件
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        // 判断是否为图片
+        String extension = FilenameUtils.getExtension(filename);
+        boolean isImage = StrUtil.isNotBlank(extension) && isImageExtension(extension);
+        String contentType = isImage ? getMediaType(extension).toString() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+        if (attachmentName != null || !isImage) {
+            // 下载文件设置Content-Disposition
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, buildContentDisposition(attachmentName != null ? attachmentName : filename));
+        }
+
+        // 解析Range，If-Range不匹配时按完整内容返回
+        List<ByteRange> ranges = null;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (StrUtil.isNotBlank(rangeHeader) && isIfRangeSatisfied(request, etag, lastModified)) {
+            ranges = parseRanges(rangeHeader, length);
+        }
+
+        if (ranges != null && ranges.isEmpty()) {
+            // 所有区间均不可满足
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + length);
+            response.setContentLength(0);
+            return;
+        }
+
+        // 先尝试载入缓存再申请带宽：租约申请之后到交给内容来源之前不再有可能失败的操作，限速租约不会泄漏
+        if (cached == null && cacheable && !isHeadRequest(request)) {
+            cached = fileCacheService.load(relativePath, path, length, lastModified);
+        }
+
+        // 在写出响应头之前打开文件：文件此时被删除（如热存储副本被淘汰）仍抛出NoSuchFileException，调用方可改读其他位置
+        BodySource source = cached != null ? new BufferBodySource(cached.getData())
+                : new FileBodySource(path, FileChannel.open(path, StandardOpenOption.READ));
+
+        // 按响应体字节数申请带宽，缩略图与原图按不同权重计费
+        long bodyBytes = isHeadRequest(request) ? 0 : ranges == null ? length : ranges.stream().mapToLong(ByteRange::length).sum();
+        Lease lease = bandwidthShapingService.acquire(request, cacheable ? TrafficClass.THUMBNAIL : TrafficClass.ORIGINAL, bodyBytes);
+        if (lease.isRejected()) {
+            source.close();
+            rejectTooManyRequests(lease, response);
+            return;
+        }
+
+        if (lease.isPaced()) {
+            source = new ShapedBodySource(source, lease);
+        }
+        if (ranges == null) {
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            writeSingle(source, 0, length, request, response);
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, range.toContentRange(length));
+            response.setContentLengthLong(range.length());
+            writeSingle(source, range.start, range.length(), request, response);
+            return;
+        }
+
+        writeMultipart(source, contentType, length, ranges, request, response);
+    }
+
+    /**
+     * 按存储分层和布局查找并输出上传目录中的文件
+     *
+     * @param relativePath   规范化后的文件相对路径
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @param attachmentName 下载文件名，为null时按文件类型决定是否作为附件
+     * @throws IOException 输出失败
+     */
+    @Override
+    public void serveStoredFile(String relativePath, HttpServletRequest request, HttpServletResponse response,
+                                String attachmentName) throws IOException {
+        Path resolved = fileTierService.resolve(relativePath);
+        try {
+            serveFile(relativePath, resolved, request, response, attachmentName);
+            return;
+        } catch (NoSuchFileException e) {
+            Path coldPath = fileStorageService.toAbsolutePath(relativePath);
+            if (resolved.equals(coldPath)) {
+                serveAlternate(relativePath, request, response, attachmentName, e);
+                return;
+            }
+            // 热存储副本在读取前被淘汰，改读冷存储
+            log.debug("热存储副本已不存在，改读冷存储: {}", relativePath);
+        }
+        try {
+            serveFile(relativePath, fileStorageService.toAbsolutePath(relativePath), request, response, attachmentName);
+        } catch (NoSuchFileException e) {
+            serveAlternate(relativePath, request, response, attachmentName, e);
+        }
+    }
+
+    /**
+     * 按另一种存储布局查找并输出文件，没有另一种布局时抛出原异常
+     *
+     * @param relativePath   规范化后的文件相对路径
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @param attachmentName 下载文件名
+     * @param notFound       按原路径读取时的异常
+     * @throws IOException 输出失败或文件不存在
+     */
+    private void serveAlternate(String relativePath, HttpServletRequest request, HttpServletResponse response,
+                                String attachmentName, NoSuchFileException notFound) throws IOException {
+        {
+            String alternate = fileStorageService.alternatePath(relativePath);
+            if (alternate == null) {
+                throw notFound;
+            }
+            serveFile(alternate, fileTierService.resolve(alternate), request, response, attachmentName);
+        }
+    }
+
+    /**
+     * 以附件形式输出动态生成的内容
+     *
+     * @param contentType    内容类型
+     * @param attachmentName 下载文件名
+     * @param body           响应体
+     * @param request        HTTP请求
+     * @param response       HTTP响应
+     * @throws IOException 输出失败
+     */
+    @Override
+    public void serveStream(String contentType, String attachmentName, StreamBody body,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, buildContentDisposition(attachmentName));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        if (isHeadRequest(request)) {
+            body.close();
+            return;
+        }
+        // 动态内容长度未知，始终限速输出
+        Lease lease = bandwidthShapingService.acquire(request, TrafficClass.ORIGINAL, -1);
+        if (lease.isRejected()) {
+            body.close();
+            rejectTooManyRequests(lease, response);
+            return;
+        }
+        writeBody(() -> {
+            try (Closeable ignored = lease) {
+                body.close();
+            }
+        }, out -> body.write(lease.wrap(out)), request, response);
+    }
+
+    /**
+     * 获取文件输出线程池统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getAsyncStats() {
+        ThreadPoolExecutor executor = fileServeExecutor.getThreadPoolExecutor();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("asyncEnabled", asyncEnabled);
+        stats.put("inFlight", inFlight.get());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("maxPoolSize", executor.getMaximumPoolSize());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueRemainingCapacity", executor.getQueue().remainingCapacity());
+        stats.put("completedTasks", executor.getCompletedTaskCount());
+        stats.put("rejectedTasks", rejected.get());
+        stats.put("failedTasks", failed.get());
+        return stats;
+    }
+
+    /**
+     * 输出单个连续区间
+     *
+     * @param source   内容来源
+     * @param start    起始位置
+     * @param count    字节数
+     * @param request  HTTP请求
+     * @param response HTTP响应
+     * @throws IOException 输出失败
+     */
+    private void writeSingle(BodySource source, long start, long count, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (isHeadRequest(request) || count == 0) {
+            source.close();
+            return;
+        }
+
+        if (source.getPath() != null && isSendfileSupported(request)) {
+            // 交给容器在请求结束后通过sendfile输出，sendfile由Poller线程驱动，不占用工作线程
+            request.setAttribute(SENDFILE_FILENAME_ATTR, source.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            source.close();
+            return;
+        }
+
+        writeBody(source, out -> source.write(start, count, out), request, response);
+    }
+
+    /**
+     * 以multipart/byteranges格式输出多个区间
+     *
+     * @param source      内容来源
+     * @param contentType 文件内容类型
+     * @param length      文件总长度
+     * @param ranges      区间列表
+     * @param request     HTTP请求
+     * @param response    HTTP响应
+     * @throws IOException 输出失败
+     */
+    private void writeMultipart(BodySource source, String contentType, long length, List<ByteRange> ranges,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = IdUtil.fastSimpleUUID();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            String partHeader = CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + range.toContentRange(length) + CRLF
+                    + CRLF;
+            byte[] bytes = partHeader.getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(bytes);
+            contentLength += bytes.length + range.length();
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (isHeadRequest(request)) {
+            source.close();
+            return;
+        }
+
+        writeBody(source, out -> {
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                out.write(partHeaders.get(i));
+                source.write(range.start, range.length(), out);
+            }
+            out.write(closing);
+        }, request, response);
+    }
+
+    /**
+     * 写出响应体，并在完成后关闭内容来源
+     * <p>
+     * 开启异步模式时，在请求线程上启动Servlet异步处理，由独立的有界文件IO线程池完成磁盘读取
+     * 与socket写出，Tomcat工作线程立即归还；线程池饱和时返回503，避免无限排队。
+     *
+     * @param source   内容来源，写出结束或被拒绝时关闭
+     * @param writer   响应体写出逻辑
+     * @param request  HTTP请求
+     * @param response HTTP响应
+     * @throws IOException 输出失败
+     */
+    private void writeBody(Closeable source, BodyWriter writer, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!asyncEnabled || !request.isAsyncSupported()) {
+            try (Closeable ignored = source) {
+                OutputStream out = response.getOutputStream();
+                writer.write(out);
+                out.flush();
+            }
+            return;
+        }
+
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(asyncTimeout);
+        AsyncWrite write = new AsyncWrite(asyncContext, source);
+        asyncContext.addListener(write);
+        inFlight.incrementAndGet();
+        try {
+            fileServeExecutor.execute(() -> {
+                try {
+                    OutputStream out = write.guard(asyncContext.getResponse().getOutputStream());
+                    writer.write(out);
+                    out.flush();
+                } catch (IOException | IllegalStateException e) {
+                    // 多为客户端中断连接，或容器已因超时、错误结束了响应
+                    failed.incrementAndGet();
+                    log.debug("异步输出文件失败: {}", e.getMessage());
+                } finally {
+                    inFlight.decrementAndGet();
+                    write.release();
+                    write.complete();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            write.release();
+            log.warn("文件输出线程池已满，拒绝请求: {}", request.getRequestURI());
+            response.reset();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            write.complete();
+        }
+    }
+
+    /**
+     * 客户端同时被限速的响应过多，返回429
+     *
+     * @param lease    被拒绝的租约
+     * @param response HTTP响应
+     */
+    private void rejectTooManyRequests(Lease lease, HttpServletResponse response) {
+        response.reset();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(lease.getRetryAfterSeconds()));
+    }
+
+    /**
+     * 解析Range请求头（RFC 7233）
+     *
+     * @param rangeHeader Range请求头
+     * @param length      文件总长度
+     * @return 区间列表；语法无效时返回null（忽略Range），不可满足时返回空列表
+     */
+    private List<ByteRange> parseRanges(String rangeHeader, long length) {
+        String header = rangeHeader.trim();
+        if (!header.regionMatches(true, 0, BYTES_UNIT + "=", 0, BYTES_UNIT.length() + 1)) {
+            return null;
+        }
+
+        String[] specs = header.substring(BYTES_UNIT.length() + 1).split(",");
+        if (specs.length > maxRanges) {
+            // 区间过多，视为无效请求，直接返回完整内容
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            String value = spec.trim();
+            int dash = value.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String first = value.substring(0, dash).trim();
+            String last = value.substring(dash + 1).trim();
+            try {
+                if (first.isEmpty()) {
+                    // 后缀区间：最后N个字节
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    if (suffixLength > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffixLength), length - 1));
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < length) {
+                    ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return coalesce(ranges);
+    }
+
+    /**
+     * 合并重叠或相邻的区间，避免重复读取同一段数据
+     *
+     * @param ranges 区间列表
+     * @return 合并后的区间列表
+     */
+    private List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(range -> range.start));
+        List<ByteRange> merged = new ArrayList<>(sorted.size());
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start <= current.end + 1) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * 判断If-Range条件是否满足
+     *
+     * @param request      HTTP请求
+     * @param etag         文件ETag
+     * @param lastModified 文件最后修改时间（毫秒，精确到秒）
+     * @return 是否可以按Range返回部分内容
+     */
+    private boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (StrUtil.isBlank(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range要求强比较，弱ETag永远不匹配
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 根据文件元数据生成强ETag
+     *
+     * @param length       文件长度
+     * @param lastModified 文件最后修改时间
+     * @return ETag
+     */
+    private String buildEtag(long length, long lastModified) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    /**
+     * 构建附件的Content-Disposition
+     * <p>
+     * filename为ASCII回退名，filename*按RFC 5987携带UTF-8原名，兼容不支持扩展参数的旧客户端
+     *
+     * @param filename 下载文件名
+     * @return Content-Disposition头的值
+     */
+    private String buildContentDisposition(String filename) {
+        String fallback = filename.replaceAll("[^\\x20-\\x7e]", "_").replace('"', '_').replace('\\', '_');
+        String encoded = ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString();
+        return "attachment; filename=\"" + fallback + "\"; " + encoded.substring(encoded.indexOf("filename*="));
+    }
+
+    /**
+     * 生成Cache-Control响应头
+     *
+     * @param filename 文件名
+     * @return Cache-Control值
+     */
+    private String buildCacheControl(String filename) {
+        if (IMMUTABLE_FILENAME.matcher(filename).matches()) {
+            return "public, max-age=" + immutableMaxAge + ", immutable";
+        }
+        return "public, max-age=" + maxAge;
+    }
+
+    /**
+     * 是否为HEAD请求
+     *
+     * @param request HTTP请求
+     * @return 是否为HEAD请求
+     */
+    private boolean isHeadRequest(HttpServletRequest request) {
+        return "HEAD".equalsIgnoreCase(request.getMethod());
+    }
+
+    /**
+     * 判断当前请求是否可以使用sendfile
+     *
+     * @param request HTTP请求
+     * @return 是否可以使用sendfile
+     */
+    private boolean isSendfileSupported(HttpServletRequest request) {
+        return sendfileEnabled && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR));
+    }
+
+    /**
+     * 判断是否为图片扩展名
+     *
+     * @param extension 扩展名
+     * @return 是否为图片
+     */
+    private boolean isImageExtension(String extension) {
+        if (StrUtil.isBlank(extension)) {
+            return false;
+        }
+
+        String lowerExt = extension.toLowerCase();
+        for (String imageExt : IMAGE_EXTENSIONS) {
+            if (imageExt.equals(lowerExt)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 根据扩展名获取媒体类型
+     *
+     * @param extension 扩展名
+     * @return 媒体类型
+     */
+    private MediaType getMediaType(String extension) {
+        if (StrUtil.isBlank(extension)) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+
+        switch (extension.toLowerCase()) {
+            case "jpg":
+            case "jpeg":
+                return MediaType.IMAGE_JPEG;
+            case "png":
+                return MediaType.IMAGE_PNG;
+            case "gif":
+                return MediaType.IMAGE_GIF;
+            case "webp":
+                // WebP没有标准MediaType，使用通用图片类型
+                return MediaType.valueOf("image/webp");
+            default:
+                return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    /**
+     * 字节区间（闭区间）
+     */
+    private static class ByteRange {
+
+        private final long start;
+
+        private final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+
+        String toContentRange(long total) {
+            return BYTES_UNIT + " " + start + "-" + end + "/" + total;
+        }
+    }
+
+    /**
+     * 响应体写出逻辑
+     */
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        /**
+         * 写出响应体
+         *
+         * @param out 输出流
+         * @throws IOException 输出失败
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 一次异步输出的生命周期
+     * <p>
+     * 容器超时或出错时置中止标记，输出线程在下一次写出前检查并停止，不再写入已由容器结束的响应；
+     * 内容来源（含带宽租约）只关闭一次，complete只调用一次，无论由输出线程还是容器回调先执行
+     */
+    private static class AsyncWrite implements AsyncListener {
+
+        private final AsyncContext asyncContext;
+
+        private final Closeable source;
+
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        AsyncWrite(AsyncContext asyncContext, Closeable source) {
+            this.asyncContext = asyncContext;
+            this.source = source;
+        }
+
+        /**
+         * 包装输出流，中止后写出时抛出IOException
+         *
+         * @param out 响应输出流
+         * @return 包装后的输出流
+         */
+        OutputStream guard(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    checkAborted();
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    checkAborted();
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    checkAborted();
+                    out.flush();
+                }
+            };
+        }
+
+        private void checkAborted() throws IOException {
+            if (aborted.get()) {
+                throw new IOException("响应已因超时或错误结束");
+            }
+        }
+
+        /**
+         * 关闭内容来源，只执行一次
+         */
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    log.debug("关闭响应内容来源失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * 结束异步处理，只执行一次
+         */
+        void complete() {
+            if (completed.compareAndSet(false, true)) {
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    // 容器已结束该请求
+                    log.debug("结束异步请求失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            completed.set(true);
+            aborted.set(true);
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            aborted.set(true);
+            complete();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            aborted.set(true);
+            complete();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 不会再次启动异步处理
+        }
+    }
+
+    /**
+     * 响应内容来源
+     */
+    private interface BodySource extends Closeable {
+
+        /**
+         * 将指定区间写入输出流
+         *
+         * @param start 起始位置
+         * @param count 字节数
+         * @param out   输出流
+         * @throws IOException 输出失败
+         */
+        void write(long start, long count, OutputStream out) throws IOException;
+
+        /**
+         * 磁盘文件路径，非磁盘来源时为null（不可使用sendfile）
+         *
+         * @return 文件路径
+         */
+        Path getPath();
+    }
+
+    /**
+     * 磁盘文件内容，文件在写出响应头之前打开，通过FileChannel.transferTo输出
+     */
+    private static class FileBodySource implements BodySource {
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        FileBodySource(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(long start, long count, OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    // 文件在输出过程中被截断
+                    throw new IOException("文件输出中断，剩余字节: " + remaining);
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+
+        @Override
+        public Path getPath() {
+            return path;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * 限速输出的内容来源，写出时按租约限速；不提供文件路径，因此不会走sendfile
+     */
+    private static class ShapedBodySource implements BodySource {
+
+        private final BodySource source;
+
+        private final Lease lease;
+
+        ShapedBodySource(BodySource source, Lease lease) {
+            this.source = source;
+            this.lease = lease;
+        }
+
+        @Override
+        public void write(long start, long count, OutputStream out) throws IOException {
+            source.write(start, count, lease.wrap(out));
+        }
+
+        @Override
+        public Path getPath() {
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (Closeable ignored = lease) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * 内存缓存内容
+     */
+    private static class BufferBodySource implements BodySource {
+
+        private final ByteBuffer data;
+
+        BufferBodySource(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public void write(long start, long count, OutputStream out) throws IOException {
+            ByteBuffer slice = data.duplicate();
+            slice.position((int) start);
+            slice.limit((int) (start + count));
+            WritableByteChannel target = Channels.newChannel(out);
+            while (slice.hasRemaining()) {
+                target.write(slice);
+            }
+        }
+
+        @Override
+        public Path getPath() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
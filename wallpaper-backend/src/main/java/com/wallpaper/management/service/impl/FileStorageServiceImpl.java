@@ -0,0 +1,171 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.wallpaper.management.service.FileStorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 文件存储布局服务实现类
+ * <p>
+ * 分层目录取自文件名开头的十六进制字符（SHA-256或UUID本身分布均匀），
+ * 缩略图等派生文件与原图同名前缀，因此落在同一目录；文件名不是十六进制时改用其MD5。
+ */
+@Slf4j
+@Service
+public class FileStorageServiceImpl implements FileStorageService {
+
+    private static final int MAX_LEVELS = 4;
+
+    private static final int MAX_WIDTH = 4;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @Value("${file.storage.layout.levels:2}")
+    private int levels;
+
+    @Value("${file.storage.layout.width:2}")
+    private int width;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() {
+        if (levels < 0 || levels > MAX_LEVELS || width < 1 || width > MAX_WIDTH) {
+            throw new IllegalStateException("file.storage.layout配置无效: levels=" + levels + ", width=" + width);
+        }
+        root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        log.info("文件存储布局: 日期目录下{}级哈希目录，每级{}个字符", levels, width);
+    }
+
+    /**
+     * 按当前分层布局生成新文件的相对路径
+     *
+     * @param name   文件名（不含后缀）
+     * @param suffix 文件后缀
+     * @return 文件相对路径
+     */
+    @Override
+    public String newRelativePath(String name, String suffix) {
+        String dateDir = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        String filename = name + "." + suffix.toLowerCase();
+        return dateDir + "/" + shardDirectories(filename) + filename;
+    }
+
+    /**
+     * 规范化请求中的相对路径
+     *
+     * @param relativePath 请求中的相对路径
+     * @return 规范化后的相对路径，非法时返回null
+     */
+    @Override
+    public String normalize(String relativePath) {
+        if (StrUtil.isBlank(relativePath) || relativePath.indexOf('\\') >= 0 || relativePath.indexOf('\0') >= 0) {
+            return null;
+        }
+        String path = StrUtil.removePrefix(relativePath, "/");
+        String[] segments = path.split("/", -1);
+        for (String segment : segments) {
+            // 空段、"."、".."及隐藏目录（如上传临时目录）一律拒绝
+            if (segment.isEmpty() || segment.startsWith(".") || segment.indexOf(':') >= 0) {
+                return null;
+            }
+        }
+        if (!root.resolve(path).normalize().startsWith(root)) {
+            return null;
+        }
+        return path;
+    }
+
+    /**
+     * 获取相对路径对应的绝对路径
+     *
+     * @param relativePath 规范化后的相对路径
+     * @return 绝对路径
+     */
+    @Override
+    public Path toAbsolutePath(String relativePath) {
+        return root.resolve(relativePath);
+    }
+
+    /**
+     * 获取同一文件在另一种布局下的路径
+     *
+     * @param relativePath 规范化后的相对路径
+     * @return 另一种布局下的路径，无法换算时返回null
+     */
+    @Override
+    public String alternatePath(String relativePath) {
+        if (levels == 0) {
+            return null;
+        }
+        String[] segments = relativePath.split("/");
+        if (segments.length == 2) {
+            return toShardedPath(relativePath);
+        }
+        if (segments.length == levels + 2) {
+            return segments[0] + "/" + segments[segments.length - 1];
+        }
+        return null;
+    }
+
+    /**
+     * 将平铺布局的路径换算为分层布局的路径
+     *
+     * @param relativePath 相对路径
+     * @return 分层布局的路径，已是分层布局或未启用分层时返回null
+     */
+    @Override
+    public String toShardedPath(String relativePath) {
+        if (levels == 0 || StrUtil.isBlank(relativePath)) {
+            return null;
+        }
+        String[] segments = relativePath.split("/");
+        if (segments.length != 2) {
+            return null;
+        }
+        return segments[0] + "/" + shardDirectories(segments[1]) + segments[1];
+    }
+
+    /**
+     * 计算文件名对应的分层目录
+     *
+     * @param filename 文件名
+     * @return 分层目录，以"/"结尾；未启用分层时为空字符串
+     */
+    private String shardDirectories(String filename) {
+        if (levels == 0) {
+            return "";
+        }
+        // 派生文件（如_thumb）与原图使用相同的前缀
+        String base = StrUtil.subBefore(StrUtil.subBefore(filename, ".", false), "_", false).toLowerCase();
+        int prefixLength = levels * width;
+        if (base.length() < prefixLength || !isHex(base, prefixLength)) {
+            base = DigestUtil.md5Hex(base);
+        }
+        StringBuilder dirs = new StringBuilder(prefixLength + levels);
+        for (int i = 0; i < levels; i++) {
+            dirs.append(base, i * width, (i + 1) * width).append('/');
+        }
+        return dirs.toString();
+    }
+
+    private static boolean isHex(String value, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
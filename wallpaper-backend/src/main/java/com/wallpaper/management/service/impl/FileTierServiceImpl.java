@@ -0,0 +1,414 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.util.FrequencySketch;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 文件存储分层服务实现类
+ * <p>
+ * 热存储中的文件是冷存储的只读副本（复制时保留修改时间，ETag不随所在层变化）。
+ * 淘汰的副本先从索引移除（新请求改读冷存储），经过一段宽限期再删除文件，
+ * 已打开或即将通过sendfile按路径打开它的请求不受影响；
+ * 命中路径只更新访问时间，不加锁；容量超限时一次性按访问时间淘汰到低水位，避免每次提升都排序。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileTierServiceImpl implements FileTierService {
+
+    /**
+     * 热存储内的临时目录，复制完成后再原子重命名到目标位置
+     */
+    private static final String TEMP_DIR = ".tmp";
+
+    /**
+     * 淘汰后的目标占用比例
+     */
+    private static final double LOW_WATERMARK = 0.9;
+
+    private final FileStorageService fileStorageService;
+
+    @Resource(name = "fileTierExecutor")
+    private ThreadPoolTaskExecutor fileTierExecutor;
+
+    @Value("${file.storage.hot.path:}")
+    private String hotPath;
+
+    @Value("${file.storage.hot.max-bytes:10737418240}")
+    private long maxBytes;
+
+    @Value("${file.storage.hot.promote-threshold:3}")
+    private int promoteThreshold;
+
+    @Value("${file.storage.hot.expected-entries:100000}")
+    private int expectedEntries;
+
+    @Value("${file.storage.hot.delete-delay:60000}")
+    private long deleteDelay;
+
+    private final Map<String, HotEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 正在复制的文件，避免重复提交
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已移出索引、等待删除的副本，按淘汰先后排列
+     */
+    private final Queue<PendingDelete> pendingDeletes = new ConcurrentLinkedQueue<>();
+
+    private final ReentrantLock demoteLock = new ReentrantLock();
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong hotHits = new AtomicLong();
+
+    private final AtomicLong coldHits = new AtomicLong();
+
+    private final AtomicLong promotions = new AtomicLong();
+
+    private final AtomicLong demotions = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private boolean enabled;
+
+    private Path hotRoot;
+
+    private FrequencySketch sketch;
+
+    private volatile boolean running = true;
+
+    private Thread cleaner;
+
+    @PostConstruct
+    public void init() throws IOException {
+        enabled = StrUtil.isNotBlank(hotPath);
+        if (!enabled) {
+            log.info("未配置热存储目录，所有文件从冷存储读取");
+            return;
+        }
+        hotRoot = Paths.get(hotPath).toAbsolutePath().normalize();
+        sketch = new FrequencySketch(expectedEntries);
+        Files.createDirectories(hotRoot);
+        FileUtil.del(hotRoot.resolve(TEMP_DIR));
+        loadIndex();
+        cleaner = new Thread(this::runCleaner, "file-tier-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+        log.info("热存储初始化完成: {}，容量={}字节，已有{}个文件共{}字节", hotRoot, maxBytes, entries.size(), usedBytes.get());
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (cleaner == null) {
+            return;
+        }
+        running = false;
+        cleaner.interrupt();
+        cleaner.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 获取读取文件时应使用的路径
+     *
+     * @param relativePath 规范化后的相对路径
+     * @return 文件绝对路径
+     */
+    @Override
+    public Path resolve(String relativePath) {
+        if (!enabled) {
+            return fileStorageService.toAbsolutePath(relativePath);
+        }
+        HotEntry entry = entries.get(relativePath);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+            hotHits.incrementAndGet();
+            return hotRoot.resolve(relativePath);
+        }
+        coldHits.incrementAndGet();
+        sketch.increment(relativePath);
+        if (sketch.frequency(relativePath) >= promoteThreshold) {
+            schedulePromotion(relativePath);
+        }
+        return fileStorageService.toAbsolutePath(relativePath);
+    }
+
+    /**
+     * 将新写入冷存储的文件异步复制到热存储
+     *
+     * @param relativePath 相对路径
+     */
+    @Override
+    public void admit(String relativePath) {
+        if (enabled && StrUtil.isNotBlank(relativePath) && !entries.containsKey(relativePath)) {
+            schedulePromotion(relativePath);
+        }
+    }
+
+    /**
+     * 删除文件在热存储中的副本
+     *
+     * @param relativePath 相对路径
+     */
+    @Override
+    public void evict(String relativePath) {
+        if (!enabled || StrUtil.isBlank(relativePath)) {
+            return;
+        }
+        HotEntry entry = entries.remove(relativePath);
+        if (entry != null) {
+            deleteCopy(relativePath, entry);
+        }
+    }
+
+    /**
+     * 获取分层统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        long hot = hotHits.get();
+        long cold = coldHits.get();
+        long total = hot + cold;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hotPath", enabled ? hotRoot.toString() : null);
+        stats.put("entries", entries.size());
+        stats.put("usedBytes", usedBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hotHits", hot);
+        stats.put("coldHits", cold);
+        stats.put("hotHitRate", total == 0 ? 0D : (double) hot / total);
+        stats.put("promotions", promotions.get());
+        stats.put("demotions", demotions.get());
+        stats.put("failures", failures.get());
+        stats.put("pending", pending.size());
+        stats.put("pendingDeletes", pendingDeletes.size());
+        return stats;
+    }
+
+    private void schedulePromotion(String relativePath) {
+        if (pending.add(relativePath)) {
+            fileTierExecutor.execute(() -> {
+                try {
+                    promote(relativePath);
+                } finally {
+                    pending.remove(relativePath);
+                }
+            });
+        }
+    }
+
+    /**
+     * 将冷存储中的文件复制到热存储
+     *
+     * @param relativePath 相对路径
+     */
+    private void promote(String relativePath) {
+        if (entries.containsKey(relativePath)) {
+            return;
+        }
+        Path source = fileStorageService.toAbsolutePath(relativePath);
+        Path target = hotRoot.resolve(relativePath);
+        Path temp = hotRoot.resolve(TEMP_DIR).resolve(IdUtil.fastSimpleUUID());
+        try {
+            long size = Files.size(source);
+            if (size > maxBytes * (1 - LOW_WATERMARK)) {
+                // 单个文件过大，会导致一次淘汰大量文件
+                return;
+            }
+            Files.createDirectories(temp.getParent());
+            Files.copy(source, temp, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            HotEntry entry = new HotEntry(size, System.currentTimeMillis());
+            entries.put(relativePath, entry);
+            usedBytes.addAndGet(size);
+            promotions.incrementAndGet();
+
+            // 复制期间冷存储文件被删除时，不保留过期副本
+            if (Files.notExists(source) && entries.remove(relativePath, entry)) {
+                deleteCopy(relativePath, entry);
+                return;
+            }
+            if (usedBytes.get() > maxBytes) {
+                demote();
+            }
+        } catch (NoSuchFileException e) {
+            log.debug("冷存储文件不存在，跳过提升: {}", relativePath);
+        } catch (IOException e) {
+            log.warn("提升文件到热存储失败: {}", relativePath, e);
+            failures.incrementAndGet();
+        } finally {
+            FileUtil.del(temp);
+        }
+    }
+
+    /**
+     * 按最近访问时间淘汰热存储中的副本，直到占用降到低水位
+     */
+    private void demote() {
+        demoteLock.lock();
+        try {
+            long target = (long) (maxBytes * LOW_WATERMARK);
+            if (usedBytes.get() <= target) {
+                return;
+            }
+            List<Map.Entry<String, HotEntry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (Map.Entry<String, HotEntry> candidate : candidates) {
+                if (usedBytes.get() <= target) {
+                    break;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    deleteCopy(candidate.getKey(), candidate.getValue());
+                    demotions.incrementAndGet();
+                }
+            }
+        } finally {
+            demoteLock.unlock();
+        }
+    }
+
+    /**
+     * 副本已移出索引，登记延迟删除；宽限期内文件保留在原位置，不计入占用
+     *
+     * @param relativePath 相对路径
+     * @param entry 索引条目
+     */
+    private void deleteCopy(String relativePath, HotEntry entry) {
+        usedBytes.addAndGet(-entry.size);
+        pendingDeletes.add(new PendingDelete(relativePath, System.currentTimeMillis()));
+    }
+
+    /**
+     * 定期删除超过宽限期的副本
+     * <p>
+     * 删除前占用{@link #pending}中的路径，与提升互斥：期间被重新提升的副本不会被误删
+     */
+    private void runCleaner() {
+        long interval = Math.max(1000L, deleteDelay / 2);
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // 停止时由running退出
+                continue;
+            }
+            long deadline = System.currentTimeMillis() - deleteDelay;
+            PendingDelete head;
+            while ((head = pendingDeletes.peek()) != null && head.deletedAt <= deadline) {
+                pendingDeletes.poll();
+                if (!pending.add(head.relativePath)) {
+                    // 正在重新提升，稍后再判断
+                    pendingDeletes.add(new PendingDelete(head.relativePath, System.currentTimeMillis()));
+                    continue;
+                }
+                try {
+                    if (!entries.containsKey(head.relativePath)) {
+                        Files.deleteIfExists(hotRoot.resolve(head.relativePath));
+                    }
+                } catch (IOException e) {
+                    log.warn("删除热存储副本失败: {}", head.relativePath, e);
+                } finally {
+                    pending.remove(head.relativePath);
+                }
+            }
+        }
+    }
+
+    /**
+     * 启动时扫描热存储目录重建索引，丢弃冷存储中已不存在或大小不一致的副本
+     */
+    private void loadIndex() throws IOException {
+        long now = System.currentTimeMillis();
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(hotRoot)) {
+            stream.filter(Files::isRegularFile).forEach(files::add);
+        }
+        for (Path file : files) {
+            String relativePath = hotRoot.relativize(file).toString().replace('\\', '/');
+            Path source = fileStorageService.toAbsolutePath(relativePath);
+            long size = Files.size(file);
+            if (Files.notExists(source) || Files.size(source) != size) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            entries.put(relativePath, new HotEntry(size, now));
+            usedBytes.addAndGet(size);
+        }
+        if (usedBytes.get() > maxBytes) {
+            demote();
+        }
+    }
+
+    /**
+     * 等待删除的副本
+     */
+    private static class PendingDelete {
+
+        private final String relativePath;
+
+        private final long deletedAt;
+
+        PendingDelete(String relativePath, long deletedAt) {
+            this.relativePath = relativePath;
+            this.deletedAt = deletedAt;
+        }
+    }
+
+    /**
+     * 热存储索引条目
+     */
+    private static class HotEntry {
+
+        private final long size;
+
+        /**
+         * 最近访问时间，命中时更新，无需加锁
+         */
+        private volatile long lastAccess;
+
+        HotEntry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.wallpaper.management.service.impl;
+
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.util.ImageUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图片解码准入服务实现类
+ * <p>
+ * 预算以千像素为单位的公平信号量表示，大图不会被持续到来的小图饿死；
+ * 解码结果按每像素4字节估算，缩放结果、重采样缓冲和裁剪副本由调用方按解码结果的宽高估算字节数，
+ * 折算为同样的单位一并计入，解码和处理期间的峰值内存都在预算内
+ */
+@Slf4j
+@Service
+public class ImageDecodeServiceImpl implements ImageDecodeService {
+
+    /**
+     * 信号量每个许可代表的像素数
+     */
+    private static final int PIXELS_PER_PERMIT = 1024;
+
+    /**
+     * 解码结果每像素占用的字节数（TYPE_INT_RGB/ARGB）
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    @Value("${file.decode.budget-bytes:536870912}")
+    private long budgetBytes;
+
+    @Value("${file.decode.max-image-pixels:100000000}")
+    private long maxImagePixels;
+
+    @Value("${file.decode.timeout:10000}")
+    private long timeout;
+
+    private Semaphore budget;
+
+    private int totalPermits;
+
+    private final AtomicLong admitted = new AtomicLong();
+
+    private final AtomicLong waited = new AtomicLong();
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    private final AtomicLong oversized = new AtomicLong();
+
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetBytes / BYTES_PER_PIXEL / PIXELS_PER_PERMIT));
+        budget = new Semaphore(totalPermits, true);
+        log.info("图片解码预算初始化完成，预算={}字节（{}像素），单图上限={}像素，等待超时={}ms",
+                budgetBytes, (long) totalPermits * PIXELS_PER_PERMIT, maxImagePixels, timeout);
+    }
+
+    /**
+     * 判断图片尺寸是否允许解码
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @return 是否允许
+     */
+    @Override
+    public boolean isAllowed(int width, int height) {
+        return width > 0 && height > 0 && (long) width * height <= maxImagePixels;
+    }
+
+    /**
+     * 在预算内降采样解码图片
+     *
+     * @param file      图片文件
+     * @param minWidth  解码结果的最小宽度，0表示不限
+     * @param minHeight 解码结果的最小高度，0表示不限
+     * @return 解码租约
+     * @throws IOException 读取失败或不是可识别的图片格式
+     */
+    @Override
+    public Lease acquire(File file, int minWidth, int minHeight) throws IOException {
+        return acquire(file, minWidth, minHeight, (width, height) -> 0);
+    }
+
+    /**
+     * 在预算内降采样解码图片，同时为解码后的处理预留内存
+     *
+     * @param file       图片文件
+     * @param minWidth   解码结果的最小宽度，0表示不限
+     * @param minHeight  解码结果的最小高度，0表示不限
+     * @param workingSet 按解码结果的宽高估算处理过程中额外占用的内存
+     * @return 解码租约
+     * @throws IOException 读取失败或不是可识别的图片格式
+     */
+    @Override
+    public Lease acquire(File file, int minWidth, int minHeight, WorkingSet workingSet) throws IOException {
+        int[] size = ImageUtils.probeSize(file);
+        if (!isAllowed(size[0], size[1])) {
+            oversized.incrementAndGet();
+            throw new BusinessException(ResultCode.IMAGE_TOO_LARGE.getCode(),
+                    "图片尺寸超过限制: " + size[0] + "x" + size[1]);
+        }
+        int[] decoded = ImageUtils.subsampledSize(size[0], size[1], minWidth, minHeight);
+        // 处理占用的字节数折算为像素数，向上取整
+        long extra = workingSet.estimate(decoded[0], decoded[1]);
+        long pixels = (long) decoded[0] * decoded[1] + (extra + BYTES_PER_PIXEL - 1) / BYTES_PER_PIXEL;
+        long permits = (pixels + PIXELS_PER_PERMIT - 1) / PIXELS_PER_PERMIT;
+        if (permits > totalPermits) {
+            // 单张图片就超过全部预算，等待也不会被准入
+            oversized.incrementAndGet();
+            throw new BusinessException(ResultCode.IMAGE_TOO_LARGE.getCode(),
+                    "图片解码所需内存超过预算: " + decoded[0] + "x" + decoded[1]);
+        }
+
+        int required = (int) permits;
+        try {
+            // 带超时的获取遵守公平顺序，已有等待者时不插队
+            if (!budget.tryAcquire(required, 0, TimeUnit.MILLISECONDS)) {
+                waited.incrementAndGet();
+                long start = System.currentTimeMillis();
+                boolean acquired = budget.tryAcquire(required, timeout, TimeUnit.MILLISECONDS);
+                maxWaitMillis.accumulateAndGet(System.currentTimeMillis() - start, Math::max);
+                if (!acquired) {
+                    timedOut.incrementAndGet();
+                    throw new BusinessException(ResultCode.TOO_MANY_REQUESTS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待解码预算被中断");
+        }
+
+        DecodeLease lease = new DecodeLease(required);
+        try {
+            lease.image = ImageUtils.readSubsampled(file, minWidth, minHeight);
+        } catch (IOException | RuntimeException | Error e) {
+            lease.close();
+            throw e;
+        }
+        admitted.incrementAndGet();
+        return lease;
+    }
+
+    /**
+     * 获取解码预算统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("budgetPixels", (long) totalPermits * PIXELS_PER_PERMIT);
+        stats.put("usedPixels", (long) (totalPermits - budget.availablePermits()) * PIXELS_PER_PERMIT);
+        stats.put("waiting", budget.getQueueLength());
+        stats.put("maxImagePixels", maxImagePixels);
+        stats.put("admitted", admitted.get());
+        stats.put("waited", waited.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("oversized", oversized.get());
+        stats.put("maxWaitMillis", maxWaitMillis.get());
+        return stats;
+    }
+
+    /**
+     * 解码租约
+     */
+    private class DecodeLease implements Lease {
+
+        private final int permits;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private volatile BufferedImage image;
+
+        DecodeLease(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                image = null;
+                budget.release(permits);
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpFileDerivative;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.service.ImageResizeService;
+import com.wallpaper.management.service.WpFileBlobService;
+import com.wallpaper.management.util.ImageEncoder;
+import com.wallpaper.management.util.ImageUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 按需缩放服务实现类
+ * <p>
+ * 请求的宽高分别向上取整到配置的档位，缓存键只由原图、编码参数和档位决定，任意参数组合都落在有限的缓存空间内。
+ * 缓存未命中时同一键只提交一个缩放任务，其余请求等待同一个结果；缩放优先以不小于所需尺寸的最小派生图为源，
+ * 避免解码原图。缓存按总字节数限制容量，超出后按最近访问时间淘汰。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageResizeServiceImpl implements ImageResizeService {
+
+    private static final String TEMP_DIR = ".tmp";
+
+    /**
+     * 淘汰后的占用比例
+     */
+    private static final double LOW_WATERMARK = 0.9;
+
+    private final WpFileBlobService fileBlobService;
+    private final FileStorageService fileStorageService;
+    private final FileTierService fileTierService;
+    private final ImageEncoder.Options imageEncoderOptions;
+    private final ImageDecodeService imageDecodeService;
+
+    @Resource(name = "resizeExecutor")
+    private ThreadPoolTaskExecutor resizeExecutor;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @Value("${file.resize.cache-path:}")
+    private String cachePath;
+
+    @Value("${file.resize.cache-max-bytes:5368709120}")
+    private long maxBytes;
+
+    @Value("${file.resize.widths:360,390,414,720,750,828,1080,1170,1242,1284,1290,1440,1920,2560,3840}")
+    private int[] widthBuckets;
+
+    @Value("${file.resize.heights:640,720,844,896,1080,1280,1334,1600,1920,2160,2340,2400,2436,2532,2556,2688,2778,2796,3200,3840}")
+    private int[] heightBuckets;
+
+    @Value("${file.resize.timeout:30000}")
+    private long timeout;
+
+    private Path cacheRoot;
+
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 进行中的缩放任务，同一缓存键只有一个
+     */
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong rendered = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        cacheRoot = (StrUtil.isNotBlank(cachePath) ? Paths.get(cachePath) : Paths.get(uploadPath, ".resize"))
+                .toAbsolutePath().normalize();
+        Arrays.sort(widthBuckets);
+        Arrays.sort(heightBuckets);
+        Files.createDirectories(cacheRoot);
+        FileUtil.del(cacheRoot.resolve(TEMP_DIR));
+        loadIndex();
+        log.info("缩放缓存初始化完成: {}，容量={}字节，已有{}个文件共{}字节", cacheRoot, maxBytes, entries.size(), usedBytes.get());
+    }
+
+    /**
+     * 获取壁纸缩放到指定尺寸的图片文件
+     *
+     * @param wallpaper 壁纸
+     * @param width     请求宽度，0表示按高度等比缩放
+     * @param height    请求高度，0表示按宽度等比缩放
+     * @param fit       缩放方式
+     * @return 缓存文件路径
+     * @throws IOException 原图读取或缓存写入失败
+     */
+    @Override
+    public Path resize(WpWallpaper wallpaper, int width, int height, Fit fit) throws IOException {
+        if (width < 0 || height < 0 || (width == 0 && height == 0)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "宽高至少指定一个且不能为负数");
+        }
+        if (StrUtil.isBlank(wallpaper.getFilePath())) {
+            throw new NoSuchFileException(String.valueOf(wallpaper.getId()));
+        }
+        int bucketWidth = snap(width, widthBuckets);
+        int bucketHeight = snap(height, heightBuckets);
+        Fit effectiveFit = bucketWidth == 0 || bucketHeight == 0 ? Fit.CONTAIN : fit;
+
+        // 文件名由原图路径和编码参数的摘要及档位组成，编码参数变化后不再命中旧的缓存文件
+        String format = FileUtil.getSuffix(wallpaper.getFilePath()).toLowerCase();
+        String name = DigestUtil.md5Hex(wallpaper.getFilePath() + "\n" + imageEncoderOptions.fingerprint())
+                + "_" + bucketWidth + "x" + bucketHeight + effectiveFit.name().toLowerCase() + "." + format;
+        String key = name.substring(0, 2) + "/" + name;
+
+        CacheEntry entry = entries.get(key);
+        Path target = cacheRoot.resolve(key);
+        if (entry != null && Files.exists(target)) {
+            entry.lastAccess = System.currentTimeMillis();
+            hits.incrementAndGet();
+            return target;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+        try {
+            resizeExecutor.execute(() -> {
+                try {
+                    future.complete(render(wallpaper, key, bucketWidth, bucketHeight, effectiveFit, format));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.remove(key, future);
+            rejected.incrementAndGet();
+            future.completeExceptionally(new BusinessException(ResultCode.TOO_MANY_REQUESTS));
+        }
+        return await(future);
+    }
+
+    /**
+     * 获取缩放缓存统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachePath", cacheRoot.toString());
+        stats.put("entries", entries.size());
+        stats.put("usedBytes", usedBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0D : (double) hitCount / total);
+        stats.put("coalesced", coalesced.get());
+        stats.put("rendered", rendered.get());
+        stats.put("inFlight", inFlight.size());
+        stats.put("rejected", rejected.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    /**
+     * 等待缩放结果
+     *
+     * @param future 缩放任务
+     * @return 缓存文件路径
+     * @throws IOException 缩放失败
+     */
+    private Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待缩放结果被中断");
+        } catch (TimeoutException e) {
+            // 任务仍在执行，结果写入缓存后后续请求可以直接命中
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("缩放失败", cause);
+        }
+    }
+
+    /**
+     * 生成缩放结果并写入缓存
+     *
+     * @param wallpaper 壁纸
+     * @param key       缓存键
+     * @param width     档位宽度
+     * @param height    档位高度
+     * @param fit       缩放方式
+     * @param format    输出格式
+     * @return 缓存文件路径
+     * @throws IOException 原图读取或缓存写入失败
+     */
+    private Path render(WpWallpaper wallpaper, String key, int width, int height, Fit fit, String format) throws IOException {
+        Path target = cacheRoot.resolve(key);
+        if (Files.exists(target)) {
+            // 等待执行期间已由之前的任务生成
+            if (!entries.containsKey(key)) {
+                long size = Files.size(target);
+                if (entries.putIfAbsent(key, new CacheEntry(size, System.currentTimeMillis())) == null) {
+                    usedBytes.addAndGet(size);
+                }
+            }
+            return target;
+        }
+
+        String sourcePath = chooseSource(wallpaper, width, height, fit);
+        File source = resolveSource(sourcePath).toFile();
+        // 缩放比例按原图尺寸计算；原图尺寸未知时源必然是原图，读取文件头即可
+        boolean knownSize = wallpaper.getWidth() != null && wallpaper.getHeight() != null;
+        int[] originSize = knownSize ? new int[]{wallpaper.getWidth(), wallpaper.getHeight()} : ImageUtils.probeSize(source);
+        int[] plan = plan(originSize[0], originSize[1], width, height, fit);
+
+        // 超过缩放后尺寸整数倍的源按倍数降采样解码；缩放和裁剪副本一并计入解码预算，预算不足时等待，超时返回429
+        Path temp = cacheRoot.resolve(TEMP_DIR).resolve(IdUtil.fastSimpleUUID() + "." + format);
+        long cropBytes = plan[2] != plan[0] || plan[3] != plan[1] ? (long) plan[2] * plan[3] * 4 : 0;
+        try (ImageDecodeService.Lease lease = imageDecodeService.acquire(source, plan[0], plan[1],
+                (w, h) -> ImageUtils.resizeBytes(w, h, plan[0], plan[1]) + cropBytes)) {
+            boolean keepAlpha = !"jpg".equals(format) && !"jpeg".equals(format);
+            BufferedImage output = ImageUtils.resize(lease.getImage(), plan[0], plan[1], keepAlpha);
+            if (plan[2] != plan[0] || plan[3] != plan[1]) {
+                output = ImageUtils.crop(output, (plan[0] - plan[2]) / 2, (plan[1] - plan[3]) / 2, plan[2], plan[3]);
+            }
+            ImageUtils.writeImage(output, format, temp.toFile(), imageEncoderOptions);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        long size = Files.size(target);
+        CacheEntry previous = entries.put(key, new CacheEntry(size, System.currentTimeMillis()));
+        usedBytes.addAndGet(previous == null ? size : size - previous.size);
+        rendered.incrementAndGet();
+        if (usedBytes.get() > maxBytes) {
+            evict();
+        }
+        return target;
+    }
+
+    /**
+     * 选择缩放的源：不小于所需尺寸的最小派生图，没有时使用原图
+     *
+     * @param wallpaper 壁纸
+     * @param width     档位宽度
+     * @param height    档位高度
+     * @param fit       缩放方式
+     * @return 源文件相对路径
+     */
+    private String chooseSource(WpWallpaper wallpaper, int width, int height, Fit fit) {
+        if (wallpaper.getBlobId() == null || wallpaper.getWidth() == null || wallpaper.getHeight() == null) {
+            return wallpaper.getFilePath();
+        }
+        int requiredWidth = plan(wallpaper.getWidth(), wallpaper.getHeight(), width, height, fit)[0];
+        List<WpFileDerivative> derivatives = fileBlobService.listDerivatives(Collections.singleton(wallpaper.getBlobId()))
+                .getOrDefault(wallpaper.getBlobId(), Collections.emptyList());
+        for (WpFileDerivative derivative : derivatives) {
+            if (derivative.getWidth() >= requiredWidth) {
+                return derivative.getFilePath();
+            }
+        }
+        return wallpaper.getFilePath();
+    }
+
+    /**
+     * 按存储分层和布局查找源文件
+     *
+     * @param relativePath 源文件相对路径
+     * @return 源文件绝对路径
+     * @throws NoSuchFileException 源文件不存在
+     */
+    private Path resolveSource(String relativePath) throws NoSuchFileException {
+        Path path = fileTierService.resolve(relativePath);
+        if (Files.exists(path)) {
+            return path;
+        }
+        String alternate = fileStorageService.alternatePath(relativePath);
+        if (alternate != null) {
+            path = fileTierService.resolve(alternate);
+            if (Files.exists(path)) {
+                return path;
+            }
+        }
+        throw new NoSuchFileException(relativePath);
+    }
+
+    /**
+     * 计算缩放方案，不放大原图
+     *
+     * @param originWidth  原图宽度
+     * @param originHeight 原图高度
+     * @param width        档位宽度，0表示不限
+     * @param height       档位高度，0表示不限
+     * @param fit          缩放方式
+     * @return 缩放后宽、高，裁剪后宽、高
+     */
+    private int[] plan(int originWidth, int originHeight, int width, int height, Fit fit) {
+        double scaleX = (double) width / originWidth;
+        double scaleY = (double) height / originHeight;
+        double scale;
+        if (width == 0) {
+            scale = scaleY;
+        } else if (height == 0) {
+            scale = scaleX;
+        } else {
+            scale = fit == Fit.COVER ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+        }
+        scale = Math.min(scale, 1D);
+        int scaledWidth = Math.max(1, (int) Math.round(originWidth * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(originHeight * scale));
+        if (fit == Fit.COVER && width > 0 && height > 0) {
+            return new int[]{scaledWidth, scaledHeight, Math.min(width, scaledWidth), Math.min(height, scaledHeight)};
+        }
+        return new int[]{scaledWidth, scaledHeight, scaledWidth, scaledHeight};
+    }
+
+    /**
+     * 向上取整到档位，超过最大档位时取最大档位
+     *
+     * @param value   请求值，0表示不限
+     * @param buckets 升序档位
+     * @return 档位值
+     */
+    private int snap(int value, int[] buckets) {
+        if (value == 0) {
+            return 0;
+        }
+        for (int bucket : buckets) {
+            if (bucket >= value) {
+                return bucket;
+            }
+        }
+        return buckets[buckets.length - 1];
+    }
+
+    /**
+     * 按最近访问时间淘汰缓存文件，直到占用降到低水位
+     */
+    private void evict() {
+        if (!evictLock.tryLock()) {
+            // 其他线程正在淘汰
+            return;
+        }
+        try {
+            long target = (long) (maxBytes * LOW_WATERMARK);
+            List<Map.Entry<String, CacheEntry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (Map.Entry<String, CacheEntry> candidate : candidates) {
+                if (usedBytes.get() <= target) {
+                    break;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    usedBytes.addAndGet(-candidate.getValue().size);
+                    evictions.incrementAndGet();
+                    try {
+                        Files.deleteIfExists(cacheRoot.resolve(candidate.getKey()));
+                    } catch (IOException e) {
+                        log.warn("删除缩放缓存失败: {}", candidate.getKey(), e);
+                    }
+                }
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * 启动时扫描缓存目录重建索引，以文件修改时间作为最近访问时间
+     */
+    private void loadIndex() throws IOException {
+        try (Stream<Path> stream = Files.walk(cacheRoot)) {
+            stream.filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    String key = cacheRoot.relativize(file).toString().replace('\\', '/');
+                    entries.put(key, new CacheEntry(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+                    usedBytes.addAndGet(Files.size(file));
+                } catch (IOException e) {
+                    log.warn("读取缩放缓存文件失败: {}", file, e);
+                }
+            });
+        }
+        if (usedBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * 缓存索引条目
+     */
+    private static class CacheEntry {
+
+        private final long size;
+
+        /**
+         * 最近访问时间，命中时更新，无需加锁
+         */
+        private volatile long lastAccess;
+
+        CacheEntry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
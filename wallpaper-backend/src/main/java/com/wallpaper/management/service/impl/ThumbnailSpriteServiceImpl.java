@@ -0,0 +1,557 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.service.ThumbnailSpriteService;
+import com.wallpaper.management.util.ImageEncoder;
+import com.wallpaper.management.util.ImageUtils;
+import com.wallpaper.management.vo.ImageSpriteVO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 缩略图雪碧图服务实现类
+ * <p>
+ * 雪碧图文件名是页内缩略图路径（按顺序）和格子尺寸的摘要，内容不变则文件名不变，可长期缓存；
+ * 格子按行排列，坐标由序号直接算出，不需要另存清单。
+ * 列表页成员变化（如新上传的壁纸挤进最新列表）时文件名随之变化，重新生成时解码该列表页上一张雪碧图一次，
+ * 仍在页内的缩略图直接从中复制，只解码新进入的缩略图。磁盘占用按总字节数限制，超出后按最近访问时间淘汰。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ThumbnailSpriteServiceImpl implements ThumbnailSpriteService {
+
+    private static final String TEMP_DIR = ".tmp";
+
+    private static final String URL_PREFIX = "sprite/";
+
+    private static final Pattern NAME = Pattern.compile("^[0-9a-f]{32}\\.jpg$");
+
+    private static final Color BACKGROUND = new Color(0xEEEEEE);
+
+    /**
+     * 淘汰后的占用比例
+     */
+    private static final double LOW_WATERMARK = 0.9;
+
+    /**
+     * 记住上一张雪碧图的列表页数
+     */
+    private static final int MAX_PAGES = 1000;
+
+    /**
+     * 生成失败后不再重试的时间
+     */
+    private static final long FAILURE_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * 格子连续复制的最大代数；每次复制都会重新JPEG编码，超过后全部从缩略图重新生成，避免画质逐代下降
+     */
+    private static final int MAX_GENERATIONS = 3;
+
+    private final FileStorageService fileStorageService;
+    private final FileTierService fileTierService;
+    private final ImageEncoder.Options imageEncoderOptions;
+    private final ImageDecodeService imageDecodeService;
+
+    @Resource(name = "spriteExecutor")
+    private ThreadPoolTaskExecutor spriteExecutor;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @Value("${file.upload.base-url}")
+    private String baseUrl;
+
+    @Value("${file.sprite.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.sprite.cache-path:}")
+    private String cachePath;
+
+    @Value("${file.sprite.cache-max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${file.sprite.cell-width:300}")
+    private int cellWidth;
+
+    @Value("${file.sprite.cell-height:200}")
+    private int cellHeight;
+
+    @Value("${file.sprite.columns:10}")
+    private int columns;
+
+    @Value("${file.sprite.max-cells:60}")
+    private int maxCells;
+
+    private Path spriteRoot;
+
+    private final Map<String, SheetEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 列表页到其最近一张雪碧图的格子清单，按访问顺序淘汰
+     */
+    private final Map<String, Manifest> manifests = Collections.synchronizedMap(
+            new LinkedHashMap<String, Manifest>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Manifest> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            });
+
+    /**
+     * 已提交、尚未生成完的雪碧图
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 生成失败的雪碧图及其可重试时间
+     */
+    private final Map<String, Long> failedUntil = new ConcurrentHashMap<>();
+
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong rendered = new AtomicLong();
+
+    private final AtomicLong reusedCells = new AtomicLong();
+
+    private final AtomicLong decodedCells = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        spriteRoot = (StrUtil.isNotBlank(cachePath) ? Paths.get(cachePath) : Paths.get(uploadPath, ".sprite"))
+                .toAbsolutePath().normalize();
+        Files.createDirectories(spriteRoot);
+        FileUtil.del(spriteRoot.resolve(TEMP_DIR));
+        loadIndex();
+        log.info("雪碧图缓存初始化完成: {}，容量={}字节，已有{}个文件共{}字节", spriteRoot, maxBytes, entries.size(), usedBytes.get());
+    }
+
+    /**
+     * 为一页壁纸填充雪碧图位置
+     *
+     * @param pageKey    列表页标识
+     * @param wallpapers 页内壁纸，按展示顺序
+     */
+    @Override
+    public void attach(String pageKey, List<WpWallpaper> wallpapers) {
+        if (!enabled || wallpapers == null) {
+            return;
+        }
+        // 缩略图尚未生成的壁纸不进雪碧图，仍按单张加载
+        List<WpWallpaper> members = wallpapers.stream()
+                .filter(wallpaper -> StrUtil.isNotBlank(wallpaper.getThumbnailPath()))
+                .collect(Collectors.toList());
+        if (members.isEmpty() || members.size() > maxCells) {
+            return;
+        }
+        List<String> paths = members.stream().map(WpWallpaper::getThumbnailPath).collect(Collectors.toList());
+        String name = nameOf(paths);
+
+        SheetEntry entry = entries.get(name);
+        if (entry == null || !Files.exists(spriteRoot.resolve(name))) {
+            misses.incrementAndGet();
+            submit(pageKey, name, paths);
+            return;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        Manifest manifest = manifests.get(pageKey);
+        if (manifest == null || !manifest.name.equals(name)) {
+            manifests.put(pageKey, new Manifest(name, paths, 0));
+        }
+
+        int sheetColumns = columnsOf(paths.size());
+        int sheetWidth = sheetColumns * cellWidth;
+        int sheetHeight = rowsOf(paths.size()) * cellHeight;
+        String url = ImageUtils.buildFullUrl(URL_PREFIX + name, baseUrl);
+        for (int i = 0; i < members.size(); i++) {
+            members.get(i).setSprite(new ImageSpriteVO(url, (i % sheetColumns) * cellWidth, (i / sheetColumns) * cellHeight,
+                    cellWidth, cellHeight, sheetWidth, sheetHeight));
+        }
+    }
+
+    /**
+     * 获取雪碧图文件
+     *
+     * @param name 文件名
+     * @return 文件路径
+     * @throws IOException 文件名不合法或文件不存在
+     */
+    @Override
+    public Path resolve(String name) throws IOException {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new NoSuchFileException(name);
+        }
+        Path path = spriteRoot.resolve(name);
+        if (!Files.exists(path)) {
+            throw new NoSuchFileException(name);
+        }
+        SheetEntry entry = entries.get(name);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+        return path;
+    }
+
+    /**
+     * 获取雪碧图统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("cachePath", spriteRoot.toString());
+        stats.put("entries", entries.size());
+        stats.put("usedBytes", usedBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0D : (double) hitCount / total);
+        stats.put("rendered", rendered.get());
+        stats.put("reusedCells", reusedCells.get());
+        stats.put("decodedCells", decodedCells.get());
+        stats.put("inFlight", inFlight.size());
+        stats.put("rejected", rejected.get());
+        stats.put("failed", failed.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    /**
+     * 提交雪碧图生成任务，同一雪碧图只提交一次
+     *
+     * @param pageKey 列表页标识
+     * @param name    雪碧图文件名
+     * @param paths   缩略图相对路径，按格子顺序
+     */
+    private void submit(String pageKey, String name, List<String> paths) {
+        Long retryAt = failedUntil.get(name);
+        if (retryAt != null) {
+            if (retryAt > System.currentTimeMillis()) {
+                return;
+            }
+            failedUntil.remove(name);
+        }
+        if (!inFlight.add(name)) {
+            return;
+        }
+        try {
+            spriteExecutor.execute(() -> {
+                try {
+                    render(pageKey, name, paths);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("生成雪碧图失败: page={}, {}", pageKey, e.toString());
+                    failed.incrementAndGet();
+                    if (failedUntil.size() > MAX_PAGES) {
+                        failedUntil.clear();
+                    }
+                    failedUntil.put(name, System.currentTimeMillis() + FAILURE_BACKOFF_MILLIS);
+                } finally {
+                    inFlight.remove(name);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.remove(name);
+            rejected.incrementAndGet();
+        }
+    }
+
+    /**
+     * 生成雪碧图：仍在该列表页上一张雪碧图中的格子直接复制，其余解码缩略图
+     *
+     * @param pageKey 列表页标识
+     * @param name    雪碧图文件名
+     * @param paths   缩略图相对路径，按格子顺序
+     * @throws IOException 缩略图读取或雪碧图写入失败
+     */
+    private void render(String pageKey, String name, List<String> paths) throws IOException {
+        Path target = spriteRoot.resolve(name);
+        int generation = 0;
+        if (!Files.exists(target)) {
+            int sheetColumns = columnsOf(paths.size());
+            BufferedImage sheet = new BufferedImage(sheetColumns * cellWidth, rowsOf(paths.size()) * cellHeight,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = sheet.createGraphics();
+            ImageDecodeService.Lease previousLease = null;
+            try {
+                g.setColor(BACKGROUND);
+                g.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+
+                Manifest previous = manifests.get(pageKey);
+                BufferedImage previousSheet = null;
+                Map<String, Integer> previousCells = new HashMap<>();
+                if (previous != null && !previous.name.equals(name) && previous.generation < MAX_GENERATIONS
+                        && Files.exists(spriteRoot.resolve(previous.name))) {
+                    previousLease = imageDecodeService.acquire(spriteRoot.resolve(previous.name).toFile(), 0, 0);
+                    previousSheet = previousLease.getImage();
+                    for (int i = 0; i < previous.paths.size(); i++) {
+                        previousCells.putIfAbsent(previous.paths.get(i), i);
+                    }
+                }
+                int previousColumns = previous == null ? 0 : columnsOf(previous.paths.size());
+                boolean copied = false;
+
+                for (int i = 0; i < paths.size(); i++) {
+                    int x = (i % sheetColumns) * cellWidth;
+                    int y = (i / sheetColumns) * cellHeight;
+                    Integer old = previousSheet == null ? null : previousCells.get(paths.get(i));
+                    if (old != null) {
+                        copied = true;
+                        g.drawImage(previousSheet.getSubimage((old % previousColumns) * cellWidth,
+                                (old / previousColumns) * cellHeight, cellWidth, cellHeight), x, y, null);
+                        reusedCells.incrementAndGet();
+                    } else {
+                        g.drawImage(renderCell(paths.get(i)), x, y, null);
+                        decodedCells.incrementAndGet();
+                    }
+                }
+                if (copied) {
+                    generation = previous.generation + 1;
+                }
+            } finally {
+                g.dispose();
+                if (previousLease != null) {
+                    previousLease.close();
+                }
+            }
+
+            Path temp = spriteRoot.resolve(TEMP_DIR).resolve(IdUtil.fastSimpleUUID() + ".jpg");
+            try {
+                ImageUtils.writeImage(sheet, "jpg", temp.toFile(), imageEncoderOptions);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            rendered.incrementAndGet();
+        }
+
+        long size = Files.size(target);
+        SheetEntry previousEntry = entries.put(name, new SheetEntry(size, System.currentTimeMillis()));
+        usedBytes.addAndGet(previousEntry == null ? size : size - previousEntry.size);
+        manifests.put(pageKey, new Manifest(name, paths, generation));
+        if (usedBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * 把缩略图等比缩放到完全覆盖格子，居中裁掉多余部分
+     *
+     * @param relativePath 缩略图相对路径
+     * @return 格子图片
+     * @throws IOException 缩略图不存在或无法解码
+     */
+    private BufferedImage renderCell(String relativePath) throws IOException {
+        // 缩放和裁剪出的格子一并计入解码预算
+        try (ImageDecodeService.Lease lease = imageDecodeService.acquire(resolveSource(relativePath).toFile(), cellWidth, cellHeight,
+                (w, h) -> {
+                    int[] scaled = coverSize(w, h);
+                    return ImageUtils.resizeBytes(w, h, scaled[0], scaled[1]) + (long) cellWidth * cellHeight * 4;
+                })) {
+            BufferedImage image = lease.getImage();
+            int[] size = coverSize(image.getWidth(), image.getHeight());
+            int scaledWidth = size[0];
+            int scaledHeight = size[1];
+            BufferedImage scaled = ImageUtils.resize(image, scaledWidth, scaledHeight, false);
+            return ImageUtils.crop(scaled, (scaledWidth - cellWidth) / 2, (scaledHeight - cellHeight) / 2, cellWidth, cellHeight);
+        }
+    }
+
+    /**
+     * 计算等比缩放到完全覆盖格子的尺寸
+     *
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @return 缩放后的宽度和高度
+     */
+    private int[] coverSize(int width, int height) {
+        double scale = Math.max((double) cellWidth / width, (double) cellHeight / height);
+        return new int[]{Math.max(cellWidth, (int) Math.round(width * scale)), Math.max(cellHeight, (int) Math.round(height * scale))};
+    }
+
+    /**
+     * 按存储分层和布局查找缩略图文件
+     *
+     * @param relativePath 缩略图相对路径
+     * @return 缩略图绝对路径
+     * @throws NoSuchFileException 文件不存在
+     */
+    private Path resolveSource(String relativePath) throws NoSuchFileException {
+        Path path = fileTierService.resolve(relativePath);
+        if (Files.exists(path)) {
+            return path;
+        }
+        String alternate = fileStorageService.alternatePath(relativePath);
+        if (alternate != null) {
+            path = fileTierService.resolve(alternate);
+            if (Files.exists(path)) {
+                return path;
+            }
+        }
+        throw new NoSuchFileException(relativePath);
+    }
+
+    /**
+     * 雪碧图文件名：版式、编码参数和缩略图路径的摘要。缩略图重新生成时路径带新版本，编码参数变化时摘要也随之变化
+     *
+     * @param paths 缩略图相对路径
+     * @return 文件名
+     */
+    private String nameOf(List<String> paths) {
+        return DigestUtil.md5Hex(cellWidth + "x" + cellHeight + "/" + columns + "/" + imageEncoderOptions.fingerprint()
+                + "\n" + String.join("\n", paths)) + ".jpg";
+    }
+
+    private int columnsOf(int cells) {
+        return Math.min(columns, cells);
+    }
+
+    private int rowsOf(int cells) {
+        return (cells + columns - 1) / columns;
+    }
+
+    /**
+     * 按最近访问时间淘汰雪碧图，直到占用降到低水位
+     */
+    private void evict() {
+        if (!evictLock.tryLock()) {
+            // 其他线程正在淘汰
+            return;
+        }
+        try {
+            long target = (long) (maxBytes * LOW_WATERMARK);
+            List<Map.Entry<String, SheetEntry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (Map.Entry<String, SheetEntry> candidate : candidates) {
+                if (usedBytes.get() <= target) {
+                    break;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    usedBytes.addAndGet(-candidate.getValue().size);
+                    evictions.incrementAndGet();
+                    try {
+                        Files.deleteIfExists(spriteRoot.resolve(candidate.getKey()));
+                    } catch (IOException e) {
+                        log.warn("删除雪碧图失败: {}", candidate.getKey(), e);
+                    }
+                }
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * 启动时扫描目录重建索引，以文件修改时间作为最近访问时间
+     */
+    private void loadIndex() throws IOException {
+        try (Stream<Path> stream = Files.list(spriteRoot)) {
+            stream.filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    long size = Files.size(file);
+                    entries.put(file.getFileName().toString(), new SheetEntry(size, Files.getLastModifiedTime(file).toMillis()));
+                    usedBytes.addAndGet(size);
+                } catch (IOException e) {
+                    log.warn("读取雪碧图文件失败: {}", file, e);
+                }
+            });
+        }
+        if (usedBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * 雪碧图索引条目
+     */
+    private static class SheetEntry {
+
+        private final long size;
+
+        /**
+         * 最近访问时间，命中时更新，无需加锁
+         */
+        private volatile long lastAccess;
+
+        SheetEntry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * 一张雪碧图的格子清单
+     */
+    private static class Manifest {
+
+        private final String name;
+
+        private final List<String> paths;
+
+        /**
+         * 格子经过复制的最大代数，全部从缩略图生成时为0
+         */
+        private final int generation;
+
+        Manifest(String name, List<String> paths, int generation) {
+            this.name = name;
+            this.paths = paths;
+            this.generation = generation;
+        }
+    }
+}
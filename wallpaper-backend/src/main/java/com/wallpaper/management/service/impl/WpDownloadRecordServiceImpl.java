@@ -0,0 +1,161 @@
+package com.wallpaper.management.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.wallpaper.management.entity.WpDownloadRecord;
+import com.wallpaper.management.mapper.WpDownloadRecordMapper;
+import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.WpDownloadRecordService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下载记录服务实现类
+ * <p>
+ * 下载请求只把记录放入有界队列；后台线程按批次或间隔取出，
+ * 在一个事务中按壁纸合并累加下载次数并批量插入下载记录。
+ * 队列满时丢弃记录并计数，不影响下载本身。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WpDownloadRecordServiceImpl extends ServiceImpl<WpDownloadRecordMapper, WpDownloadRecord> implements WpDownloadRecordService {
+
+    private final WpWallpaperMapper wallpaperMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.download.record.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${file.download.record.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.download.record.flush-interval:1000}")
+    private long flushInterval;
+
+    private BlockingQueue<WpDownloadRecord> queue;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = new Thread(this::runFlusher, "download-record");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 记录一次下载
+     *
+     * @param wallpaperId 壁纸ID
+     * @param userId      用户ID，未登录时为null
+     * @param ip          客户端IP
+     */
+    @Override
+    public void record(Long wallpaperId, Long userId, String ip) {
+        WpDownloadRecord record = new WpDownloadRecord();
+        record.setWallpaperId(wallpaperId);
+        record.setUserId(userId);
+        record.setIp(ip);
+        record.setDownloadTime(LocalDateTime.now());
+        if (queue.offer(record)) {
+            accepted.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 获取下载记录队列统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("accepted", accepted.get());
+        stats.put("dropped", dropped.get());
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    private void runFlusher() {
+        List<WpDownloadRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                WpDownloadRecord first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                // 停止时把队列中剩余的记录写完
+                queue.drainTo(batch, batchSize);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批下载记录
+     *
+     * @param batch 下载记录
+     */
+    private void flush(List<WpDownloadRecord> batch) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (WpDownloadRecord record : batch) {
+            counts.merge(record.getWallpaperId(), 1, Integer::sum);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                counts.forEach(wallpaperMapper::incrementDownloadCount);
+                baseMapper.batchSave(batch);
+            });
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            log.error("写入下载记录失败，丢弃{}条", batch.size(), e);
+            failed.addAndGet(batch.size());
+        }
+    }
+}
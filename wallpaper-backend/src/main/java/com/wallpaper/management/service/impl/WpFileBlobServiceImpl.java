@@ -0,0 +1,372 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpFileBlob;
+import com.wallpaper.management.entity.WpFileDerivative;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.mapper.WpFileBlobMapper;
+import com.wallpaper.management.mapper.WpFileDerivativeMapper;
+import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.FileCacheService;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.service.WpFileBlobService;
+import com.wallpaper.management.util.ImageIngest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 文件内容服务实现类
+ * <p>
+ * 相同内容只保存和生成缩略图一次，多张壁纸通过引用计数共享；存储时只移动文件和写入记录，
+ * 缩略图由DerivativeService在后台生成。
+ * 同一SHA-256的存储与回收在本实例内串行执行，避免回收删除文件时与新上传的同名文件交错。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WpFileBlobServiceImpl extends ServiceImpl<WpFileBlobMapper, WpFileBlob> implements WpFileBlobService {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final FileCacheService fileCacheService;
+    private final FileStorageService fileStorageService;
+    private final FileTierService fileTierService;
+    private final ImageDecodeService imageDecodeService;
+    private final WpFileDerivativeMapper fileDerivativeMapper;
+    private final WpWallpaperMapper wallpaperMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Object[] locks = createLocks();
+
+    /**
+     * 存储上传的临时文件并占用一次引用
+     *
+     * @param upload 接收结果，其中的临时文件调用后不再可用
+     * @param suffix 文件后缀
+     * @return 文件内容
+     * @throws IOException 文件移动失败
+     */
+    @Override
+    public WpFileBlob store(ImageIngest.Result upload, String suffix) throws IOException {
+        // 宽高在接收时已从文件头解析，像素解码放到后台处理；尺寸超过解码上限的图片直接拒绝
+        int[] size = {upload.getWidth(), upload.getHeight()};
+        if (!imageDecodeService.isAllowed(size[0], size[1])) {
+            throw new BusinessException(ResultCode.IMAGE_TOO_LARGE.getCode(),
+                    "图片尺寸超过限制: " + size[0] + "x" + size[1]);
+        }
+
+        File tempFile = upload.getFile();
+        String sha256 = upload.getSha256();
+        synchronized (lockFor(sha256)) {
+            WpFileBlob blob = baseMapper.selectBySha256(sha256);
+            if (blob != null && baseMapper.incrementRefCount(blob.getId()) == 0) {
+                // 引用已归零但记录仍在（释放中途进程退出），先按无引用清理，再作为新内容存储
+                log.warn("清理引用已归零的文件内容记录: sha256={}, blobId={}", sha256, blob.getId());
+                purge(blob.getId(), false);
+                blob = null;
+            }
+            if (blob != null) {
+                Path existing = fileStorageService.toAbsolutePath(blob.getFilePath());
+                if (Files.exists(existing)) {
+                    Files.deleteIfExists(tempFile.toPath());
+                } else {
+                    // 记录存在但文件丢失，用本次上传的内容恢复
+                    log.warn("文件内容记录存在但文件缺失，使用上传内容恢复: {}", existing);
+                    moveInto(tempFile, existing);
+                }
+                log.info("上传内容已存在，复用文件: sha256={}, blobId={}", sha256, blob.getId());
+                return blob;
+            }
+
+            String relativePath = fileStorageService.newRelativePath(sha256, suffix);
+            Path target = fileStorageService.toAbsolutePath(relativePath);
+            moveInto(tempFile, target);
+
+            // 缩略图生成前以原图代替
+            blob = new WpFileBlob();
+            blob.setSha256(sha256);
+            blob.setFilePath(relativePath);
+            blob.setThumbnailPath(relativePath);
+            blob.setFileSize(upload.getSize());
+            blob.setWidth(size[0]);
+            blob.setHeight(size[1]);
+            blob.setFileType(suffix);
+            blob.setProcessingStatus(WpFileBlob.PROCESSING_PENDING);
+            baseMapper.insertOrAcquire(blob);
+            blob = baseMapper.selectBySha256(sha256);
+            if (!relativePath.equals(blob.getFilePath())) {
+                // 其他实例已先插入同一内容，引用计入已有记录，刚移入的文件不会被引用
+                log.info("上传内容已由其他实例存储，复用文件: sha256={}, blobId={}", sha256, blob.getId());
+                Path existing = fileStorageService.toAbsolutePath(blob.getFilePath());
+                if (Files.exists(existing)) {
+                    Files.deleteIfExists(target);
+                } else {
+                    moveInto(target.toFile(), existing);
+                }
+                return blob;
+            }
+
+            // 新上传的文件通常马上会被访问，写入热存储
+            fileTierService.admit(relativePath);
+            return blob;
+        }
+    }
+
+    /**
+     * 为没有文件内容记录的历史壁纸登记文件内容并占用一次引用
+     *
+     * @param wallpaper 壁纸（ID、文件路径、缩略图路径）
+     * @return 文件内容，壁纸已被删除或已有文件内容记录时返回null
+     * @throws IOException 原图不存在或读取失败
+     */
+    @Override
+    public WpFileBlob adopt(WpWallpaper wallpaper) throws IOException {
+        String relativePath = wallpaper.getFilePath();
+        if (StrUtil.isBlank(relativePath)) {
+            throw new NoSuchFileException(String.valueOf(wallpaper.getId()));
+        }
+        if (!Files.exists(fileStorageService.toAbsolutePath(relativePath))) {
+            // 布局迁移期间文件可能已移动而记录尚未更新
+            String alternate = fileStorageService.alternatePath(relativePath);
+            if (alternate == null || !Files.exists(fileStorageService.toAbsolutePath(alternate))) {
+                throw new NoSuchFileException(relativePath);
+            }
+            relativePath = alternate;
+        }
+        ImageIngest.Result scan = ImageIngest.scan(fileStorageService.toAbsolutePath(relativePath).toFile());
+        String sha256 = scan.getSha256();
+        String legacyThumbnail = StrUtil.blankToDefault(wallpaper.getThumbnailPath(), relativePath);
+
+        synchronized (lockFor(sha256)) {
+            WpFileBlob blob = baseMapper.selectBySha256(sha256);
+            if (blob != null && baseMapper.incrementRefCount(blob.getId()) == 0) {
+                log.warn("清理引用已归零的文件内容记录: sha256={}, blobId={}", sha256, blob.getId());
+                purge(blob.getId(), false);
+                blob = null;
+            }
+            if (blob == null) {
+                // 历史文件原地登记，派生图生成前沿用历史缩略图
+                blob = new WpFileBlob();
+                blob.setSha256(sha256);
+                blob.setFilePath(relativePath);
+                blob.setThumbnailPath(legacyThumbnail);
+                blob.setFileSize(scan.getSize());
+                blob.setWidth(scan.getWidth());
+                blob.setHeight(scan.getHeight());
+                blob.setFileType(FileUtil.getSuffix(relativePath).toLowerCase());
+                blob.setProcessingStatus(WpFileBlob.PROCESSING_PENDING);
+                baseMapper.insertOrAcquire(blob);
+                blob = baseMapper.selectBySha256(sha256);
+            }
+
+            WpFileBlob acquired = blob;
+            boolean linked = wallpaperMapper.update(null, Wrappers.<WpWallpaper>lambdaUpdate()
+                    .set(WpWallpaper::getBlobId, acquired.getId())
+                    .set(WpWallpaper::getFilePath, acquired.getFilePath())
+                    .eq(WpWallpaper::getId, wallpaper.getId())
+                    .isNull(WpWallpaper::getBlobId)) > 0;
+            if (!linked) {
+                // 壁纸已被删除或已由其他实例登记，归还刚占用的引用
+                purge(acquired.getId(), true);
+                return null;
+            }
+            if (!relativePath.equals(acquired.getFilePath())) {
+                // 内容已存在，壁纸改用已有文件和缩略图，历史文件不再被引用
+                wallpaperMapper.syncProcessingFromBlob(acquired.getId());
+                log.info("历史壁纸内容已存在，复用文件: wallpaperId={}, blobId={}", wallpaper.getId(), acquired.getId());
+                deleteFile(relativePath);
+                if (!StrUtil.equals(legacyThumbnail, relativePath)) {
+                    deleteFile(legacyThumbnail);
+                }
+            }
+            return acquired;
+        }
+    }
+
+    /**
+     * 释放一次引用，引用归零时删除记录和物理文件
+     *
+     * @param blobId 文件内容ID
+     */
+    @Override
+    public void release(Long blobId) {
+        if (blobId == null) {
+            return;
+        }
+        WpFileBlob blob = getById(blobId);
+        if (blob == null) {
+            return;
+        }
+        synchronized (lockFor(blob.getSha256())) {
+            purge(blobId, true);
+        }
+    }
+
+    /**
+     * 记录派生图生成结果
+     * <p>
+     * 文件内容、派生图和引用它的壁纸在同一事务中切换到新生成的文件，提交后再删除不再引用的旧版本文件；
+     * 记录失败时不删除任何文件，由调用方清理本次生成的文件
+     *
+     * @param blob        文件内容（ID、SHA-256、缩略图路径、宽高）
+     * @param derivatives 各尺寸派生图
+     * @return 是否记录成功
+     */
+    @Override
+    public boolean completeProcessing(WpFileBlob blob, List<WpFileDerivative> derivatives) {
+        synchronized (lockFor(blob.getSha256())) {
+            WpFileBlob previousBlob = getById(blob.getId());
+            if (previousBlob == null) {
+                // 生成期间记录已被回收
+                return false;
+            }
+            List<WpFileDerivative> previous = fileDerivativeMapper.selectList(
+                    Wrappers.<WpFileDerivative>lambdaQuery().eq(WpFileDerivative::getBlobId, blob.getId()));
+            Boolean completed = transactionTemplate.execute(status -> {
+                if (baseMapper.completeProcessing(blob) == 0) {
+                    return false;
+                }
+                fileDerivativeMapper.deleteByBlobId(blob.getId());
+                if (!derivatives.isEmpty()) {
+                    fileDerivativeMapper.batchUpsert(derivatives);
+                }
+                wallpaperMapper.syncProcessingFromBlob(blob.getId());
+                return true;
+            });
+            if (!Boolean.TRUE.equals(completed)) {
+                return false;
+            }
+            // 重新生成时，删除旧版本的缩略图和各尺寸文件
+            String previousThumbnail = previousBlob.getThumbnailPath();
+            if (!StrUtil.equals(previousThumbnail, blob.getThumbnailPath()) && !StrUtil.equals(previousThumbnail, previousBlob.getFilePath())) {
+                deleteFile(previousThumbnail);
+            }
+            Set<String> current = derivatives.stream().map(WpFileDerivative::getFilePath).collect(Collectors.toSet());
+            previous.stream()
+                    .filter(derivative -> !current.contains(derivative.getFilePath()))
+                    .forEach(derivative -> deleteFile(derivative.getFilePath()));
+            return true;
+        }
+    }
+
+    /**
+     * 批量查询文件内容的派生图
+     *
+     * @param blobIds 文件内容ID
+     * @return 文件内容ID到派生图列表（按宽度升序）的映射
+     */
+    @Override
+    public Map<Long, List<WpFileDerivative>> listDerivatives(Collection<Long> blobIds) {
+        if (blobIds == null || blobIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return fileDerivativeMapper.selectList(Wrappers.<WpFileDerivative>lambdaQuery().in(WpFileDerivative::getBlobId, blobIds))
+                .stream()
+                .sorted(Comparator.comparing(WpFileDerivative::getWidth))
+                .collect(Collectors.groupingBy(WpFileDerivative::getBlobId, Collectors.toList()));
+    }
+
+    /**
+     * 释放引用并在引用归零时删除记录和物理文件，调用方需持有该内容的锁
+     * <p>
+     * 减引用、删除记录和派生图记录在同一事务中完成，不会留下引用为0的记录；事务提交后再删除文件
+     *
+     * @param blobId    文件内容ID
+     * @param decrement 是否先减少一次引用，为false时只清理已归零的记录
+     */
+    private void purge(Long blobId, boolean decrement) {
+        // 加锁后重新读取，缩略图路径可能已由后台处理更新
+        WpFileBlob blob = getById(blobId);
+        if (blob == null) {
+            return;
+        }
+        List<WpFileDerivative> derivatives = transactionTemplate.execute(status -> {
+            if (decrement) {
+                baseMapper.decrementRefCount(blobId);
+            }
+            if (baseMapper.deleteUnreferenced(blobId) == 0) {
+                return null;
+            }
+            List<WpFileDerivative> removed = fileDerivativeMapper.selectList(
+                    Wrappers.<WpFileDerivative>lambdaQuery().eq(WpFileDerivative::getBlobId, blobId));
+            fileDerivativeMapper.deleteByBlobId(blobId);
+            return removed;
+        });
+        if (derivatives == null) {
+            return;
+        }
+        deleteFile(blob.getFilePath());
+        if (!StrUtil.equals(blob.getThumbnailPath(), blob.getFilePath())) {
+            deleteFile(blob.getThumbnailPath());
+        }
+        derivatives.forEach(derivative -> deleteFile(derivative.getFilePath()));
+        log.info("文件内容已无引用，删除文件: sha256={}, path={}", blob.getSha256(), blob.getFilePath());
+    }
+
+    private void moveInto(File source, Path target) throws IOException {
+        FileUtil.mkParentDirs(target.toFile());
+        try {
+            // 临时文件与正式目录同盘，原子重命名，读取方不会看到写了一半的文件
+            Files.move(source.toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteFile(String relativePath) {
+        if (StrUtil.isBlank(relativePath)) {
+            return;
+        }
+        fileCacheService.invalidate(relativePath);
+        fileTierService.evict(relativePath);
+        try {
+            if (!Files.deleteIfExists(fileStorageService.toAbsolutePath(relativePath))) {
+                // 布局迁移期间文件可能已移动而记录尚未更新
+                String alternate = fileStorageService.alternatePath(relativePath);
+                if (alternate != null) {
+                    fileTierService.evict(alternate);
+                    Files.deleteIfExists(fileStorageService.toAbsolutePath(alternate));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("删除文件失败: {}", relativePath, e);
+        }
+    }
+
+    private Object lockFor(String sha256) {
+        return locks[(sha256.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+}
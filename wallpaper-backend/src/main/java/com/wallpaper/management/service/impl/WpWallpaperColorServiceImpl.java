@@ -0,0 +1,422 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpFileBlob;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.entity.WpWallpaperColor;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.mapper.WpFileBlobMapper;
+import com.wallpaper.management.mapper.WpWallpaperColorMapper;
+import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.DuplicateDetectionService;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.ImageDecodeService;
+import com.wallpaper.management.service.WpWallpaperColorService;
+import com.wallpaper.management.util.ColorPalette;
+import com.wallpaper.management.util.PerceptualHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 壁纸颜色服务实现类
+ * <p>
+ * 新上传的壁纸在派生图生成时顺带提取调色板（复用已解码的缩略图源），再同步到壁纸并建立颜色分类；
+ * 历史壁纸由回填任务按主键分批处理，同时补齐缺失的感知哈希（并加入重复检测索引）：
+ * 优先复用文件内容上已有的结果，否则只解码缩略图一次，调色板和感知哈希都从这次解码结果计算。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WpWallpaperColorServiceImpl implements WpWallpaperColorService {
+
+    /**
+     * 回填时解码图片的最小尺寸，调色板只需要很小的图
+     */
+    private static final int DECODE_SIZE = 64;
+
+    /**
+     * 需要计算感知哈希时解码图片的最小尺寸：降采样解码为取点，太小时哈希与派生图生成时的结果偏差较大
+     */
+    private static final int HASH_DECODE_SIZE = 256;
+
+    private final WpWallpaperColorMapper wallpaperColorMapper;
+    private final WpWallpaperMapper wallpaperMapper;
+    private final WpFileBlobMapper fileBlobMapper;
+    private final FileStorageService fileStorageService;
+    private final ImageDecodeService imageDecodeService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.color.palette-size:5}")
+    private int paletteSize;
+
+    @Value("${file.color.min-store-ratio:5}")
+    private int minStoreRatio;
+
+    @Value("${file.color.min-filter-ratio:15}")
+    private int minFilterRatio;
+
+    @Value("${file.color.backfill.batch-size:200}")
+    private int batchSize;
+
+    @Value("${file.color.backfill.pause-millis:100}")
+    private long pauseMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean stopRequested;
+
+    private volatile String phase = "IDLE";
+
+    private volatile long lastId;
+
+    private volatile long total;
+
+    private volatile LocalDateTime startTime;
+
+    private volatile LocalDateTime finishTime;
+
+    private final AtomicLong scannedRows = new AtomicLong();
+
+    private final AtomicLong copiedRows = new AtomicLong();
+
+    private final AtomicLong decodedRows = new AtomicLong();
+
+    private final AtomicLong hashedRows = new AtomicLong();
+
+    private final AtomicLong skippedRows = new AtomicLong();
+
+    private final AtomicLong failedRows = new AtomicLong();
+
+    /**
+     * 从已解码的图片提取主色调色板
+     *
+     * @param image 图片
+     * @return 调色板紧凑字符串
+     */
+    @Override
+    public String extractPalette(BufferedImage image) {
+        return ColorPalette.encode(ColorPalette.extract(image, paletteSize));
+    }
+
+    /**
+     * 按调色板重写壁纸的颜色分类，占比过小的分类不保存
+     *
+     * @param wallpaperId 壁纸ID
+     * @param palette     调色板
+     */
+    @Override
+    public void saveColors(Long wallpaperId, String palette) {
+        List<WpWallpaperColor> colors = new ArrayList<>();
+        ColorPalette.buckets(ColorPalette.decode(palette)).forEach((bucket, ratio) -> {
+            if (ratio >= minStoreRatio) {
+                WpWallpaperColor color = new WpWallpaperColor();
+                color.setWallpaperId(wallpaperId);
+                color.setBucket(bucket.getCode());
+                color.setRatio(Math.min(ratio, 100));
+                colors.add(color);
+            }
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            wallpaperColorMapper.deleteByWallpaperId(wallpaperId);
+            if (!colors.isEmpty()) {
+                wallpaperColorMapper.batchSave(colors);
+            }
+        });
+    }
+
+    /**
+     * 为引用该文件内容、尚未建立颜色分类的壁纸建立颜色分类
+     *
+     * @param blobId 文件内容ID
+     */
+    @Override
+    public void indexBlob(Long blobId) {
+        if (blobId == null) {
+            return;
+        }
+        List<WpWallpaper> wallpapers = wallpaperMapper.selectList(Wrappers.<WpWallpaper>lambdaQuery()
+                .select(WpWallpaper::getId, WpWallpaper::getPalette)
+                .eq(WpWallpaper::getBlobId, blobId)
+                .isNotNull(WpWallpaper::getPalette)
+                .notExists("SELECT 1 FROM wp_wallpaper_color c WHERE c.wallpaper_id = wp_wallpaper.id"));
+        for (WpWallpaper wallpaper : wallpapers) {
+            saveColors(wallpaper.getId(), wallpaper.getPalette());
+        }
+    }
+
+    /**
+     * 删除壁纸的颜色分类
+     *
+     * @param wallpaperId 壁纸ID
+     */
+    @Override
+    public void deleteByWallpaperId(Long wallpaperId) {
+        wallpaperColorMapper.deleteByWallpaperId(wallpaperId);
+    }
+
+    /**
+     * 生成按颜色筛选壁纸ID的子查询，走(bucket, ratio)索引
+     *
+     * @param color 颜色分类名称
+     * @return 子查询SQL
+     */
+    @Override
+    public String buildColorFilterSql(String color) {
+        ColorPalette.Bucket bucket = ColorPalette.Bucket.of(color);
+        if (bucket == null) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "不支持的颜色: " + color);
+        }
+        // 分类编码和占比都是整数，直接拼接不存在注入风险
+        return "SELECT wallpaper_id FROM wp_wallpaper_color WHERE bucket = " + bucket.getCode()
+                + " AND ratio >= " + minFilterRatio;
+    }
+
+    /**
+     * 启动历史壁纸的调色板和感知哈希回填任务
+     *
+     * @return 是否启动成功
+     */
+    @Override
+    public boolean startBackfill() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        stopRequested = false;
+        scannedRows.set(0);
+        copiedRows.set(0);
+        decodedRows.set(0);
+        hashedRows.set(0);
+        skippedRows.set(0);
+        failedRows.set(0);
+        startTime = LocalDateTime.now();
+        finishTime = null;
+
+        Thread worker = new Thread(this::runBackfill, "color-backfill");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    /**
+     * 请求停止回填任务
+     */
+    @Override
+    public void stopBackfill() {
+        stopRequested = true;
+    }
+
+    /**
+     * 获取回填进度
+     *
+     * @return 进度信息
+     */
+    @Override
+    public Map<String, Object> getBackfillProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", running.get());
+        progress.put("phase", phase);
+        progress.put("lastId", lastId);
+        progress.put("total", total);
+        progress.put("scannedRows", scannedRows.get());
+        progress.put("copiedRows", copiedRows.get());
+        progress.put("decodedRows", decodedRows.get());
+        progress.put("hashedRows", hashedRows.get());
+        progress.put("skippedRows", skippedRows.get());
+        progress.put("failedRows", failedRows.get());
+        progress.put("startTime", startTime);
+        progress.put("finishTime", finishTime);
+        return progress;
+    }
+
+    private void runBackfill() {
+        log.info("调色板回填开始，每批{}条", batchSize);
+        try {
+            phase = "RUNNING";
+            total = wallpaperMapper.selectCount(Wrappers.<WpWallpaper>lambdaQuery()
+                    .and(w -> w.isNull(WpWallpaper::getPalette).or().isNull(WpWallpaper::getPhash)));
+            backfill();
+            phase = stopRequested ? "STOPPED" : "FINISHED";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            phase = "STOPPED";
+        } catch (Exception e) {
+            log.error("调色板回填失败，lastId={}", lastId, e);
+            phase = "FAILED";
+        } finally {
+            finishTime = LocalDateTime.now();
+            running.set(false);
+            log.info("调色板回填结束: {}", getBackfillProgress());
+        }
+    }
+
+    private void backfill() throws InterruptedException {
+        lastId = 0;
+        while (!stopRequested) {
+            List<WpWallpaper> batch = wallpaperMapper.selectList(Wrappers.<WpWallpaper>lambdaQuery()
+                    .select(WpWallpaper::getId, WpWallpaper::getBlobId, WpWallpaper::getFilePath,
+                            WpWallpaper::getThumbnailPath, WpWallpaper::getProcessingStatus,
+                            WpWallpaper::getPalette, WpWallpaper::getPhash)
+                    .and(w -> w.isNull(WpWallpaper::getPalette).or().isNull(WpWallpaper::getPhash))
+                    .gt(WpWallpaper::getId, lastId)
+                    .orderByAsc(WpWallpaper::getId)
+                    .last("LIMIT " + batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            // 共享同一文件内容的壁纸只需解码一次
+            List<Long> blobIds = batch.stream()
+                    .map(WpWallpaper::getBlobId)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .collect(Collectors.toList());
+            Map<Long, WpFileBlob> blobs = blobIds.isEmpty() ? new LinkedHashMap<>()
+                    : fileBlobMapper.selectList(Wrappers.<WpFileBlob>lambdaQuery()
+                            .select(WpFileBlob::getId, WpFileBlob::getPalette, WpFileBlob::getPhash)
+                            .in(WpFileBlob::getId, blobIds))
+                    .stream()
+                    .collect(Collectors.toMap(WpFileBlob::getId, Function.identity()));
+
+            for (WpWallpaper wallpaper : batch) {
+                backfillOne(wallpaper, wallpaper.getBlobId() == null ? null : blobs.get(wallpaper.getBlobId()));
+                scannedRows.incrementAndGet();
+                lastId = wallpaper.getId();
+            }
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    /**
+     * 回填一张壁纸缺失的调色板（及颜色分类）和感知哈希
+     *
+     * @param wallpaper 壁纸
+     * @param blob      文件内容，历史数据为null
+     */
+    private void backfillOne(WpWallpaper wallpaper, WpFileBlob blob) {
+        Integer processingStatus = wallpaper.getProcessingStatus();
+        if (processingStatus != null && (processingStatus == WpFileBlob.PROCESSING_PENDING
+                || processingStatus == WpFileBlob.PROCESSING_RUNNING)) {
+            // 派生图生成时会提取调色板和感知哈希
+            skippedRows.incrementAndGet();
+            return;
+        }
+
+        boolean needPalette = wallpaper.getPalette() == null;
+        boolean needPhash = wallpaper.getPhash() == null;
+        String palette = needPalette && blob != null ? blob.getPalette() : null;
+        Long phash = needPhash && blob != null ? blob.getPhash() : null;
+        if ((!needPalette || palette != null) && (!needPhash || phash != null)) {
+            copiedRows.incrementAndGet();
+        } else {
+            try (ImageDecodeService.Lease lease = decode(wallpaper, needPhash ? HASH_DECODE_SIZE : DECODE_SIZE)) {
+                BufferedImage image = lease.getImage();
+                if (needPalette && palette == null) {
+                    palette = extractPalette(image);
+                }
+                if (needPhash && phash == null) {
+                    phash = PerceptualHash.dHash(image);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("回填调色板和感知哈希失败: wallpaperId={}, {}", wallpaper.getId(), e.toString());
+                failedRows.incrementAndGet();
+                return;
+            }
+            decodedRows.incrementAndGet();
+            if (blob != null) {
+                updateBlob(blob.getId(), palette, phash);
+            }
+        }
+
+        if (palette == null && phash == null) {
+            // 图片全透明，无法提取调色板
+            failedRows.incrementAndGet();
+            return;
+        }
+        wallpaperMapper.update(null, Wrappers.<WpWallpaper>lambdaUpdate()
+                .set(palette != null, WpWallpaper::getPalette, palette)
+                .set(phash != null, WpWallpaper::getPhash, phash)
+                .eq(WpWallpaper::getId, wallpaper.getId()));
+        if (palette != null) {
+            saveColors(wallpaper.getId(), palette);
+        }
+        if (phash != null) {
+            hashedRows.incrementAndGet();
+            duplicateDetectionService.checkWallpaper(wallpaper.getId());
+        }
+    }
+
+    /**
+     * 将解码计算出的结果写回文件内容，只填充为空的字段
+     *
+     * @param blobId  文件内容ID
+     * @param palette 调色板，为null时不更新
+     * @param phash   感知哈希，为null时不更新
+     */
+    private void updateBlob(Long blobId, String palette, Long phash) {
+        if (palette != null) {
+            fileBlobMapper.update(null, Wrappers.<WpFileBlob>lambdaUpdate()
+                    .set(WpFileBlob::getPalette, palette)
+                    .eq(WpFileBlob::getId, blobId)
+                    .isNull(WpFileBlob::getPalette));
+        }
+        if (phash != null) {
+            fileBlobMapper.update(null, Wrappers.<WpFileBlob>lambdaUpdate()
+                    .set(WpFileBlob::getPhash, phash)
+                    .eq(WpFileBlob::getId, blobId)
+                    .isNull(WpFileBlob::getPhash));
+        }
+    }
+
+    /**
+     * 以小尺寸解码壁纸，优先使用缩略图
+     *
+     * @param wallpaper 壁纸
+     * @param minSize   解码结果的最小宽高
+     * @return 解码租约，用完后需关闭
+     * @throws IOException 文件不存在或无法解码
+     */
+    private ImageDecodeService.Lease decode(WpWallpaper wallpaper, int minSize) throws IOException {
+        IOException failure = null;
+        for (String relativePath : new String[]{wallpaper.getThumbnailPath(), wallpaper.getFilePath()}) {
+            if (StrUtil.isBlank(relativePath)) {
+                continue;
+            }
+            Path path = fileStorageService.toAbsolutePath(relativePath);
+            if (!Files.exists(path)) {
+                // 布局迁移期间文件可能已移动而记录尚未更新
+                String alternate = fileStorageService.alternatePath(relativePath);
+                if (alternate == null || !Files.exists(fileStorageService.toAbsolutePath(alternate))) {
+                    continue;
+                }
+                path = fileStorageService.toAbsolutePath(alternate);
+            }
+            try {
+                return imageDecodeService.acquire(path.toFile(), minSize, minSize);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new IOException("图片文件不存在");
+    }
+}
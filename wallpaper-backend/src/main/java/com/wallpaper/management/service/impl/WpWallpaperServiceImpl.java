@@ -9,32 +9,35 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpFileBlob;
 import com.wallpaper.management.entity.WpTag;
 import com.wallpaper.management.entity.WpWallpaper;
 import com.wallpaper.management.entity.WpWallpaperTag;
 import com.wallpaper.management.exception.BusinessException;
 import com.wallpaper.management.mapper.WpWallpaperMapper;
+import com.wallpaper.management.service.DerivativeService;
+import com.wallpaper.management.service.DuplicateDetectionService;
+import com.wallpaper.management.service.FileCacheService;
 import com.wallpaper.management.service.WpCategoryService;
+import com.wallpaper.management.service.WpFileBlobService;
 import com.wallpaper.management.service.WpTagService;
+import com.wallpaper.management.service.WpWallpaperColorService;
 import com.wallpaper.management.service.WpWallpaperService;
 import com.wallpaper.management.service.WpWallpaperTagService;
+import com.wallpaper.management.util.ImageIngest;
 import com.wallpaper.management.util.ImageUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections.CollectionUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Paths;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
 
@@ -46,9 +49,20 @@ import java.util.List;
 @RequiredArgsConstructor
 public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWallpaper> implements WpWallpaperService {
 
+    /**
+     * 上传临时目录（位于上传根目录下）
+     */
+    private static final String TEMP_DIR = ".tmp";
+
     private final WpCategoryService categoryService;
     private final WpWallpaperTagService wallpaperTagService;
     private final WpTagService tagService;
+    private final FileCacheService fileCacheService;
+    private final WpFileBlobService fileBlobService;
+    private final DerivativeService derivativeService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final WpWallpaperColorService wallpaperColorService;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${file.upload.path}")
     private String uploadPath;
@@ -61,36 +75,16 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
     
     @Value("${file.upload.base-url}")
     private String baseUrl;
-    
-    @Value("${file.upload.thumbnail.width}")
-    private int thumbnailWidth;
-    
-    @Value("${file.upload.thumbnail.height}")
-    private int thumbnailHeight;
 
     /**
-     * 上传壁纸
+     * 接收上传的文件
      *
-     * @param file         壁纸文件
-     * @param wallpaper    壁纸信息
-     * @param tagIds       标签ID列表
-     * @param uploadUserId 上传用户ID
-     * @return 壁纸信息
+     * @param input            文件内容
+     * @param originalFilename 原始文件名
+     * @return 接收结果
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public WpWallpaper uploadWallpaper(MultipartFile file, WpWallpaper wallpaper, List<Long> tagIds, Long uploadUserId) {
-        // 检查文件是否为空
-        if (file == null || file.isEmpty()) {
-            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件不能为空");
-        }
-
-        // 检查文件大小
-        if (file.getSize() > maxSize) {
-            throw new BusinessException(ResultCode.FILE_SIZE_ERROR);
-        }
-
-        String originalFilename = file.getOriginalFilename();
+    public ImageIngest.Result receiveFile(InputStream input, String originalFilename) {
         if (StrUtil.isBlank(originalFilename)) {
             throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件名不能为空");
         }
@@ -101,40 +95,69 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
             throw new BusinessException(ResultCode.FILE_TYPE_ERROR);
         }
 
+        // 直接写入上传目录下的临时文件，与正式目录同盘，存储时只需重命名；摘要、格式和宽高在同一次读取中得到
+        File tempFile = Paths.get(uploadPath, TEMP_DIR, IdUtil.fastSimpleUUID() + "." + suffix).toFile();
+        ImageIngest.Result upload;
         try {
-            // 生成文件保存路径
-            String relativePath = generateRelativePath(suffix);
-            String absolutePath = Paths.get(uploadPath, relativePath).toString();
-
-            // 创建目录
-            File directory = new File(FileUtil.getParent(absolutePath, 1));
-            if (!directory.exists()) {
-                directory.mkdirs();
-            }
-
-            // 保存文件
-            file.transferTo(new File(absolutePath));
+            FileUtil.mkParentDirs(tempFile);
+            upload = ImageIngest.ingest(input, tempFile, maxSize);
+        } catch (IOException e) {
+            FileUtil.del(tempFile);
+            throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), e.getMessage());
+        }
+        if (upload.getSize() > maxSize) {
+            FileUtil.del(tempFile);
+            throw new BusinessException(ResultCode.FILE_SIZE_ERROR);
+        }
+        if (upload.getSize() == 0) {
+            FileUtil.del(tempFile);
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "文件不能为空");
+        }
+        return upload;
+    }
 
-            // 读取图片信息
-            BufferedImage image = ImageIO.read(new File(absolutePath));
-            int width = image.getWidth();
-            int height = image.getHeight();
-            long fileSize = file.getSize();
+    /**
+     * 用已接收完整的文件创建壁纸
+     *
+     * @param upload           接收结果，其中的临时文件调用后不再可用
+     * @param originalFilename 原始文件名
+     * @param wallpaper        壁纸信息
+     * @param tagIds           标签ID列表
+     * @param uploadUserId     上传用户ID
+     * @return 壁纸信息
+     */
+    @Override
+    public WpWallpaper uploadWallpaper(ImageIngest.Result upload, String originalFilename, WpWallpaper wallpaper, List<Long> tagIds, Long uploadUserId) {
+        File tempFile = upload.getFile();
+        // 以文件内容的魔数为准，后缀与内容不符时按实际格式保存
+        String suffix = FileUtil.getSuffix(originalFilename);
+        String format = upload.getFormat();
+        if (format == null || !isAllowedFileType(format)) {
+            FileUtil.del(tempFile);
+            throw new BusinessException(ResultCode.FILE_TYPE_ERROR);
+        }
+        if (!format.equals(normalizeFormat(suffix))) {
+            suffix = format;
+        }
 
-            // 生成缩略图
-            String thumbnailPath = ImageUtils.generateThumbnail(relativePath, uploadPath, thumbnailWidth, thumbnailHeight);
-            if (StrUtil.isBlank(thumbnailPath)) {
-                log.warn("缩略图生成失败，使用原图路径");
-                thumbnailPath = relativePath;
-            }
+        try {
+            // 按内容去重存储，相同内容复用已有文件和缩略图
+            WpFileBlob blob = fileBlobService.store(upload, suffix);
+            String relativePath = blob.getFilePath();
+            String thumbnailPath = blob.getThumbnailPath();
 
             // 设置壁纸信息
             wallpaper.setFilePath(relativePath);
             wallpaper.setThumbnailPath(thumbnailPath);
-            wallpaper.setFileSize(fileSize);
-            wallpaper.setWidth(width);
-            wallpaper.setHeight(height);
-            wallpaper.setFileType(suffix);
+            wallpaper.setBlobId(blob.getId());
+            wallpaper.setProcessingStatus(blob.getProcessingStatus());
+            wallpaper.setPhash(blob.getPhash());
+            wallpaper.setPalette(blob.getPalette());
+            wallpaper.setBlurHash(blob.getBlurHash());
+            wallpaper.setFileSize(blob.getFileSize());
+            wallpaper.setWidth(blob.getWidth());
+            wallpaper.setHeight(blob.getHeight());
+            wallpaper.setFileType(blob.getFileType());
             wallpaper.setUploadUserId(uploadUserId);
             wallpaper.setDownloadCount(0);
             wallpaper.setViews(0);
@@ -146,13 +169,21 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
                 wallpaper.setStatus(1);
             }
 
-            // 保存壁纸信息
-            save(wallpaper);
-
-            // 处理标签关联
-            if (!CollectionUtils.isEmpty(tagIds)) {
-                wallpaperTagService.saveWallpaperTags(wallpaper.getId(), tagIds);
+            // 保存壁纸信息和标签关联，失败时归还文件内容引用
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    save(wallpaper);
+                    if (!CollectionUtils.isEmpty(tagIds)) {
+                        wallpaperTagService.saveWallpaperTags(wallpaper.getId(), tagIds);
+                    }
+                });
+            } catch (RuntimeException e) {
+                fileBlobService.release(blob.getId());
+                throw e;
             }
+
+            // 事务已提交，后台生成缩略图；内容已处理完时只同步壁纸上的缩略图和宽高
+            derivativeService.submit(blob.getId());
             
             // 构建URL，用于前端访问
             String imageUrl = ImageUtils.buildFullUrl(relativePath, baseUrl);
@@ -165,9 +196,47 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
             return wallpaper;
         } catch (IOException e) {
             throw new BusinessException(ResultCode.FILE_UPLOAD_ERROR.getCode(), e.getMessage());
+        } finally {
+            FileUtil.del(tempFile);
         }
     }
 
+    /**
+     * 删除壁纸，并释放其文件内容引用
+     *
+     * @param id 壁纸ID
+     * @return 是否成功
+     */
+    @Override
+    public boolean deleteWallpaper(Long id) {
+        WpWallpaper wallpaper = getById(id);
+        if (wallpaper == null) {
+            return false;
+        }
+
+        // 壁纸行和关联数据在一个事务中删除，提交后再归还文件内容引用，避免壁纸已删除而引用未归还
+        Boolean result = transactionTemplate.execute(status -> {
+            if (!removeById(id)) {
+                return false;
+            }
+            duplicateDetectionService.remove(wallpaper);
+            wallpaperColorService.deleteByWallpaperId(id);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(result)) {
+            return false;
+        }
+        if (wallpaper.getBlobId() != null) {
+            // 引用归零时由文件内容服务删除文件
+            fileBlobService.release(wallpaper.getBlobId());
+        } else {
+            // 历史数据没有文件内容记录，保留文件，仅使缓存失效
+            fileCacheService.invalidate(wallpaper.getFilePath());
+            fileCacheService.invalidate(wallpaper.getThumbnailPath());
+        }
+        return true;
+    }
+
     /**
      * 分页查询壁纸列表
      *
@@ -176,10 +245,12 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
      * @param categoryId 分类ID
      * @param tagId      标签ID
      * @param keyword    关键词
+     * @param color      颜色分类名称
      * @return 壁纸列表
      */
     @Override
-    public IPage<WpWallpaper> pageWallpapers(Integer page, Integer pageSize, Long categoryId, Long tagId, String keyword) {
+    public IPage<WpWallpaper> pageWallpapers(Integer page, Integer pageSize, Long categoryId, Long tagId, String keyword,
+                                             String color) {
         LambdaQueryWrapper<WpWallpaper> queryWrapper = new LambdaQueryWrapper<>();
 
         // 分类条件
@@ -211,6 +282,11 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
             );
         }
 
+        // 颜色条件，走颜色分类表的(bucket, ratio)索引
+        if (StrUtil.isNotBlank(color)) {
+            queryWrapper.inSql(WpWallpaper::getId, wallpaperColorService.buildColorFilterSql(color));
+        }
+
         // 按创建时间倒序排序
         queryWrapper.orderByDesc(WpWallpaper::getCreateTime);
 
@@ -273,10 +349,7 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
      */
     @Override
     public boolean incrementDownloads(Long id) {
-        return lambdaUpdate()
-                .eq(WpWallpaper::getId, id)
-                .setSql("downloads = downloads + 1")
-                .update();
+        return baseMapper.incrementDownloadCount(id, 1) > 0;
     }
 
     /**
@@ -309,17 +382,31 @@ public class WpWallpaperServiceImpl extends ServiceImpl<WpWallpaperMapper, WpWal
     }
 
     /**
-     * 生成文件相对路径
+     * 生成下载文件名
+     *
+     * @param wallpaper 壁纸
+     * @return 下载文件名
+     */
+    @Override
+    public String getDownloadName(WpWallpaper wallpaper) {
+        String name = StrUtil.isBlank(wallpaper.getTitle()) ? "" : wallpaper.getTitle().replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        if (StrUtil.isBlank(name)) {
+            name = "wallpaper-" + wallpaper.getId();
+        }
+        name = StrUtil.sub(name, 0, 100);
+        String suffix = FileUtil.getSuffix(wallpaper.getFilePath());
+        return StrUtil.isBlank(suffix) ? name : name + "." + suffix;
+    }
+
+    /**
+     * 后缀转为{@link ImageIngest#sniff(byte[], int)}识别出的格式名
      *
      * @param suffix 文件后缀
-     * @return 文件相对路径
+     * @return 格式名
      */
-    private String generateRelativePath(String suffix) {
-        // 按日期生成子目录
-        String dateDir = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        // 生成唯一文件名
-        String fileName = IdUtil.fastSimpleUUID() + "." + suffix;
-        return String.format("%s/%s", dateDir, fileName);
+    private static String normalizeFormat(String suffix) {
+        String format = StrUtil.nullToEmpty(suffix).toLowerCase();
+        return "jpeg".equals(format) ? "jpg" : format;
     }
 
     /**
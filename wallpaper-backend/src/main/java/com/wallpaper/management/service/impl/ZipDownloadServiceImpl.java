@@ -0,0 +1,376 @@
+package com.wallpaper.management.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.wallpaper.management.common.ResultCode;
+import com.wallpaper.management.entity.WpWallpaper;
+import com.wallpaper.management.exception.BusinessException;
+import com.wallpaper.management.service.FileServeService;
+import com.wallpaper.management.service.FileServeService.StreamBody;
+import com.wallpaper.management.service.FileStorageService;
+import com.wallpaper.management.service.FileTierService;
+import com.wallpaper.management.service.WpCategoryService;
+import com.wallpaper.management.service.WpDownloadRecordService;
+import com.wallpaper.management.service.WpFavoriteService;
+import com.wallpaper.management.service.WpWallpaperService;
+import com.wallpaper.management.service.ZipDownloadService;
+import com.wallpaper.management.utils.ShiroUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 壁纸打包下载服务实现类
+ * <p>
+ * ZIP边读边写直接输出到响应，每个请求只占用一个固定大小的缓冲区。
+ * JPEG/PNG本身已压缩，条目使用不压缩的deflate（level 0，数据原样写入stored块）：
+ * 与STORED方式一样不做压缩，但无需预先读一遍文件计算CRC。
+ * 每个请求限制文件数、总字节数和读取速率，并限制全局及单个用户的并发打包数。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ZipDownloadServiceImpl implements ZipDownloadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CONTENT_TYPE = "application/zip";
+
+    private final WpWallpaperService wallpaperService;
+    private final WpCategoryService categoryService;
+    private final WpFavoriteService favoriteService;
+    private final WpDownloadRecordService downloadRecordService;
+    private final FileServeService fileServeService;
+    private final FileStorageService fileStorageService;
+    private final FileTierService fileTierService;
+
+    @Value("${file.zip.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${file.zip.max-bytes:2147483648}")
+    private long maxBytes;
+
+    @Value("${file.zip.max-rate:20971520}")
+    private long maxRate;
+
+    @Value("${file.zip.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${file.zip.max-concurrent-per-user:1}")
+    private int maxConcurrentPerUser;
+
+    private Semaphore permits;
+
+    private final Map<Long, AtomicInteger> userPermits = new ConcurrentHashMap<>();
+
+    private final AtomicLong started = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong throttled = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * 将选中的壁纸原图边读边打包为ZIP输出
+     *
+     * @param ids        壁纸ID列表
+     * @param categoryId 分类ID（包含子分类）
+     * @param favorites  是否下载当前用户的收藏
+     * @param request    HTTP请求
+     * @param response   HTTP响应
+     * @throws IOException 输出失败
+     */
+    @Override
+    public void download(List<Long> ids, Long categoryId, boolean favorites,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int selectors = (CollUtil.isNotEmpty(ids) ? 1 : 0) + (categoryId != null ? 1 : 0) + (favorites ? 1 : 0);
+        if (selectors != 1) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "ids、categoryId、favorites必须且只能指定一个");
+        }
+
+        Long userId = ShiroUtil.getCurrentUserId();
+        List<WpWallpaper> wallpapers = selectWallpapers(ids, categoryId, favorites, userId);
+        if (wallpapers.isEmpty()) {
+            throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "没有可下载的壁纸");
+        }
+
+        // 开始输出前先确定文件并检查总大小，超限时仍可返回错误信息
+        List<ZipItem> items = new ArrayList<>(wallpapers.size());
+        long totalBytes = 0;
+        for (WpWallpaper wallpaper : wallpapers) {
+            ZipItem item = locate(wallpaper);
+            if (item != null) {
+                items.add(item);
+                totalBytes += item.size;
+            }
+        }
+        if (items.isEmpty()) {
+            throw new BusinessException(ResultCode.NOT_FOUND.getCode(), "壁纸文件不存在");
+        }
+        if (totalBytes > maxBytes) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(),
+                    "打包文件总大小超过限制（" + maxBytes / 1024 / 1024 + "MB）");
+        }
+
+        ZipBody body = acquire(userId, items);
+        String ip = request.getRemoteAddr();
+        for (ZipItem item : items) {
+            downloadRecordService.record(item.wallpaperId, userId, ip);
+        }
+        String zipName = "wallpapers-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".zip";
+        fileServeService.serveStream(CONTENT_TYPE, zipName, body, request, response);
+    }
+
+    /**
+     * 获取打包下载统计信息
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", maxConcurrent - permits.availablePermits());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("started", started.get());
+        stats.put("completed", completed.get());
+        stats.put("throttled", throttled.get());
+        stats.put("bytesWritten", bytesWritten.get());
+        return stats;
+    }
+
+    private List<WpWallpaper> selectWallpapers(List<Long> ids, Long categoryId, boolean favorites, Long userId) {
+        if (CollUtil.isNotEmpty(ids)) {
+            LinkedHashSet<Long> distinct = new LinkedHashSet<>(ids);
+            checkEntryLimit(distinct.size());
+            // 保持请求中的顺序
+            Map<Long, WpWallpaper> byId = wallpaperService.listByIds(distinct).stream()
+                    .collect(Collectors.toMap(WpWallpaper::getId, Function.identity()));
+            return distinct.stream().map(byId::get).filter(w -> w != null).collect(Collectors.toList());
+        }
+
+        List<WpWallpaper> wallpapers;
+        if (categoryId != null) {
+            List<Long> categoryIds = categoryService.getAllChildrenIds(categoryId);
+            categoryIds.add(categoryId);
+            wallpapers = wallpaperService.lambdaQuery()
+                    .in(WpWallpaper::getCategoryId, categoryIds)
+                    .orderByDesc(WpWallpaper::getCreateTime)
+                    .last("LIMIT " + (maxEntries + 1))
+                    .list();
+        } else {
+            Page<WpWallpaper> page = new Page<>(1, maxEntries + 1, false);
+            wallpapers = favoriteService.getFavoriteWallpapers(page, userId).getRecords();
+        }
+        checkEntryLimit(wallpapers.size());
+        return wallpapers;
+    }
+
+    private void checkEntryLimit(int count) {
+        if (count > maxEntries) {
+            throw new BusinessException(ResultCode.PARAM_ERROR.getCode(), "单次最多打包" + maxEntries + "张壁纸");
+        }
+    }
+
+    /**
+     * 查找壁纸原图，找不到时返回null（跳过该壁纸）
+     *
+     * @param wallpaper 壁纸
+     * @return 打包条目
+     */
+    private ZipItem locate(WpWallpaper wallpaper) {
+        String relativePath = wallpaper.getFilePath();
+        if (StrUtil.isBlank(relativePath)) {
+            return null;
+        }
+        List<String> candidates = new ArrayList<>(2);
+        candidates.add(relativePath);
+        String alternate = fileStorageService.alternatePath(relativePath);
+        if (alternate != null) {
+            candidates.add(alternate);
+        }
+        for (String candidate : candidates) {
+            Path path = fileTierService.resolve(candidate);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                String name = wallpaper.getId() + "-" + wallpaperService.getDownloadName(wallpaper);
+                return new ZipItem(wallpaper.getId(), name, path, attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                log.debug("打包时文件不存在: {}", path);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 占用全局和用户的并发名额
+     *
+     * @param userId 用户ID
+     * @param items  打包条目
+     * @return 响应体，关闭时归还名额
+     */
+    private ZipBody acquire(Long userId, List<ZipItem> items) {
+        AtomicInteger userCount = userPermits.computeIfAbsent(userId, k -> new AtomicInteger());
+        if (userCount.incrementAndGet() > maxConcurrentPerUser) {
+            userCount.decrementAndGet();
+            throttled.incrementAndGet();
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "已有打包下载正在进行，请稍后再试");
+        }
+        if (!permits.tryAcquire()) {
+            userCount.decrementAndGet();
+            throttled.incrementAndGet();
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "打包下载人数较多，请稍后再试");
+        }
+        started.incrementAndGet();
+        return new ZipBody(userId, items);
+    }
+
+    /**
+     * 打包条目
+     */
+    private static class ZipItem {
+
+        private final Long wallpaperId;
+
+        private final String name;
+
+        private final Path path;
+
+        private final long size;
+
+        private final long lastModified;
+
+        ZipItem(Long wallpaperId, String name, Path path, long size, long lastModified) {
+            this.wallpaperId = wallpaperId;
+            this.name = name;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * ZIP响应体
+     */
+    private class ZipBody implements StreamBody {
+
+        private final Long userId;
+
+        private final List<ZipItem> items;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ZipBody(Long userId, List<ZipItem> items) {
+            this.userId = userId;
+            this.items = items;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long startNanos = System.nanoTime();
+            long written = 0;
+
+            // 关闭ZipOutputStream以释放Deflater，但不关闭响应输出流；
+            // Deflater每次只输出512字节，经缓冲后再写入响应
+            OutputStream target = new BufferedOutputStream(new CloseShieldOutputStream(out), BUFFER_SIZE);
+            try (ZipOutputStream zip = new ZipOutputStream(target)) {
+                zip.setMethod(ZipOutputStream.DEFLATED);
+                zip.setLevel(Deflater.NO_COMPRESSION);
+                for (ZipItem item : items) {
+                    try (FileChannel channel = FileChannel.open(item.path, StandardOpenOption.READ)) {
+                        ZipEntry entry = new ZipEntry(item.name);
+                        entry.setTime(item.lastModified);
+                        zip.putNextEntry(entry);
+                        int read;
+                        while ((read = channel.read(byteBuffer)) > 0) {
+                            zip.write(buffer, 0, read);
+                            byteBuffer.clear();
+                            written += read;
+                            throttle(written, startNanos);
+                        }
+                        zip.closeEntry();
+                    } catch (NoSuchFileException e) {
+                        // 打包过程中文件被删除，跳过
+                        log.debug("打包时文件已不存在: {}", item.path);
+                    }
+                }
+            } finally {
+                bytesWritten.addAndGet(written);
+            }
+            completed.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                permits.release();
+                userPermits.computeIfPresent(userId, (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+            }
+        }
+
+        /**
+         * 读取速度超过限制时暂停，使平均速率不超过max-rate
+         *
+         * @param written    已写出字节数
+         * @param startNanos 开始时间
+         * @throws IOException 等待被中断
+         */
+        private void throttle(long written, long startNanos) throws IOException {
+            if (maxRate <= 0) {
+                return;
+            }
+            long expectedMillis = written * 1000 / maxRate;
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (expectedMillis > elapsedMillis) {
+                try {
+                    Thread.sleep(expectedMillis - elapsedMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("打包下载被中断", e);
+                }
+            }
+        }
+    }
+}
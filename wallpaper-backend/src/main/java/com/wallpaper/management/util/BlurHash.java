@@ -0,0 +1,186 @@
+package com.wallpaper.management.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * BlurHash占位图编码工具类
+ * <p>
+ * 把图片表示为少量二维余弦分量（横向4个、纵向3个，竖图反之），编码成不到30个字符的字符串，
+ * 前端解码后即可画出模糊的占位图，在缩略图加载完成前填充网格，无需额外请求。
+ * 编码格式与 https://github.com/woltapp/blurhash 一致，可直接使用其各端解码库。
+ */
+public final class BlurHash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    /**
+     * 计算前缩小到的最大边长，分量很少，更大的图对结果几乎没有影响
+     */
+    private static final int SAMPLE_SIZE = 32;
+
+    /**
+     * 长边方向的分量数
+     */
+    private static final int MAJOR_COMPONENTS = 4;
+
+    /**
+     * 短边方向的分量数
+     */
+    private static final int MINOR_COMPONENTS = 3;
+
+    /**
+     * sRGB分量值到线性光的查找表
+     */
+    private static final double[] SRGB_TO_LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double v = i / 255D;
+            SRGB_TO_LINEAR[i] = v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private BlurHash() {
+    }
+
+    /**
+     * 计算图片的BlurHash
+     *
+     * @param image 图片，通常为已解码的缩略图源，透明区域按黑色计算
+     * @return BlurHash字符串
+     */
+    public static String encode(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1D, (double) SAMPLE_SIZE / Math.max(width, height));
+        int sampleWidth = Math.max(1, (int) Math.round(width * scale));
+        int sampleHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage sample = ImageResampler.resize(image, sampleWidth, sampleHeight, ImageResampler.Filter.LANCZOS3, false);
+        int[] pixels = sample.getRGB(0, 0, sampleWidth, sampleHeight, null, 0, sampleWidth);
+
+        int componentsX = width >= height ? MAJOR_COMPONENTS : MINOR_COMPONENTS;
+        int componentsY = width >= height ? MINOR_COMPONENTS : MAJOR_COMPONENTS;
+        double[] cosX = cosines(componentsX, sampleWidth);
+        double[] cosY = cosines(componentsY, sampleHeight);
+
+        double[][] factors = new double[componentsX * componentsY][3];
+        for (int y = 0; y < sampleHeight; y++) {
+            for (int x = 0; x < sampleWidth; x++) {
+                int pixel = pixels[y * sampleWidth + x];
+                double r = SRGB_TO_LINEAR[(pixel >> 16) & 0xFF];
+                double g = SRGB_TO_LINEAR[(pixel >> 8) & 0xFF];
+                double b = SRGB_TO_LINEAR[pixel & 0xFF];
+                for (int j = 0; j < componentsY; j++) {
+                    double basisY = cosY[j * sampleHeight + y];
+                    for (int i = 0; i < componentsX; i++) {
+                        double basis = cosX[i * sampleWidth + x] * basisY;
+                        double[] factor = factors[j * componentsX + i];
+                        factor[0] += basis * r;
+                        factor[1] += basis * g;
+                        factor[2] += basis * b;
+                    }
+                }
+            }
+        }
+        double pixelCount = (double) sampleWidth * sampleHeight;
+        for (int k = 0; k < factors.length; k++) {
+            // 直流分量的归一化系数为1，其余为2
+            double normalisation = (k == 0 ? 1D : 2D) / pixelCount;
+            for (int c = 0; c < 3; c++) {
+                factors[k][c] *= normalisation;
+            }
+        }
+
+        StringBuilder hash = new StringBuilder(4 + 2 * factors.length);
+        encode83((componentsX - 1) + (componentsY - 1) * 9, 1, hash);
+
+        double maximumValue;
+        if (factors.length > 1) {
+            double actualMax = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (int c = 0; c < 3; c++) {
+                    actualMax = Math.max(actualMax, Math.abs(factors[k][c]));
+                }
+            }
+            int quantisedMax = (int) Math.max(0, Math.min(82, Math.floor(actualMax * 166 - 0.5)));
+            maximumValue = (quantisedMax + 1) / 166D;
+            encode83(quantisedMax, 1, hash);
+        } else {
+            maximumValue = 1;
+            encode83(0, 1, hash);
+        }
+
+        encode83(encodeDc(factors[0]), 4, hash);
+        for (int k = 1; k < factors.length; k++) {
+            encode83(encodeAc(factors[k], maximumValue), 2, hash);
+        }
+        return hash.toString();
+    }
+
+    /**
+     * 生成纯色的BlurHash，用于没有占位图的历史数据
+     *
+     * @param rgb 颜色（0xRRGGBB）
+     * @return 只含直流分量的BlurHash字符串
+     */
+    public static String ofColor(int rgb) {
+        StringBuilder hash = new StringBuilder(6);
+        encode83(0, 1, hash);
+        encode83(0, 1, hash);
+        encode83(rgb & 0xFFFFFF, 4, hash);
+        return hash.toString();
+    }
+
+    /**
+     * 预先计算各分量在每个采样位置上的余弦值
+     *
+     * @param components 分量数
+     * @param size       采样边长
+     * @return 按[分量 * size + 位置]排列的余弦值
+     */
+    private static double[] cosines(int components, int size) {
+        double[] cosines = new double[components * size];
+        for (int i = 0; i < components; i++) {
+            for (int p = 0; p < size; p++) {
+                cosines[i * size + p] = Math.cos(Math.PI * i * p / size);
+            }
+        }
+        return cosines;
+    }
+
+    private static int encodeDc(double[] value) {
+        return (linearToSrgb(value[0]) << 16) + (linearToSrgb(value[1]) << 8) + linearToSrgb(value[2]);
+    }
+
+    private static int encodeAc(double[] value, double maximumValue) {
+        int r = quantiseAc(value[0] / maximumValue);
+        int g = quantiseAc(value[1] / maximumValue);
+        int b = quantiseAc(value[2] / maximumValue);
+        return r * 19 * 19 + g * 19 + b;
+    }
+
+    private static int quantiseAc(double value) {
+        double signedRoot = Math.copySign(Math.sqrt(Math.abs(value)), value);
+        return (int) Math.max(0, Math.min(18, Math.floor(signedRoot * 9 + 9.5)));
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        if (v <= 0.0031308) {
+            return (int) (v * 12.92 * 255 + 0.5);
+        }
+        return (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void encode83(int value, int length, StringBuilder out) {
+        int divisor = 1;
+        for (int i = 1; i < length; i++) {
+            divisor *= 83;
+        }
+        for (int i = 0; i < length; i++) {
+            out.append(BASE83.charAt((value / divisor) % 83));
+            divisor /= 83;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.wallpaper.management.util;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 主色提取工具类
+ * <p>
+ * 把图片缩小到不超过64x64后用中位切分法（median cut）量化，得到按占比排序的几种主色；
+ * 每种主色再按色相、饱和度、明度归入固定的颜色分类，用于按颜色筛选。
+ * 调色板以紧凑字符串保存，如 "#1a2b3c:35,#ddeeff:20"（颜色:占比百分数）。
+ */
+public final class ColorPalette {
+
+    /**
+     * 量化前缩小到的最大边长
+     */
+    private static final int SAMPLE_SIZE = 64;
+
+    /**
+     * 透明度低于一半的像素不参与统计
+     */
+    private static final int MIN_ALPHA = 128;
+
+    /**
+     * RGB欧氏距离不超过该值的两种颜色视为同一种
+     */
+    private static final int MERGE_DISTANCE = 24;
+
+    private ColorPalette() {
+    }
+
+    /**
+     * 颜色分类，code为wp_wallpaper_color.bucket的取值，不可修改
+     */
+    @Getter
+    @AllArgsConstructor
+    public enum Bucket {
+        RED(1, "red", "#e53935"),
+        ORANGE(2, "orange", "#fb8c00"),
+        YELLOW(3, "yellow", "#fdd835"),
+        GREEN(4, "green", "#43a047"),
+        CYAN(5, "cyan", "#00acc1"),
+        BLUE(6, "blue", "#1e88e5"),
+        PURPLE(7, "purple", "#8e24aa"),
+        PINK(8, "pink", "#ec407a"),
+        BROWN(9, "brown", "#6d4c41"),
+        BLACK(10, "black", "#212121"),
+        WHITE(11, "white", "#fafafa"),
+        GRAY(12, "gray", "#9e9e9e");
+
+        /**
+         * 存储编码
+         */
+        private final int code;
+
+        /**
+         * 名称（接口参数）
+         */
+        private final String key;
+
+        /**
+         * 展示用的代表色
+         */
+        private final String hex;
+
+        /**
+         * 按名称查找分类
+         *
+         * @param name 名称，不区分大小写
+         * @return 分类，不存在时返回null
+         */
+        public static Bucket of(String name) {
+            if (StrUtil.isBlank(name)) {
+                return null;
+            }
+            String key = name.trim().toLowerCase(Locale.ROOT);
+            for (Bucket bucket : values()) {
+                if (bucket.key.equals(key)) {
+                    return bucket;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 一种主色
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Swatch {
+
+        /**
+         * 颜色（0xRRGGBB）
+         */
+        private final int rgb;
+
+        /**
+         * 占比百分数（0-100）
+         */
+        private final int percent;
+    }
+
+    /**
+     * 提取主色
+     *
+     * @param image     图片，通常为已解码的缩略图源
+     * @param maxColors 最多返回的颜色数
+     * @return 主色，按占比降序；图片全透明时为空
+     */
+    public static List<Swatch> extract(BufferedImage image, int maxColors) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1D, (double) SAMPLE_SIZE / Math.max(width, height));
+        int sampleWidth = Math.max(1, (int) Math.round(width * scale));
+        int sampleHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage sample = ImageUtils.resize(image, sampleWidth, sampleHeight, true);
+        int[] argb = sample.getRGB(0, 0, sampleWidth, sampleHeight, null, 0, sampleWidth);
+
+        int count = 0;
+        int[] pixels = new int[argb.length];
+        for (int pixel : argb) {
+            if ((pixel >>> 24) >= MIN_ALPHA) {
+                pixels[count++] = pixel & 0xFFFFFF;
+            }
+        }
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        // 切分出比需要的更多的盒子，小盒子在排序后被丢弃，避免大面积颜色被平均掉
+        List<int[]> boxes = new ArrayList<>();
+        boxes.add(new int[]{0, count});
+        int targetBoxes = maxColors * 2;
+        while (boxes.size() < targetBoxes) {
+            int[] widest = null;
+            int widestChannel = 0;
+            int widestRange = 0;
+            for (int[] box : boxes) {
+                for (int channel = 0; channel < 3; channel++) {
+                    int range = range(pixels, box[0], box[1], channel);
+                    if (range > widestRange) {
+                        widest = box;
+                        widestChannel = channel;
+                        widestRange = range;
+                    }
+                }
+            }
+            if (widest == null) {
+                // 剩余的盒子都只有一种颜色
+                break;
+            }
+            // 按所选通道排序：通道值放在高位，与像素一起按long排序，避免装箱
+            int shift = 16 - widestChannel * 8;
+            int from = widest[0];
+            int to = widest[1];
+            long[] keys = new long[to - from];
+            for (int i = 0; i < keys.length; i++) {
+                int pixel = pixels[from + i];
+                keys[i] = (long) ((pixel >> shift) & 0xFF) << 32 | pixel;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < keys.length; i++) {
+                pixels[from + i] = (int) keys[i];
+            }
+            int middle = from + keys.length / 2;
+            boxes.remove(widest);
+            boxes.add(new int[]{from, middle});
+            boxes.add(new int[]{middle, to});
+        }
+
+        List<int[]> averages = new ArrayList<>(boxes.size());
+        for (int[] box : boxes) {
+            int size = box[1] - box[0];
+            if (size == 0) {
+                continue;
+            }
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            for (int i = box[0]; i < box[1]; i++) {
+                r += (pixels[i] >> 16) & 0xFF;
+                g += (pixels[i] >> 8) & 0xFF;
+                b += pixels[i] & 0xFF;
+            }
+            averages.add(new int[]{(int) (r / size) << 16 | (int) (g / size) << 8 | (int) (b / size), size});
+        }
+        averages.sort((a, b) -> Integer.compare(b[1], a[1]));
+
+        // 大面积纯色会被切成几个几乎相同的盒子，合并到占比更大的那个，否则它的占比会被低估
+        List<int[]> merged = new ArrayList<>(averages.size());
+        for (int[] average : averages) {
+            int[] target = null;
+            for (int[] candidate : merged) {
+                if (distanceSquared(candidate[0], average[0]) <= MERGE_DISTANCE * MERGE_DISTANCE) {
+                    target = candidate;
+                    break;
+                }
+            }
+            if (target == null) {
+                merged.add(average);
+            } else {
+                target[1] += average[1];
+            }
+        }
+        merged.sort((a, b) -> Integer.compare(b[1], a[1]));
+
+        List<Swatch> swatches = new ArrayList<>(maxColors);
+        for (int i = 0; i < merged.size() && swatches.size() < maxColors; i++) {
+            int percent = (int) Math.round(merged.get(i)[1] * 100D / count);
+            if (percent > 0) {
+                swatches.add(new Swatch(merged.get(i)[0], percent));
+            }
+        }
+        return swatches;
+    }
+
+    /**
+     * 计算各颜色分类的占比
+     *
+     * @param swatches 主色
+     * @return 分类及其占比百分数（同一分类的主色合并）
+     */
+    public static Map<Bucket, Integer> buckets(List<Swatch> swatches) {
+        Map<Bucket, Integer> buckets = new EnumMap<>(Bucket.class);
+        for (Swatch swatch : swatches) {
+            buckets.merge(bucketOf(swatch.getRgb()), swatch.getPercent(), Integer::sum);
+        }
+        return buckets;
+    }
+
+    /**
+     * 将颜色归入颜色分类
+     *
+     * @param rgb 颜色（0xRRGGBB）
+     * @return 颜色分类
+     */
+    public static Bucket bucketOf(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        double value = max / 255D;
+        double saturation = max == 0 ? 0 : (double) (max - min) / max;
+
+        if (value < 0.2) {
+            return Bucket.BLACK;
+        }
+        if (saturation < 0.15 || (saturation < 0.25 && value < 0.35)) {
+            if (value > 0.85) {
+                return Bucket.WHITE;
+            }
+            return value < 0.3 ? Bucket.BLACK : Bucket.GRAY;
+        }
+
+        double hue;
+        double delta = max - min;
+        if (max == r) {
+            hue = 60 * (((g - b) / delta) % 6);
+        } else if (max == g) {
+            hue = 60 * ((b - r) / delta + 2);
+        } else {
+            hue = 60 * ((r - g) / delta + 4);
+        }
+        if (hue < 0) {
+            hue += 360;
+        }
+
+        if (hue >= 15 && hue < 45 && value < 0.6) {
+            return Bucket.BROWN;
+        }
+        if (hue < 15 || hue >= 345) {
+            return saturation < 0.5 && value > 0.7 ? Bucket.PINK : Bucket.RED;
+        }
+        if (hue < 45) {
+            return Bucket.ORANGE;
+        }
+        if (hue < 70) {
+            return Bucket.YELLOW;
+        }
+        if (hue < 165) {
+            return Bucket.GREEN;
+        }
+        if (hue < 195) {
+            return Bucket.CYAN;
+        }
+        if (hue < 255) {
+            return Bucket.BLUE;
+        }
+        if (hue < 290) {
+            return Bucket.PURPLE;
+        }
+        return Bucket.PINK;
+    }
+
+    /**
+     * 编码调色板
+     *
+     * @param swatches 主色
+     * @return 紧凑字符串，如 "#1a2b3c:35,#ddeeff:20"，没有主色时返回null
+     */
+    public static String encode(List<Swatch> swatches) {
+        if (swatches.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Swatch swatch : swatches) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(String.format("#%06x:%d", swatch.getRgb(), swatch.getPercent()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 解码调色板，忽略格式不正确的项
+     *
+     * @param palette 紧凑字符串
+     * @return 主色
+     */
+    public static List<Swatch> decode(String palette) {
+        List<Swatch> swatches = new ArrayList<>();
+        if (StrUtil.isBlank(palette)) {
+            return swatches;
+        }
+        for (String item : palette.split(",")) {
+            int colon = item.indexOf(':');
+            if (!item.startsWith("#") || colon != 7) {
+                continue;
+            }
+            try {
+                swatches.add(new Swatch(Integer.parseInt(item.substring(1, 7), 16), Integer.parseInt(item.substring(8))));
+            } catch (NumberFormatException e) {
+                // 忽略损坏的项
+            }
+        }
+        return swatches;
+    }
+
+    private static int distanceSquared(int a, int b) {
+        int dr = ((a >> 16) & 0xFF) - ((b >> 16) & 0xFF);
+        int dg = ((a >> 8) & 0xFF) - ((b >> 8) & 0xFF);
+        int db = (a & 0xFF) - (b & 0xFF);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    private static int range(int[] pixels, int from, int to, int channel) {
+        int shift = 16 - channel * 8;
+        int min = 255;
+        int max = 0;
+        for (int i = from; i < to; i++) {
+            int value = (pixels[i] >> shift) & 0xFF;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+}
@@ -0,0 +1,102 @@
+package com.wallpaper.management.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 访问频率估计器（Count-Min Sketch，TinyLFU准入策略使用）
+ * <p>
+ * 每个计数器上限为15，累计增量达到采样周期后所有计数减半，使历史热点逐渐老化。
+ * 计数更新为无锁CAS，允许并发下的少量误差。
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = {0x97cb3127, 0x7ed55d16, 0xc761c23c, 0x165667b1};
+
+    private final AtomicIntegerArray table;
+
+    private final int mask;
+
+    private final long samplePeriod;
+
+    private final AtomicLong additions = new AtomicLong();
+
+    /**
+     * 构造函数
+     *
+     * @param expectedEntries 预计需要区分的键数量
+     */
+    public FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+        this.table = new AtomicIntegerArray(width * DEPTH);
+        this.mask = width - 1;
+        this.samplePeriod = 10L * width;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 键
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int count;
+            do {
+                count = table.get(index);
+                if (count >= MAX_COUNT) {
+                    break;
+                }
+            } while (!table.compareAndSet(index, count, count + 1));
+            added |= count < MAX_COUNT;
+        }
+        if (added && additions.incrementAndGet() >= samplePeriod) {
+            reset();
+        }
+    }
+
+    /**
+     * 估计访问频率
+     *
+     * @param key 键
+     * @return 频率估计值（0-15）
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table.get(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * 所有计数减半（老化）
+     */
+    private synchronized void reset() {
+        if (additions.get() < samplePeriod) {
+            return;
+        }
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, table.get(i) >>> 1);
+        }
+        additions.set(additions.get() >>> 1);
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+}
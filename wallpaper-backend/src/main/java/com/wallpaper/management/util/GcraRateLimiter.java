@@ -0,0 +1,95 @@
+package com.wallpaper.management.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GCRA（通用信元速率算法）限速器，等价于令牌桶
+ * <p>
+ * 只保存一个"理论到达时间"（TAT），每次申请通过一次CAS推进，无锁；
+ * 允许突发量为burst，超过后按rate匀速放行，调用方根据返回的等待时间自行暂停。
+ */
+public class GcraRateLimiter {
+
+    private final double nanosPerUnit;
+
+    private final long toleranceNanos;
+
+    private final AtomicLong tat;
+
+    /**
+     * 构造函数
+     *
+     * @param ratePerSecond 每秒允许的单位数
+     * @param burst         允许的突发单位数
+     */
+    public GcraRateLimiter(long ratePerSecond, long burst) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("ratePerSecond必须大于0");
+        }
+        this.nanosPerUnit = 1_000_000_000D / ratePerSecond;
+        this.toleranceNanos = (long) (Math.max(0, burst) * nanosPerUnit);
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 在突发额度内时占用额度，否则不占用
+     *
+     * @param cost 申请的单位数
+     * @return 是否占用成功
+     */
+    public boolean tryAcquire(double cost) {
+        long increment = toNanos(cost);
+        while (true) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long next = Math.max(current, now) + increment;
+            if (next - now > toleranceNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 占用额度，返回为保持速率需要等待的时间
+     *
+     * @param cost 申请的单位数
+     * @return 需要等待的纳秒数，0表示无需等待
+     */
+    public long reserve(double cost) {
+        long increment = toNanos(cost);
+        while (true) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long next = Math.max(current, now) + increment;
+            if (tat.compareAndSet(current, next)) {
+                return Math.max(0, next - now - toleranceNanos);
+            }
+        }
+    }
+
+    /**
+     * 当前积压：已占用但尚未按速率"消化"的时间
+     *
+     * @return 积压的纳秒数，0表示额度已完全恢复
+     */
+    public long backlogNanos() {
+        return Math.max(0, tat.get() - System.nanoTime());
+    }
+
+    /**
+     * 距离有足够额度放行指定单位数还需等待的时间
+     *
+     * @param cost 单位数
+     * @return 等待的纳秒数
+     */
+    public long delayFor(double cost) {
+        return Math.max(0, backlogNanos() + toNanos(cost) - toleranceNanos);
+    }
+
+    private long toNanos(double cost) {
+        return (long) Math.min(cost * nanosPerUnit, Long.MAX_VALUE / 4D);
+    }
+}
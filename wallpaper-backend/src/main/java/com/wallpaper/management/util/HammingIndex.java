@@ -0,0 +1,291 @@
+package com.wallpaper.management.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 64位哈希的汉明距离索引（多索引哈希）
+ * <p>
+ * 哈希切成4段、每段16位，每段各建一张分桶表。按抽屉原理，距离不超过k的两个哈希至少有一段的距离不超过k/4，
+ * 查询时只需在每张表里取出与查询段距离不超过k/4的桶（k≤7时每张表最多17个桶），再逐个校验完整距离。
+ * 百万级数据时候选数通常只有几百个，不像BK树那样需要遍历大比例的节点。
+ * 读写锁保护：查询可并发，插入和删除互斥。
+ */
+public class HammingIndex {
+
+    private static final int BLOCKS = 4;
+
+    private static final int BLOCK_BITS = 16;
+
+    private static final int BLOCK_MASK = (1 << BLOCK_BITS) - 1;
+
+    /**
+     * 支持的最大查询距离，再大时每段需要枚举的桶数急剧增加
+     */
+    public static final int MAX_DISTANCE = 15;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 每段的分桶表，桶内保存条目下标
+     */
+    private final int[][][] buckets = new int[BLOCKS][1 << BLOCK_BITS][];
+
+    private final int[][] bucketSizes = new int[BLOCKS][1 << BLOCK_BITS];
+
+    private long[] hashes = new long[1024];
+
+    private long[] ids = new long[1024];
+
+    /**
+     * 删除后空出的条目下标，插入时优先复用
+     */
+    private int[] freeSlots = new int[16];
+
+    private int freeCount;
+
+    private int slotCount;
+
+    private int size;
+
+    /**
+     * 添加哈希和ID
+     *
+     * @param hash 哈希
+     * @param id   ID
+     * @return 是否新增（同一哈希下已有该ID时返回false）
+     */
+    public boolean add(long hash, long id) {
+        lock.writeLock().lock();
+        try {
+            if (slotOf(hash, id) >= 0) {
+                return false;
+            }
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (slotCount == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, slotCount * 2);
+                    ids = Arrays.copyOf(ids, slotCount * 2);
+                }
+                slot = slotCount++;
+            }
+            hashes[slot] = hash;
+            ids[slot] = id;
+            for (int block = 0; block < BLOCKS; block++) {
+                int key = blockOf(hash, block);
+                int[] bucket = buckets[block][key];
+                int count = bucketSizes[block][key];
+                if (bucket == null) {
+                    bucket = new int[2];
+                } else if (count == bucket.length) {
+                    bucket = Arrays.copyOf(bucket, count * 2);
+                }
+                bucket[count] = slot;
+                buckets[block][key] = bucket;
+                bucketSizes[block][key] = count + 1;
+            }
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除哈希下的ID
+     *
+     * @param hash 哈希
+     * @param id   ID
+     * @return 是否移除
+     */
+    public boolean remove(long hash, long id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(hash, id);
+            if (slot < 0) {
+                return false;
+            }
+            for (int block = 0; block < BLOCKS; block++) {
+                int key = blockOf(hash, block);
+                int[] bucket = buckets[block][key];
+                int count = bucketSizes[block][key];
+                for (int i = 0; i < count; i++) {
+                    if (bucket[i] == slot) {
+                        bucket[i] = bucket[--count];
+                        break;
+                    }
+                }
+                bucketSizes[block][key] = count;
+                if (count == 0) {
+                    buckets[block][key] = null;
+                }
+            }
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 判断哈希下是否已有该ID
+     *
+     * @param hash 哈希
+     * @param id   ID
+     * @return 是否存在
+     */
+    public boolean contains(long hash, long id) {
+        lock.readLock().lock();
+        try {
+            return slotOf(hash, id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查找与哈希距离不超过maxDistance的所有ID
+     *
+     * @param hash        哈希
+     * @param maxDistance 最大汉明距离，不超过{@link #MAX_DISTANCE}
+     * @return 匹配结果，按距离、ID升序
+     */
+    public List<Match> search(long hash, int maxDistance) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("汉明距离超出范围: " + maxDistance);
+        }
+        int radius = maxDistance / BLOCKS;
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int block = 0; block < BLOCKS; block++) {
+                int key = blockOf(hash, block);
+                probe(hash, maxDistance, radius, block, key, 0, radius, matches);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance).thenComparingLong(Match::getId));
+        return matches;
+    }
+
+    /**
+     * 获取ID数量
+     *
+     * @return ID数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 递归枚举与查询段距离不超过radius的所有桶，调用方需持有读锁
+     *
+     * @param hash        查询哈希
+     * @param maxDistance 最大汉明距离
+     * @param radius      每段允许的最大距离
+     * @param block       段序号
+     * @param key         当前枚举到的桶
+     * @param fromBit     本层起可翻转的最低位
+     * @param flipsLeft   剩余可翻转的位数
+     * @param matches     匹配结果
+     */
+    private void probe(long hash, int maxDistance, int radius, int block, int key, int fromBit, int flipsLeft,
+                       List<Match> matches) {
+        collect(hash, maxDistance, radius, block, key, matches);
+        if (flipsLeft == 0) {
+            return;
+        }
+        for (int bit = fromBit; bit < BLOCK_BITS; bit++) {
+            probe(hash, maxDistance, radius, block, key ^ (1 << bit), bit + 1, flipsLeft - 1, matches);
+        }
+    }
+
+    /**
+     * 校验一个桶内的候选，调用方需持有读锁
+     * <p>
+     * 同一条目可能在多段都命中，只在第一个命中的段上记录，避免重复
+     */
+    private void collect(long hash, int maxDistance, int radius, int block, int key, List<Match> matches) {
+        int[] bucket = buckets[block][key];
+        int count = bucketSizes[block][key];
+        for (int i = 0; i < count; i++) {
+            int slot = bucket[i];
+            long candidate = hashes[slot];
+            int distance = PerceptualHash.distance(candidate, hash);
+            if (distance > maxDistance || foundInEarlierBlock(candidate, hash, radius, block)) {
+                continue;
+            }
+            matches.add(new Match(ids[slot], candidate, distance));
+        }
+    }
+
+    private boolean foundInEarlierBlock(long candidate, long hash, int radius, int block) {
+        for (int earlier = 0; earlier < block; earlier++) {
+            if (Integer.bitCount(blockOf(candidate, earlier) ^ blockOf(hash, earlier)) <= radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查找哈希和ID都相同的条目下标，调用方需持有锁
+     */
+    private int slotOf(long hash, long id) {
+        int key = blockOf(hash, 0);
+        int[] bucket = buckets[0][key];
+        int count = bucketSizes[0][key];
+        for (int i = 0; i < count; i++) {
+            int slot = bucket[i];
+            if (hashes[slot] == hash && ids[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static int blockOf(long hash, int block) {
+        return (int) (hash >>> (block * BLOCK_BITS)) & BLOCK_MASK;
+    }
+
+    /**
+     * 查询结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Match {
+
+        /**
+         * ID
+         */
+        private final long id;
+
+        /**
+         * 匹配到的哈希
+         */
+        private final long hash;
+
+        /**
+         * 与查询哈希的汉明距离
+         */
+        private final int distance;
+    }
+}
@@ -0,0 +1,369 @@
+package com.wallpaper.management.util;
+
+import lombok.Data;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * 图片编码工具类
+ * <p>
+ * JPEG显式指定质量、色度抽样，并开启渐进式和优化哈夫曼表；PNG指定压缩级别，
+ * 不超过256色的图片转为调色板图，完全不透明的图片去掉透明通道。
+ * 两种格式都不写入可选的元数据块，其他格式仍按ImageIO默认参数写出。
+ */
+public final class ImageEncoder {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    /**
+     * 调色板的最大颜色数
+     */
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private ImageEncoder() {
+    }
+
+    /**
+     * 色度抽样方式
+     */
+    public enum ChromaSubsampling {
+
+        /**
+         * 不抽样，色彩边缘最清晰，体积最大
+         */
+        S444(1, 1),
+
+        /**
+         * 水平方向2:1抽样
+         */
+        S422(2, 1),
+
+        /**
+         * 水平、垂直方向都2:1抽样，照片类图片几乎看不出差别
+         */
+        S420(2, 2);
+
+        /**
+         * 亮度分量的水平采样因子
+         */
+        private final int horizontal;
+
+        /**
+         * 亮度分量的垂直采样因子
+         */
+        private final int vertical;
+
+        ChromaSubsampling(int horizontal, int vertical) {
+            this.horizontal = horizontal;
+            this.vertical = vertical;
+        }
+
+        /**
+         * 按配置值查找抽样方式
+         *
+         * @param value 配置值，如 420、4:2:0
+         * @return 抽样方式
+         */
+        public static ChromaSubsampling of(String value) {
+            String key = value == null ? "" : value.replace(":", "").trim();
+            for (ChromaSubsampling subsampling : values()) {
+                if (subsampling.name().substring(1).equals(key)) {
+                    return subsampling;
+                }
+            }
+            throw new IllegalArgumentException("不支持的色度抽样方式: " + value);
+        }
+    }
+
+    /**
+     * 编码参数
+     */
+    @Data
+    public static class Options {
+
+        /**
+         * JPEG质量（0-1）
+         */
+        private float jpegQuality = 0.75F;
+
+        /**
+         * 是否写出渐进式JPEG
+         */
+        private boolean jpegProgressive = true;
+
+        /**
+         * 是否按图片内容计算哈夫曼表（渐进式JPEG总是计算）
+         */
+        private boolean jpegOptimizeHuffman = true;
+
+        /**
+         * JPEG色度抽样方式
+         */
+        private ChromaSubsampling chromaSubsampling = ChromaSubsampling.S420;
+
+        /**
+         * PNG压缩级别（0-9）
+         */
+        private int pngCompressionLevel = 9;
+
+        /**
+         * PNG是否尝试转为调色板图、去掉不需要的透明通道
+         */
+        private boolean pngReduceColors = true;
+
+        /**
+         * 是否去掉可选的元数据块（JPEG的JFIF头）
+         */
+        private boolean stripMetadata = true;
+
+        /**
+         * 编码参数的摘要，参数不同时输出的文件内容不同，可用于区分缓存文件
+         *
+         * @return 8位十六进制字符串
+         */
+        public String fingerprint() {
+            return String.format("%08x", toString().hashCode());
+        }
+    }
+
+    /**
+     * 按格式写出图片
+     *
+     * @param image   图片
+     * @param format  图片格式（文件后缀）
+     * @param file    目标文件，已存在时覆盖
+     * @param options 编码参数
+     * @throws IOException 写出失败或没有该格式的编码器
+     */
+    public static void write(BufferedImage image, String format, File file, Options options) throws IOException {
+        String name = format.toLowerCase(Locale.ROOT);
+        if ("jpg".equals(name) || "jpeg".equals(name)) {
+            writeJpeg(image, file, options);
+        } else if ("png".equals(name)) {
+            writePng(image, file, options);
+        } else if (!ImageIO.write(image, format, file)) {
+            throw new IOException("不支持写出的图片格式: " + format);
+        }
+    }
+
+    private static void writeJpeg(BufferedImage image, File file, Options options) throws IOException {
+        BufferedImage rgb = toOpaque(image);
+        ImageWriter writer = writerFor("jpeg");
+        try {
+            JPEGImageWriteParam param = (JPEGImageWriteParam) writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(0F, Math.min(1F, options.getJpegQuality())));
+            param.setOptimizeHuffmanTables(options.isJpegOptimizeHuffman());
+            if (options.isJpegProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+
+            IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(rgb), param);
+            Node root = metadata.getAsTree(JPEG_METADATA_FORMAT);
+            setLumaSampling(root, options.getChromaSubsampling());
+            if (options.isStripMetadata()) {
+                removeAll(root, "app0JFIF");
+            }
+            metadata.setFromTree(JPEG_METADATA_FORMAT, root);
+
+            write(writer, new IIOImage(rgb, null, metadata), param, file);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void writePng(BufferedImage image, File file, Options options) throws IOException {
+        BufferedImage output = options.isPngReduceColors() ? reduceColors(image) : image;
+        ImageWriter writer = writerFor("png");
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                int level = Math.max(0, Math.min(9, options.getPngCompressionLevel()));
+                // 编码器按 (int) (9 * (1 - quality)) 换算压缩级别，取区间中点避免浮点误差落到下一级
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(Math.max(0F, (9 - level - 0.5F) / 9));
+            }
+            // 不传元数据时只写出图片必需的数据块
+            write(writer, new IIOImage(output, null, null), param, file);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void write(ImageWriter writer, IIOImage image, ImageWriteParam param, File file) throws IOException {
+        // 文件输出流不会截断已有文件
+        Files.deleteIfExists(file.toPath());
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            if (output == null) {
+                throw new IOException("无法写入文件: " + file);
+            }
+            writer.setOutput(output);
+            writer.write(null, image, param);
+        }
+    }
+
+    private static ImageWriter writerFor(String format) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("不支持写出的图片格式: " + format);
+        }
+        return writers.next();
+    }
+
+    /**
+     * 设置亮度分量的采样因子，色度分量保持1x1，即得到对应的色度抽样；灰度图不处理
+     *
+     * @param root         JPEG元数据树
+     * @param subsampling 色度抽样方式
+     */
+    private static void setLumaSampling(Node root, ChromaSubsampling subsampling) {
+        NodeList components = ((Element) root).getElementsByTagName("componentSpec");
+        if (components.getLength() < 3) {
+            return;
+        }
+        for (int i = 0; i < components.getLength(); i++) {
+            Element component = (Element) components.item(i);
+            component.setAttribute("HsamplingFactor", String.valueOf(i == 0 ? subsampling.horizontal : 1));
+            component.setAttribute("VsamplingFactor", String.valueOf(i == 0 ? subsampling.vertical : 1));
+        }
+    }
+
+    private static void removeAll(Node root, String tagName) {
+        NodeList nodes = ((Element) root).getElementsByTagName(tagName);
+        for (int i = nodes.getLength() - 1; i >= 0; i--) {
+            Node node = nodes.item(i);
+            node.getParentNode().removeChild(node);
+        }
+    }
+
+    /**
+     * JPEG不支持透明通道，带透明通道的图片先铺到白色背景上
+     *
+     * @param image 图片
+     * @return 不带透明通道的图片
+     */
+    private static BufferedImage toOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+
+    /**
+     * 无损缩减颜色：不超过256色时转为位深最小的调色板图，否则完全不透明的图片去掉透明通道
+     *
+     * @param image 图片
+     * @return 缩减后的图片，无法缩减时返回原图
+     */
+    static BufferedImage reduceColors(BufferedImage image) {
+        if (image.getColorModel() instanceof IndexColorModel) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        // 开放寻址哈希表，容量为调色板上限的两倍，超过上限即停止统计
+        int[] table = new int[MAX_PALETTE_SIZE * 2];
+        boolean[] used = new boolean[table.length];
+        int[] paletteIndex = new int[table.length];
+        int[] colors = new int[MAX_PALETTE_SIZE];
+        int colorCount = 0;
+        boolean opaque = true;
+        boolean paletted = true;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                if ((argb >>> 24) != 0xFF) {
+                    opaque = false;
+                }
+                if (!paletted) {
+                    continue;
+                }
+                int slot = (argb * 0x9E3779B9 >>> 23) & (table.length - 1);
+                while (used[slot] && table[slot] != argb) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                if (!used[slot]) {
+                    if (colorCount == MAX_PALETTE_SIZE) {
+                        paletted = false;
+                        continue;
+                    }
+                    used[slot] = true;
+                    table[slot] = argb;
+                    paletteIndex[slot] = colorCount;
+                    colors[colorCount++] = argb;
+                }
+            }
+            if (!paletted && !opaque) {
+                return image;
+            }
+        }
+
+        if (!paletted) {
+            BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                rgb.setRGB(0, y, width, 1, row, 0, width);
+            }
+            return rgb;
+        }
+
+        int bits = colorCount <= 2 ? 1 : colorCount <= 4 ? 2 : colorCount <= 16 ? 4 : 8;
+        byte[] r = new byte[colorCount];
+        byte[] g = new byte[colorCount];
+        byte[] b = new byte[colorCount];
+        byte[] a = new byte[colorCount];
+        for (int i = 0; i < colorCount; i++) {
+            r[i] = (byte) (colors[i] >> 16);
+            g[i] = (byte) (colors[i] >> 8);
+            b[i] = (byte) colors[i];
+            a[i] = (byte) (colors[i] >>> 24);
+        }
+        IndexColorModel model = opaque
+                ? new IndexColorModel(bits, colorCount, r, g, b)
+                : new IndexColorModel(bits, colorCount, r, g, b, a);
+        BufferedImage indexed = new BufferedImage(width, height,
+                bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY, model);
+        WritableRaster raster = indexed.getRaster();
+        int[] indexes = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int slot = (argb * 0x9E3779B9 >>> 23) & (table.length - 1);
+                while (table[slot] != argb) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                indexes[x] = paletteIndex[slot];
+            }
+            raster.setSamples(0, y, width, 1, 0, indexes);
+        }
+        return indexed;
+    }
+}
@@ -0,0 +1,298 @@
+package com.wallpaper.management.util;
+
+import lombok.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 上传文件接收工具类
+ * <p>
+ * 一次读取上传内容：写入目标文件的同时计算SHA-256，并保留文件头用于按魔数识别格式、解析宽高，
+ * 之后的存储只需按摘要重命名，不再重新读取文件。支持JPEG、PNG、GIF和WebP，
+ * 文件头中找不到宽高时（如JPEG的元数据超过文件头长度）才从已写入的文件读取
+ */
+public final class ImageIngest {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 保留的文件头长度，覆盖常见JPEG的EXIF段
+     */
+    private static final int HEADER_SIZE = 64 * 1024;
+
+    private ImageIngest() {
+    }
+
+    /**
+     * 从输入流接收文件
+     * <p>
+     * 超过最大长度时停止读取，返回结果的大小为已读取的字节数（大于最大长度），不识别格式和宽高
+     *
+     * @param input   上传内容
+     * @param target  目标文件，不能已存在
+     * @param maxSize 最大长度（字节）
+     * @return 接收结果
+     * @throws IOException 读写失败
+     */
+    public static Result ingest(InputStream input, File target, long maxSize) throws IOException {
+        try (OutputStream output = Files.newOutputStream(target.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            return read(input, output, target, maxSize);
+        }
+    }
+
+    /**
+     * 读取已接收完整的文件，计算SHA-256并识别格式和宽高
+     *
+     * @param file 文件
+     * @return 接收结果
+     * @throws IOException 读取失败
+     */
+    public static Result scan(File file) throws IOException {
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            return read(input, null, file, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 按魔数识别图片格式
+     *
+     * @param header 文件头
+     * @param length 文件头有效长度
+     * @return 格式（jpg、png、gif、webp），无法识别时为null
+     */
+    public static String sniff(byte[] header, int length) {
+        if (length >= 3 && u8(header, 0) == 0xFF && u8(header, 1) == 0xD8 && u8(header, 2) == 0xFF) {
+            return "jpg";
+        }
+        if (length >= 8 && u8(header, 0) == 0x89 && ascii(header, 1, "PNG") && u8(header, 4) == 0x0D
+                && u8(header, 5) == 0x0A && u8(header, 6) == 0x1A && u8(header, 7) == 0x0A) {
+            return "png";
+        }
+        if (length >= 6 && (ascii(header, 0, "GIF87a") || ascii(header, 0, "GIF89a"))) {
+            return "gif";
+        }
+        if (length >= 12 && ascii(header, 0, "RIFF") && ascii(header, 8, "WEBP")) {
+            return "webp";
+        }
+        return null;
+    }
+
+    /**
+     * 从文件头解析宽高
+     *
+     * @param format 格式，见{@link #sniff(byte[], int)}
+     * @param header 文件头
+     * @param length 文件头有效长度
+     * @return 宽度和高度，文件头中没有完整的尺寸信息时为null
+     */
+    public static int[] parseSize(String format, byte[] header, int length) {
+        int[] size;
+        switch (format) {
+            case "jpg":
+                size = jpegSize(header, length);
+                break;
+            case "png":
+                size = length >= 24 && ascii(header, 12, "IHDR") ? new int[]{s32be(header, 16), s32be(header, 20)} : null;
+                break;
+            case "gif":
+                size = length >= 10 ? new int[]{u16le(header, 6), u16le(header, 8)} : null;
+                break;
+            case "webp":
+                size = webpSize(header, length);
+                break;
+            default:
+                size = null;
+        }
+        return size != null && size[0] > 0 && size[1] > 0 ? size : null;
+    }
+
+    /**
+     * 逐块读取输入流：计算SHA-256、保留文件头，需要时同时写出
+     *
+     * @param input   输入
+     * @param output  输出，为null时只读取
+     * @param file    内容所在的文件
+     * @param maxSize 最大长度（字节）
+     * @return 接收结果
+     * @throws IOException 读写失败
+     */
+    private static Result read(InputStream input, OutputStream output, File file, long maxSize) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] header = new byte[HEADER_SIZE];
+        int headerLength = 0;
+        long size = 0;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            size += read;
+            if (size > maxSize) {
+                break;
+            }
+            if (headerLength < HEADER_SIZE) {
+                int copy = Math.min(read, HEADER_SIZE - headerLength);
+                System.arraycopy(buffer, 0, header, headerLength, copy);
+                headerLength += copy;
+            }
+            digest.update(buffer, 0, read);
+            if (output != null) {
+                output.write(buffer, 0, read);
+            }
+        }
+        Result result = new Result();
+        result.setFile(file);
+        result.setSize(size);
+        if (size <= maxSize) {
+            complete(result, digest, header, headerLength);
+        }
+        return result;
+    }
+
+    private static void complete(Result result, MessageDigest digest, byte[] header, int headerLength) throws IOException {
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        result.setSha256(hex.toString());
+        String format = sniff(header, headerLength);
+        result.setFormat(format);
+        if (format == null) {
+            return;
+        }
+        int[] size = parseSize(format, header, headerLength);
+        if (size == null) {
+            // 尺寸信息不在文件头范围内，只读取到尺寸所在位置
+            size = ImageUtils.probeSize(result.getFile());
+        }
+        result.setWidth(size[0]);
+        result.setHeight(size[1]);
+    }
+
+    /**
+     * 逐段跳过JPEG的标记段，直到帧头（SOF）
+     */
+    private static int[] jpegSize(byte[] header, int length) {
+        int pos = 2;
+        while (pos + 9 <= length) {
+            if (u8(header, pos) != 0xFF) {
+                return null;
+            }
+            int marker = u8(header, pos + 1);
+            if (marker == 0xFF) {
+                // 填充字节
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                // 没有长度字段的标记
+                pos += 2;
+                continue;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                return new int[]{u16be(header, pos + 7), u16be(header, pos + 5)};
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                return null;
+            }
+            pos += 2 + u16be(header, pos + 2);
+        }
+        return null;
+    }
+
+    private static int[] webpSize(byte[] header, int length) {
+        if (length < 30) {
+            return null;
+        }
+        if (ascii(header, 12, "VP8 ") && u8(header, 23) == 0x9D && u8(header, 24) == 0x01 && u8(header, 25) == 0x2A) {
+            // 有损：关键帧头中的14位宽高
+            return new int[]{u16le(header, 26) & 0x3FFF, u16le(header, 28) & 0x3FFF};
+        }
+        if (ascii(header, 12, "VP8L") && u8(header, 20) == 0x2F) {
+            // 无损：签名后依次为14位的宽度减1和高度减1
+            int bits = u8(header, 21) | u8(header, 22) << 8 | u8(header, 23) << 16 | u8(header, 24) << 24;
+            return new int[]{(bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1};
+        }
+        if (ascii(header, 12, "VP8X")) {
+            // 扩展格式：24位的画布宽度减1和高度减1
+            return new int[]{u24le(header, 24) + 1, u24le(header, 27) + 1};
+        }
+        return null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean ascii(byte[] data, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (data[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int u16be(byte[] data, int offset) {
+        return u8(data, offset) << 8 | u8(data, offset + 1);
+    }
+
+    private static int u16le(byte[] data, int offset) {
+        return u8(data, offset) | u8(data, offset + 1) << 8;
+    }
+
+    private static int u24le(byte[] data, int offset) {
+        return u8(data, offset) | u8(data, offset + 1) << 8 | u8(data, offset + 2) << 16;
+    }
+
+    /**
+     * 读取大端32位整数，超出int范围时为负数，按无效尺寸处理
+     */
+    private static int s32be(byte[] data, int offset) {
+        return u16be(data, offset) << 16 | u16be(data, offset + 2);
+    }
+
+    /**
+     * 接收结果
+     */
+    @Data
+    public static class Result {
+
+        /**
+         * 已写入的文件
+         */
+        private File file;
+
+        /**
+         * 文件大小（字节）
+         */
+        private long size;
+
+        /**
+         * 内容的SHA-256
+         */
+        private String sha256;
+
+        /**
+         * 按魔数识别的格式，无法识别时为null
+         */
+        private String format;
+
+        private int width;
+
+        private int height;
+    }
+}
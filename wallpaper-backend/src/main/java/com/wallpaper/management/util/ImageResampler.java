@@ -0,0 +1,750 @@
+package com.wallpaper.management.util;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.IntStream;
+
+/**
+ * 可分离卷积图片重采样器
+ * <p>
+ * 按行读取源图（int像素的布局直接读取，其他布局按16行的条带转换），不复制整张图，
+ * 拆成各颜色通道的int数组后先纵向、后横向各做一次一维卷积，权重为14位定点整数，支持Lanczos3和Mitchell滤波器。
+ * 纵向卷积在整行上逐元素累加，可被JIT向量化，并且先把行数缩到目标高度，计算量大的横向卷积只处理目标行；
+ * 源行在一个按滤波器抽头数大小的环形缓存中只读取、拆分一次，不生成整张中间图。
+ * 缩小倍数较大时读取源行的同时按2的幂次做盒式平均，再用滤波器完成剩余的[2, 4)倍缩放，控制卷积核的宽度；
+ * 带透明通道的图片按预乘透明度计算，避免透明像素的颜色渗到边缘。
+ * 计算量较大时按输出行拆分条带，在专用的ForkJoinPool上并行计算，不占用公共线程池。
+ * <p>
+ * 基准测试见src/jmh，运行方式：mvn -Pbenchmark test-compile exec:exec
+ */
+public final class ImageResampler {
+
+    /**
+     * 计算量（输出像素数乘以滤波器抽头数）低于该值时不拆分并行，避免调度开销超过计算本身
+     */
+    private static final long PARALLEL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * 定点权重的小数位数，权重和为1 << PRECISION_BITS
+     */
+    private static final int PRECISION_BITS = 14;
+
+    /**
+     * 累加器初值，右移时实现四舍五入
+     */
+    private static final int ROUNDING = 1 << (PRECISION_BITS - 1);
+
+    /**
+     * 盒式平均后剩余的缩小倍数仍不低于该值的两倍时才继续减半，滤波器最终处理的缩小倍数落在[2, 4)之间
+     */
+    private static final int MAX_FILTER_RATIO = 2;
+
+    /**
+     * 无法直接读取的布局按条带转换的行数
+     */
+    private static final int STRIP_ROWS = 16;
+
+    /**
+     * 并行的线程数
+     */
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private ImageResampler() {
+    }
+
+    /**
+     * 重采样滤波器
+     */
+    public enum Filter {
+
+        /**
+         * Lanczos窗口sinc（a=3），缩小时最锐利，适合生成缩略图和派生图
+         */
+        LANCZOS3(3) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1e-8) {
+                    return 1;
+                }
+                if (x >= 3) {
+                    return 0;
+                }
+                double px = Math.PI * x;
+                return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+            }
+        },
+
+        /**
+         * Mitchell-Netravali三次滤波（B=C=1/3），振铃较轻，适合放大
+         */
+        MITCHELL(2) {
+            @Override
+            double weight(double x) {
+                final double b = 1.0 / 3;
+                final double c = 1.0 / 3;
+                x = Math.abs(x);
+                double x2 = x * x;
+                double x3 = x2 * x;
+                if (x < 1) {
+                    return ((12 - 9 * b - 6 * c) * x3 + (-18 + 12 * b + 6 * c) * x2 + (6 - 2 * b)) / 6;
+                }
+                if (x < 2) {
+                    return ((-b - 6 * c) * x3 + (6 * b + 30 * c) * x2 + (-12 * b - 48 * c) * x + (8 * b + 24 * c)) / 6;
+                }
+                return 0;
+            }
+        };
+
+        /**
+         * 滤波器半径（源像素数，缩小时按倍数放大）
+         */
+        private final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        /**
+         * 计算距离采样中心x处的权重
+         *
+         * @param x 距离（以滤波器单位计）
+         * @return 权重
+         */
+        abstract double weight(double x);
+    }
+
+    /**
+     * 缩放图片到指定尺寸（不保持宽高比，由调用方计算目标尺寸）
+     *
+     * @param source 源图片
+     * @param width 目标宽度
+     * @param height 目标高度
+     * @param filter 滤波器
+     * @param keepAlpha 是否保留透明通道，源图不透明时忽略
+     * @return 缩放后的图片，保留透明通道时为TYPE_INT_ARGB，否则为TYPE_INT_RGB
+     */
+    public static BufferedImage resize(BufferedImage source, int width, int height, Filter filter, boolean keepAlpha) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("目标尺寸必须大于0: " + width + "x" + height);
+        }
+        Plan plan = new Plan(source.getWidth(), source.getHeight(), width, height, filter,
+                keepAlpha && source.getColorModel().hasAlpha());
+        BufferedImage target = new BufferedImage(width, height, plan.alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] output = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        forEachRows(height, plan.work(), (from, to) -> new Band(plan, RowReader.of(source, plan.alpha), output).run(from, to));
+        return target;
+    }
+
+    /**
+     * 估算一次缩放占用的堆内存：输出图片，加上同时执行的各条带的源行缓存和累加数组
+     * <p>
+     * 不含源图本身；源图不是int像素的布局时每个条带另有{@value #STRIP_ROWS}行的转换缓存，已按最大情况计入
+     *
+     * @param srcWidth 源图宽度
+     * @param srcHeight 源图高度
+     * @param width 目标宽度
+     * @param height 目标高度
+     * @param filter 滤波器
+     * @return 字节数
+     */
+    public static long estimateBytes(int srcWidth, int srcHeight, int width, int height, Filter filter) {
+        Plan plan = new Plan(srcWidth, srcHeight, width, height, filter, true);
+        int bands = plan.work() < PARALLEL_THRESHOLD ? 1 : Math.min(height, PARALLELISM);
+        long band = (long) plan.ringRows() * plan.channels * plan.reducedWidth
+                + 2L * plan.channels * plan.reducedWidth
+                + (long) (plan.channels + STRIP_ROWS + 1) * srcWidth;
+        return 4L * ((long) width * height + band * bands);
+    }
+
+    /**
+     * 一次缩放的参数：盒式平均倍数和两个方向的卷积核
+     */
+    private static class Plan {
+
+        private final boolean alpha;
+
+        private final int channels;
+
+        private final int sourceWidth;
+
+        private final int factorX;
+
+        private final int factorY;
+
+        private final int reducedWidth;
+
+        private final int width;
+
+        private final int height;
+
+        /**
+         * 纵向卷积核，高度不变时为null
+         */
+        private final Kernel vertical;
+
+        /**
+         * 横向卷积核，宽度不变时为null
+         */
+        private final Kernel horizontal;
+
+        Plan(int srcWidth, int srcHeight, int width, int height, Filter filter, boolean alpha) {
+            this.alpha = alpha;
+            this.channels = alpha ? 4 : 3;
+            this.sourceWidth = srcWidth;
+            this.width = width;
+            this.height = height;
+            // 大比例缩小先按2的幂次盒式平均，两个方向分别判断
+            int fx = 1;
+            int rw = srcWidth;
+            while (rw / 2 >= width * MAX_FILTER_RATIO) {
+                rw /= 2;
+                fx *= 2;
+            }
+            int fy = 1;
+            int rh = srcHeight;
+            while (rh / 2 >= height * MAX_FILTER_RATIO) {
+                rh /= 2;
+                fy *= 2;
+            }
+            this.factorX = fx;
+            this.factorY = fy;
+            this.reducedWidth = rw;
+            this.vertical = rh != height ? new Kernel(rh, height, filter) : null;
+            this.horizontal = rw != width ? new Kernel(rw, width, filter) : null;
+        }
+
+        int ringRows() {
+            return vertical != null ? vertical.taps : 1;
+        }
+
+        long work() {
+            long verticalWork = (long) reducedWidth * height * ringRows();
+            long horizontalWork = (long) width * height * (horizontal != null ? horizontal.taps : 1);
+            return verticalWork + horizontalWork;
+        }
+    }
+
+    /**
+     * 一个输出行条带的计算状态，各条带独立读取源行，互不共享可变数据
+     */
+    private static class Band {
+
+        private final Plan plan;
+
+        private final RowReader reader;
+
+        private final int[] output;
+
+        /**
+         * 读取源行的缓冲
+         */
+        private final int[] raw;
+
+        /**
+         * 源行（盒式平均后）的环形缓存：[槽位][通道][列]
+         */
+        private final int[][][] ring;
+
+        /**
+         * 各槽位缓存的行号
+         */
+        private final int[] ringRow;
+
+        /**
+         * 盒式平均时逐列累加源行的缓冲：[通道][源图列]，横向不合并时不使用
+         */
+        private final int[][] wide;
+
+        private final int[][] sums;
+
+        /**
+         * 纵向卷积后截断到0-255的当前行：[通道][列]
+         */
+        private final int[][] row;
+
+        Band(Plan plan, RowReader reader, int[] output) {
+            this.plan = plan;
+            this.reader = reader;
+            this.output = output;
+            this.raw = new int[plan.sourceWidth];
+            this.ring = new int[plan.ringRows()][plan.channels][plan.reducedWidth];
+            this.ringRow = new int[plan.ringRows()];
+            Arrays.fill(ringRow, -1);
+            this.wide = plan.factorX > 1 ? new int[plan.channels][plan.reducedWidth * plan.factorX] : null;
+            this.sums = plan.vertical != null ? new int[plan.channels][plan.reducedWidth] : null;
+            this.row = plan.vertical != null ? new int[plan.channels][plan.reducedWidth] : null;
+        }
+
+        void run(int from, int to) {
+            for (int y = from; y < to; y++) {
+                int[][] line = plan.vertical != null ? filterVertical(y) : load(y);
+                if (plan.horizontal != null) {
+                    filterHorizontal(line, y * plan.width);
+                } else {
+                    store(line, y * plan.width);
+                }
+            }
+        }
+
+        /**
+         * 纵向卷积得到输出行y（宽度为盒式平均后的宽度）
+         */
+        private int[][] filterVertical(int y) {
+            Kernel kernel = plan.vertical;
+            int start = kernel.start[y];
+            int count = kernel.count[y];
+            int w = y * kernel.taps;
+            int width = plan.reducedWidth;
+            for (int[] sum : sums) {
+                Arrays.fill(sum, ROUNDING);
+            }
+            for (int k = 0; k < count; k++) {
+                int weight = kernel.weights[w + k];
+                int[][] src = load(start + k);
+                for (int c = 0; c < plan.channels; c++) {
+                    multiplyAdd(sums[c], src[c], weight, width);
+                }
+            }
+            for (int c = 0; c < plan.channels; c++) {
+                normalize(row[c], sums[c], width);
+            }
+            if (plan.alpha) {
+                for (int c = 0; c < 3; c++) {
+                    limit(row[c], row[3], width);
+                }
+            }
+            return row;
+        }
+
+        /**
+         * 横向卷积并写出一行
+         */
+        private void filterHorizontal(int[][] line, int offset) {
+            Kernel kernel = plan.horizontal;
+            int[] r = line[0];
+            int[] g = line[1];
+            int[] b = line[2];
+            int[] a = plan.alpha ? line[3] : null;
+            for (int x = 0; x < plan.width; x++) {
+                int start = kernel.start[x];
+                int count = kernel.count[x];
+                int w = x * kernel.taps;
+                int sr = ROUNDING;
+                int sg = ROUNDING;
+                int sb = ROUNDING;
+                int sa = ROUNDING;
+                for (int k = 0; k < count; k++) {
+                    int weight = kernel.weights[w + k];
+                    int i = start + k;
+                    sr += r[i] * weight;
+                    sg += g[i] * weight;
+                    sb += b[i] * weight;
+                    if (a != null) {
+                        sa += a[i] * weight;
+                    }
+                }
+                output[offset + x] = pack(clamp(sr), clamp(sg), clamp(sb), a != null ? clamp(sa) : 255, plan.alpha);
+            }
+        }
+
+        private void store(int[][] line, int offset) {
+            for (int x = 0; x < plan.width; x++) {
+                output[offset + x] = pack(line[0][x], line[1][x], line[2][x], plan.alpha ? line[3][x] : 255, plan.alpha);
+            }
+        }
+
+        /**
+         * 取得盒式平均后的第y行，不在缓存中时读取
+         * <p>
+         * 各输出行需要的源行区间单调后移，第y行占用槽位y % 槽位数时淘汰的行不会再被用到
+         */
+        private int[][] load(int y) {
+            int slot = y % ring.length;
+            int[][] planes = ring[slot];
+            if (ringRow[slot] == y) {
+                return planes;
+            }
+            ringRow[slot] = y;
+            int fx = plan.factorX;
+            int fy = plan.factorY;
+            int width = plan.reducedWidth;
+            if (fx == 1 && fy == 1) {
+                reader.read(y, raw);
+                for (int c = 0; c < plan.channels; c++) {
+                    unpack(planes[c], raw, SHIFTS[c], width);
+                }
+                return planes;
+            }
+            // 先把块内的各源行按通道逐列相加，再横向每fx列合并为一列
+            int[][] columns = fx == 1 ? planes : wide;
+            for (int c = 0; c < plan.channels; c++) {
+                Arrays.fill(columns[c], 0);
+            }
+            int sourceWidth = width * fx;
+            for (int dy = 0; dy < fy; dy++) {
+                reader.read(y * fy + dy, raw);
+                for (int c = 0; c < plan.channels; c++) {
+                    accumulate(columns[c], raw, SHIFTS[c], sourceWidth);
+                }
+            }
+            // 块内像素数是2的幂次，移位完成四舍五入的平均
+            int shift = Integer.numberOfTrailingZeros(fx * fy);
+            int half = (fx * fy) >> 1;
+            for (int c = 0; c < plan.channels; c++) {
+                int[] plane = planes[c];
+                if (fx > 1) {
+                    Arrays.fill(plane, 0);
+                    for (int dx = 0; dx < fx; dx++) {
+                        gather(plane, columns[c], dx, fx, width);
+                    }
+                }
+                average(plane, half, shift, width);
+            }
+            return planes;
+        }
+    }
+
+    /**
+     * 各通道在ARGB像素中的位移，依次为R、G、B、A
+     */
+    private static final int[] SHIFTS = {16, 8, 0, 24};
+
+    /**
+     * 取出一个通道
+     * <p>
+     * 以下几个逐元素的循环单独成方法，便于JIT编译为SIMD指令
+     */
+    private static void unpack(int[] plane, int[] pixels, int shift, int width) {
+        for (int x = 0; x < width; x++) {
+            plane[x] = (pixels[x] >>> shift) & 0xFF;
+        }
+    }
+
+    /**
+     * 把一个通道加到逐列的和上
+     */
+    private static void accumulate(int[] sum, int[] pixels, int shift, int width) {
+        for (int x = 0; x < width; x++) {
+            sum[x] += (pixels[x] >>> shift) & 0xFF;
+        }
+    }
+
+    /**
+     * 横向合并：把每fx列中的第offset列加到对应的输出列上
+     */
+    private static void gather(int[] plane, int[] column, int offset, int fx, int width) {
+        for (int x = 0; x < width; x++) {
+            plane[x] += column[x * fx + offset];
+        }
+    }
+
+    /**
+     * 块内像素和除以像素数（2的幂次），四舍五入
+     */
+    private static void average(int[] plane, int half, int shift, int width) {
+        for (int x = 0; x < width; x++) {
+            plane[x] = (plane[x] + half) >> shift;
+        }
+    }
+
+    /**
+     * 加权累加一行
+     */
+    private static void multiplyAdd(int[] sum, int[] plane, int weight, int width) {
+        for (int x = 0; x < width; x++) {
+            sum[x] += plane[x] * weight;
+        }
+    }
+
+    /**
+     * 去掉定点小数位并截断到0-255
+     */
+    private static void normalize(int[] out, int[] sum, int width) {
+        for (int x = 0; x < width; x++) {
+            out[x] = Math.max(0, Math.min(255, sum[x] >> PRECISION_BITS));
+        }
+    }
+
+    /**
+     * 预乘透明度下颜色分量不超过透明度
+     */
+    private static void limit(int[] color, int[] alpha, int width) {
+        for (int x = 0; x < width; x++) {
+            color[x] = Math.min(color[x], alpha[x]);
+        }
+    }
+
+    /**
+     * 打包为输出像素；保留透明通道时由预乘透明度还原为普通ARGB
+     */
+    private static int pack(int r, int g, int b, int a, boolean alpha) {
+        if (alpha && a < 255) {
+            if (a == 0) {
+                return 0;
+            }
+            int half = a >> 1;
+            r = Math.min(255, (r * 255 + half) / a);
+            g = Math.min(255, (g * 255 + half) / a);
+            b = Math.min(255, (b * 255 + half) / a);
+        }
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * 去掉定点小数位并截断到0-255
+     */
+    private static int clamp(int value) {
+        int v = value >> PRECISION_BITS;
+        return v < 0 ? 0 : Math.min(v, 255);
+    }
+
+    /**
+     * 按行条带执行，计算量足够大且有多个核心时在专用线程池上并行
+     *
+     * @param rows 总行数
+     * @param work 估算的计算量
+     * @param body 处理[from, to)行的任务
+     */
+    private static void forEachRows(int rows, long work, RowRange body) {
+        int parallelism = PARALLELISM;
+        if (parallelism < 2 || rows < 2 || work < PARALLEL_THRESHOLD) {
+            body.run(0, rows);
+            return;
+        }
+        // 每个条带要额外读取卷积核覆盖的边界行，条带数只取线程数的两倍
+        int bands = Math.min(rows, parallelism * 2);
+        Pool.INSTANCE.submit(() -> IntStream.range(0, bands).parallel()
+                .forEach(band -> body.run((int) ((long) rows * band / bands), (int) ((long) rows * (band + 1) / bands))))
+                .join();
+    }
+
+    @FunctionalInterface
+    private interface RowRange {
+
+        void run(int from, int to);
+    }
+
+    /**
+     * 重采样专用线程池，按需创建；线程数等于CPU核数，与派生图、缩放等业务线程池的并发数相互独立
+     */
+    private static final class Pool {
+
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool(PARALLELISM, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("image-resample-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * 按行读取源图像素，输出保留透明通道时为预乘透明度的ARGB，否则为不透明的原色
+     */
+    private abstract static class RowReader {
+
+        /**
+         * 读取第y行
+         *
+         * @param y 行号
+         * @param dst 输出，长度不小于图片宽度
+         */
+        abstract void read(int y, int[] dst);
+
+        /**
+         * 按源图布局选择读取方式，每个条带各用一个实例
+         *
+         * @param image 源图
+         * @param alpha 是否保留透明通道
+         * @return 读取器
+         */
+        static RowReader of(BufferedImage image, boolean alpha) {
+            Raster raster = image.getRaster();
+            int type = image.getType();
+            if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                    && raster.getDataBuffer() instanceof DataBufferInt) {
+                return new IntRowReader(image, alpha);
+            }
+            return new StripRowReader(image, alpha);
+        }
+
+        static int premultiply(int a, int r, int g, int b) {
+            return a << 24 | (r * a + 127) / 255 << 16 | (g * a + 127) / 255 << 8 | (b * a + 127) / 255;
+        }
+
+        static int unpremultiply(int p) {
+            int a = p >>> 24;
+            if (a == 0) {
+                return 0xFF000000;
+            }
+            int half = a >> 1;
+            int r = Math.min(255, (((p >> 16) & 0xFF) * 255 + half) / a);
+            int g = Math.min(255, (((p >> 8) & 0xFF) * 255 + half) / a);
+            int b = Math.min(255, ((p & 0xFF) * 255 + half) / a);
+            return 0xFF000000 | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * TYPE_INT_RGB、TYPE_INT_ARGB、TYPE_INT_ARGB_PRE：直接读取像素数组
+     */
+    private static class IntRowReader extends RowReader {
+
+        private final int[] data;
+
+        private final int base;
+
+        private final int stride;
+
+        private final int width;
+
+        private final int type;
+
+        private final boolean alpha;
+
+        IntRowReader(BufferedImage image, boolean alpha) {
+            Raster raster = image.getRaster();
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            this.data = buffer.getData();
+            this.stride = model.getScanlineStride();
+            this.base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+            this.width = image.getWidth();
+            this.type = image.getType();
+            this.alpha = alpha;
+        }
+
+        @Override
+        void read(int y, int[] dst) {
+            int offset = base + y * stride;
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int x = 0; x < width; x++) {
+                    dst[x] = data[offset + x] | 0xFF000000;
+                }
+            } else if (type == BufferedImage.TYPE_INT_ARGB) {
+                for (int x = 0; x < width; x++) {
+                    int p = data[offset + x];
+                    dst[x] = alpha ? premultiply(p >>> 24, (p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF) : p | 0xFF000000;
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    int p = data[offset + x];
+                    dst[x] = alpha ? p : unpremultiply(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * 其他布局（字节交错、调色板、16位等）：用Graphics2D按{@value #STRIP_ROWS}行的条带转换为int像素后读取，
+     * Java2D的转换循环比逐字节读取快
+     */
+    private static class StripRowReader extends RowReader {
+
+        private final BufferedImage image;
+
+        private final BufferedImage strip;
+
+        private final int[] data;
+
+        private final int width;
+
+        private final boolean alpha;
+
+        private int stripStart = -1;
+
+        StripRowReader(BufferedImage image, boolean alpha) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.alpha = alpha;
+            this.strip = new BufferedImage(width, Math.min(STRIP_ROWS, image.getHeight()),
+                    alpha ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+            this.data = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        }
+
+        @Override
+        void read(int y, int[] dst) {
+            if (stripStart < 0 || y < stripStart || y >= stripStart + strip.getHeight()) {
+                stripStart = Math.min(y, image.getHeight() - strip.getHeight());
+                Graphics2D graphics = strip.createGraphics();
+                graphics.setComposite(AlphaComposite.Src);
+                graphics.drawImage(image, 0, -stripStart, null);
+                graphics.dispose();
+            }
+            int offset = (y - stripStart) * width;
+            for (int x = 0; x < width; x++) {
+                int p = data[offset + x];
+                dst[x] = alpha ? p : p | 0xFF000000;
+            }
+        }
+    }
+
+    /**
+     * 一个方向上每个输出像素对应的源像素区间和归一化权重
+     */
+    private static class Kernel {
+
+        private final int[] start;
+
+        private final int[] count;
+
+        private final int[] weights;
+
+        /**
+         * 每个输出像素的权重槽位数
+         */
+        private final int taps;
+
+        Kernel(int srcSize, int dstSize, Filter filter) {
+            double scale = (double) srcSize / dstSize;
+            // 缩小时按倍数拉宽滤波器，覆盖所有源像素；放大时保持原宽度
+            double filterScale = Math.max(1, scale);
+            double support = filter.support * filterScale;
+            this.taps = (int) Math.ceil(support * 2) + 2;
+            this.start = new int[dstSize];
+            this.count = new int[dstSize];
+            this.weights = new int[dstSize * taps];
+
+            double[] raw = new double[taps];
+            for (int i = 0; i < dstSize; i++) {
+                double center = (i + 0.5) * scale;
+                int left = Math.max(0, (int) Math.floor(center - support));
+                int right = Math.min(srcSize, (int) Math.ceil(center + support));
+                int n = Math.min(right - left, taps);
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    raw[k] = filter.weight((left + k + 0.5 - center) / filterScale);
+                    sum += raw[k];
+                }
+                if (sum == 0) {
+                    // 理论上不会发生，退化为最近邻
+                    left = Math.min(srcSize - 1, (int) center);
+                    n = 1;
+                    raw[0] = 1;
+                    sum = 1;
+                }
+                start[i] = left;
+                count[i] = n;
+                // 定点化后的舍入误差补到权重最大的抽头上，保证权重和精确为1，纯色区域不偏色
+                int total = 0;
+                int peak = 0;
+                for (int k = 0; k < n; k++) {
+                    int weight = (int) Math.round(raw[k] / sum * (1 << PRECISION_BITS));
+                    weights[i * taps + k] = weight;
+                    total += weight;
+                    if (weight > weights[i * taps + peak]) {
+                        peak = k;
+                    }
+                }
+                weights[i * taps + peak] += (1 << PRECISION_BITS) - total;
+            }
+        }
+    }
+}
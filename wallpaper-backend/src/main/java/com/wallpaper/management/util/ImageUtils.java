@@ -6,12 +6,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
 
 /**
  * 图片处理工具类
@@ -20,32 +24,21 @@ import java.nio.file.Paths;
 public class ImageUtils {
 
     /**
-     * 生成缩略图
+     * 用已解码的图片生成缩略图，避免重复解码
      *
-     * @param originalPath 原图路径
+     * @param sourceImage 原图或按原图等比缩小的图片
+     * @param thumbnailPath 缩略图相对路径，见{@link #derivativePath}
      * @param uploadPath 上传根目录
      * @param maxWidth 最大宽度
      * @param maxHeight 最大高度
-     * @return 缩略图相对路径
+     * @param options 编码参数
+     * @return 缩略图相对路径，生成失败时返回null
      */
-    public static String generateThumbnail(String originalPath, String uploadPath, int maxWidth, int maxHeight) {
-        if (StrUtil.isBlank(originalPath) || StrUtil.isBlank(uploadPath)) {
-            return null;
-        }
-        
+    public static String generateThumbnail(BufferedImage sourceImage, String thumbnailPath, String uploadPath, int maxWidth, int maxHeight,
+                                           ImageEncoder.Options options) {
         try {
-            // 获取原图绝对路径
-            Path originalFullPath = Paths.get(uploadPath, originalPath);
-            File originalFile = originalFullPath.toFile();
-            if (!originalFile.exists()) {
-                log.error("原图不存在: {}", originalFullPath);
-                return null;
-            }
-            
-            // 读取原图
-            BufferedImage originalImage = ImageIO.read(originalFile);
-            int originWidth = originalImage.getWidth();
-            int originHeight = originalImage.getHeight();
+            int originWidth = sourceImage.getWidth();
+            int originHeight = sourceImage.getHeight();
             
             // 计算缩略图尺寸
             int[] dimensions = calculateDimensions(originWidth, originHeight, maxWidth, maxHeight);
@@ -53,28 +46,11 @@ public class ImageUtils {
             int thumbHeight = dimensions[1];
             
             // 创建缩略图
-            BufferedImage thumbnailImage = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
-            Graphics2D graphics = thumbnailImage.createGraphics();
-            
-            // 设置图像质量
-            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            
-            // 绘制缩略图
-            graphics.drawImage(originalImage, 0, 0, thumbWidth, thumbHeight, null);
-            graphics.dispose();
-            
-            // 生成缩略图路径
-            String suffix = FileUtil.getSuffix(originalPath);
-            String thumbnailPath = originalPath.replace("." + suffix, "_thumb." + suffix);
-            Path thumbnailFullPath = Paths.get(uploadPath, thumbnailPath);
-            
-            // 确保目录存在
-            FileUtil.mkParentDirs(thumbnailFullPath.toFile());
+            BufferedImage thumbnailImage = resize(sourceImage, thumbWidth, thumbHeight, false);
             
             // 保存缩略图
-            ImageIO.write(thumbnailImage, suffix, thumbnailFullPath.toFile());
+            Path thumbnailFullPath = Paths.get(uploadPath, thumbnailPath);
+            writeImage(thumbnailImage, FileUtil.getSuffix(thumbnailPath), thumbnailFullPath.toFile(), options);
             
             return thumbnailPath;
         } catch (IOException e) {
@@ -82,7 +58,195 @@ public class ImageUtils {
             return null;
         }
     }
-    
+
+    /**
+     * 缩放到指定尺寸
+     * <p>
+     * 使用纯Java可分离卷积重采样：缩小时用Lanczos3，放大时用振铃较轻的Mitchell，
+     * 大比例缩小先盒式减半再滤波，见{@link ImageResampler}
+     *
+     * @param source 源图片
+     * @param width 目标宽度
+     * @param height 目标高度
+     * @param keepAlpha 是否保留透明通道（目标格式支持透明时）
+     * @return 缩放后的图片
+     */
+    public static BufferedImage resize(BufferedImage source, int width, int height, boolean keepAlpha) {
+        boolean upscale = width > source.getWidth() || height > source.getHeight();
+        ImageResampler.Filter filter = upscale ? ImageResampler.Filter.MITCHELL : ImageResampler.Filter.LANCZOS3;
+        return ImageResampler.resize(source, width, height, filter, keepAlpha);
+    }
+
+    /**
+     * 估算{@link #resize}占用的堆内存：缩放结果加上重采样的缓冲，不含源图
+     *
+     * @param srcWidth 源图宽度
+     * @param srcHeight 源图高度
+     * @param width 目标宽度
+     * @param height 目标高度
+     * @return 字节数
+     */
+    public static long resizeBytes(int srcWidth, int srcHeight, int width, int height) {
+        boolean upscale = width > srcWidth || height > srcHeight;
+        ImageResampler.Filter filter = upscale ? ImageResampler.Filter.MITCHELL : ImageResampler.Filter.LANCZOS3;
+        return ImageResampler.estimateBytes(srcWidth, srcHeight, width, height, filter);
+    }
+
+    /**
+     * 裁剪图片，返回独立的图片（不与源图共享像素数据）
+     *
+     * @param source 源图片
+     * @param x 左上角横坐标
+     * @param y 左上角纵坐标
+     * @param width 宽度
+     * @param height 高度
+     * @return 裁剪后的图片
+     */
+    public static BufferedImage crop(BufferedImage source, int x, int y, int width, int height) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D graphics = target.createGraphics();
+        graphics.drawImage(source, 0, 0, width, height, x, y, x + width, y + height, null);
+        graphics.dispose();
+        return target;
+    }
+
+    /**
+     * 按格式和编码参数写出图片，见{@link ImageEncoder}
+     *
+     * @param image 图片
+     * @param format 图片格式（文件后缀）
+     * @param file 目标文件
+     * @param options 编码参数
+     * @throws IOException 写出失败或没有该格式的编码器
+     */
+    public static void writeImage(BufferedImage image, String format, File file, ImageEncoder.Options options) throws IOException {
+        FileUtil.mkParentDirs(file);
+        ImageEncoder.write(image, format, file, options);
+    }
+
+    /**
+     * 生成派生图相对路径：原图文件名加版本和后缀标记，如 abc.jpg -> abc_gk2x9f0a1_w640.jpg
+     * <p>
+     * 每次生成使用新的版本，已被引用的文件不会被覆盖，文件名对应的内容不变
+     *
+     * @param originalPath 原图相对路径
+     * @param generation 版本标记，见{@link #newGeneration()}
+     * @param tag 后缀标记
+     * @return 派生图相对路径
+     */
+    public static String derivativePath(String originalPath, String generation, String tag) {
+        String suffix = FileUtil.getSuffix(originalPath);
+        if (StrUtil.isBlank(suffix)) {
+            return originalPath + "_" + generation + "_" + tag;
+        }
+        return StrUtil.subBefore(originalPath, ".", true) + "_" + generation + "_" + tag + "." + suffix;
+    }
+
+    /**
+     * 生成新的派生图版本标记：g加上当前毫秒时间的36进制
+     *
+     * @return 版本标记
+     */
+    public static String newGeneration() {
+        return "g" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    }
+
+    /**
+     * 只读取文件头获取图片宽高，不解码像素
+     *
+     * @param file 图片文件
+     * @return 宽度和高度
+     * @throws IOException 读取失败或不是可识别的图片格式
+     */
+    public static int[] probeSize(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = openReader(input);
+            try {
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 降采样解码图片，解码结果的宽高不小于指定的最小值
+     * <p>
+     * 通过ImageReadParam的源采样只保留每N行、每N列的像素，解码占用的内存随输出尺寸而非原图尺寸增长；
+     * 采样为取点而非平均，之后仍需正常缩放到目标尺寸
+     *
+     * @param file 图片文件
+     * @param minWidth 解码结果的最小宽度，0表示不限
+     * @param minHeight 解码结果的最小高度，0表示不限
+     * @return 解码后的图片
+     * @throws IOException 读取失败或不是可识别的图片格式
+     */
+    public static BufferedImage readSubsampled(File file, int minWidth, int minHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = openReader(input);
+            try {
+                int factor = subsamplingFactor(reader.getWidth(0), reader.getHeight(0), minWidth, minHeight);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (factor > 1) {
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 计算降采样解码结果的宽高，与{@link #readSubsampled(File, int, int)}的解码结果一致
+     *
+     * @param width 原图宽度
+     * @param height 原图高度
+     * @param minWidth 解码结果的最小宽度，0表示不限
+     * @param minHeight 解码结果的最小高度，0表示不限
+     * @return 解码结果的宽度和高度
+     */
+    public static int[] subsampledSize(int width, int height, int minWidth, int minHeight) {
+        int factor = subsamplingFactor(width, height, minWidth, minHeight);
+        return new int[]{(width + factor - 1) / factor, (height + factor - 1) / factor};
+    }
+
+    /**
+     * 计算降采样倍数：保证解码结果不小于最小宽高的最大整数倍
+     *
+     * @param width 原图宽度
+     * @param height 原图高度
+     * @param minWidth 解码结果的最小宽度，0表示不限
+     * @param minHeight 解码结果的最小高度，0表示不限
+     * @return 降采样倍数，不降采样时为1
+     */
+    private static int subsamplingFactor(int width, int height, int minWidth, int minHeight) {
+        int factor = Math.min(minWidth > 0 ? width / minWidth : Integer.MAX_VALUE,
+                minHeight > 0 ? height / minHeight : Integer.MAX_VALUE);
+        return factor > 1 && factor != Integer.MAX_VALUE ? factor : 1;
+    }
+
+    /**
+     * 为图片输入流找到解码器，只读取第一帧，忽略元数据
+     *
+     * @param input 图片输入流
+     * @return 解码器，用完后需调用dispose
+     * @throws IOException 不是可识别的图片格式
+     */
+    private static ImageReader openReader(ImageInputStream input) throws IOException {
+        if (input == null) {
+            throw new IOException("无法读取图片文件");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("无法识别的图片文件");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
     /**
      * 计算缩略图尺寸
      *
@@ -0,0 +1,56 @@
+package com.wallpaper.management.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 感知哈希工具类
+ * <p>
+ * dHash：缩小到9x8灰度图，逐行比较相邻像素的亮度得到64位哈希。
+ * 缩放、重新编码、轻微调色后哈希基本不变，两张图的相似程度用哈希的汉明距离衡量。
+ */
+public final class PerceptualHash {
+
+    private static final int HASH_WIDTH = 8;
+
+    private static final int HASH_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * 计算图片的dHash
+     *
+     * @param image 图片，透明区域按黑色计算
+     * @return 64位哈希
+     */
+    public static long dHash(BufferedImage image) {
+        BufferedImage small = ImageResampler.resize(image, HASH_WIDTH + 1, HASH_HEIGHT, ImageResampler.Filter.LANCZOS3, false);
+        int[] pixels = small.getRGB(0, 0, HASH_WIDTH + 1, HASH_HEIGHT, null, 0, HASH_WIDTH + 1);
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            int row = y * (HASH_WIDTH + 1);
+            for (int x = 0; x < HASH_WIDTH; x++) {
+                hash <<= 1;
+                if (luminance(pixels[row + x]) > luminance(pixels[row + x + 1])) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 计算两个哈希的汉明距离
+     *
+     * @param a 哈希
+     * @param b 哈希
+     * @return 不同的位数（0-64）
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static int luminance(int rgb) {
+        return ((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114;
+    }
+}
@@ -0,0 +1,62 @@
+package com.wallpaper.management.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 雪碧图位置VO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "雪碧图位置")
+public class ImageSpriteVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 雪碧图URL，同一页的壁纸相同
+     */
+    @Schema(description = "雪碧图URL")
+    private String url;
+
+    /**
+     * 格子左上角横坐标（像素）
+     */
+    @Schema(description = "格子左上角横坐标（像素）")
+    private Integer x;
+
+    /**
+     * 格子左上角纵坐标（像素）
+     */
+    @Schema(description = "格子左上角纵坐标（像素）")
+    private Integer y;
+
+    /**
+     * 格子宽度（像素）
+     */
+    @Schema(description = "格子宽度（像素）")
+    private Integer width;
+
+    /**
+     * 格子高度（像素）
+     */
+    @Schema(description = "格子高度（像素）")
+    private Integer height;
+
+    /**
+     * 雪碧图宽度（像素）
+     */
+    @Schema(description = "雪碧图宽度（像素）")
+    private Integer sheetWidth;
+
+    /**
+     * 雪碧图高度（像素）
+     */
+    @Schema(description = "雪碧图高度（像素）")
+    private Integer sheetHeight;
+}
@@ -0,0 +1,38 @@
+package com.wallpaper.management.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 图片尺寸版本VO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "图片尺寸版本")
+public class ImageVariantVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 宽度（像素）
+     */
+    @Schema(description = "宽度（像素）")
+    private Integer width;
+
+    /**
+     * 高度（像素）
+     */
+    @Schema(description = "高度（像素）")
+    private Integer height;
+
+    /**
+     * 访问URL
+     */
+    @Schema(description = "访问URL")
+    private String url;
+}
@@ -0,0 +1,60 @@
+package com.wallpaper.management.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 分片上传会话VO
+ */
+@Data
+@Schema(description = "分片上传会话")
+public class UploadSessionVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 上传ID
+     */
+    @Schema(description = "上传ID")
+    private String uploadId;
+
+    /**
+     * 原始文件名
+     */
+    @Schema(description = "原始文件名")
+    private String fileName;
+
+    /**
+     * 文件大小（字节）
+     */
+    @Schema(description = "文件大小（字节）")
+    private Long fileSize;
+
+    /**
+     * 分片大小（字节），最后一个分片可能更小
+     */
+    @Schema(description = "分片大小（字节），最后一个分片可能更小")
+    private Integer chunkSize;
+
+    /**
+     * 分片数
+     */
+    @Schema(description = "分片数")
+    private Integer chunkCount;
+
+    /**
+     * 已接收的分片序号，断点续传时只需上传其余分片
+     */
+    @Schema(description = "已接收的分片序号，断点续传时只需上传其余分片")
+    private List<Integer> receivedChunks;
+
+    /**
+     * 过期时间，超过后未完成的上传被删除
+     */
+    @Schema(description = "过期时间，超过后未完成的上传被删除")
+    private LocalDateTime expireTime;
+}
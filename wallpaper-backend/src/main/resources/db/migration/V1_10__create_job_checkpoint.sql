@@ -0,0 +1,11 @@
+-- 后台批处理任务的断点，应用重启后从last_id继续
+CREATE TABLE IF NOT EXISTS `wp_job_checkpoint` (
+  `job_name` varchar(64) NOT NULL COMMENT '任务名称',
+  `status` varchar(16) NOT NULL COMMENT '状态：RUNNING运行中 STOPPED已停止 FINISHED已完成 FAILED失败',
+  `last_id` bigint(20) NOT NULL DEFAULT 0 COMMENT '已处理完的最大主键',
+  `processed_count` bigint(20) NOT NULL DEFAULT 0 COMMENT '累计处理条数',
+  `failed_count` bigint(20) NOT NULL DEFAULT 0 COMMENT '累计失败条数',
+  `create_time` datetime DEFAULT NULL COMMENT '本轮开始时间',
+  `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`job_name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='批处理任务断点表';
@@ -0,0 +1,21 @@
+-- 创建文件内容表（按SHA-256去重存储，引用计数）
+CREATE TABLE IF NOT EXISTS `wp_file_blob` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `sha256` char(64) NOT NULL COMMENT '文件内容SHA-256',
+  `file_path` varchar(255) NOT NULL COMMENT '文件相对路径',
+  `thumbnail_path` varchar(255) DEFAULT NULL COMMENT '缩略图相对路径',
+  `file_size` bigint(20) NOT NULL DEFAULT 0 COMMENT '文件大小（字节）',
+  `width` int(11) DEFAULT NULL COMMENT '宽度（像素）',
+  `height` int(11) DEFAULT NULL COMMENT '高度（像素）',
+  `file_type` varchar(20) DEFAULT NULL COMMENT '文件类型',
+  `ref_count` int(11) NOT NULL DEFAULT 0 COMMENT '引用次数',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_sha256` (`sha256`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='文件内容表';
+
+-- 壁纸关联文件内容，历史数据为NULL，仍按file_path直接访问
+ALTER TABLE `wp_wallpaper`
+  ADD COLUMN `blob_id` bigint(20) DEFAULT NULL COMMENT '文件内容ID' AFTER `thumbnail_path`,
+  ADD KEY `idx_blob_id` (`blob_id`);
@@ -0,0 +1,11 @@
+-- 派生图（缩略图等）改为上传后异步生成，记录处理状态
+-- 已有数据在同步流程中已生成缩略图，默认视为已完成
+ALTER TABLE `wp_file_blob`
+  ADD COLUMN `processing_status` tinyint(4) NOT NULL DEFAULT 2 COMMENT '派生图处理状态：0待处理 1处理中 2已完成 3失败' AFTER `ref_count`,
+  ADD COLUMN `processing_attempts` int(11) NOT NULL DEFAULT 0 COMMENT '处理尝试次数' AFTER `processing_status`,
+  ADD COLUMN `next_attempt_time` datetime DEFAULT NULL COMMENT '最早可重试时间' AFTER `processing_attempts`,
+  ADD COLUMN `processing_error` varchar(500) DEFAULT NULL COMMENT '最近一次失败原因' AFTER `next_attempt_time`,
+  ADD KEY `idx_processing` (`processing_status`, `next_attempt_time`);
+
+ALTER TABLE `wp_wallpaper`
+  ADD COLUMN `processing_status` tinyint(4) NOT NULL DEFAULT 2 COMMENT '派生图处理状态：0待处理 1处理中 2已完成 3失败' AFTER `blob_id`;
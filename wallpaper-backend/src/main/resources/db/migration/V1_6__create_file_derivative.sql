@@ -0,0 +1,12 @@
+-- 创建派生图表（按宽度缩放的多尺寸版本，用于响应式srcset）
+CREATE TABLE IF NOT EXISTS `wp_file_derivative` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `blob_id` bigint(20) NOT NULL COMMENT '文件内容ID',
+  `width` int(11) NOT NULL COMMENT '宽度（像素）',
+  `height` int(11) NOT NULL COMMENT '高度（像素）',
+  `file_path` varchar(255) NOT NULL COMMENT '文件相对路径',
+  `file_size` bigint(20) NOT NULL DEFAULT 0 COMMENT '文件大小（字节）',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_blob_width` (`blob_id`, `width`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='派生图表';
@@ -0,0 +1,10 @@
+-- 感知哈希（dHash，64位）用于发现重新编码、缩放后的重复壁纸
+-- 哈希在派生图生成时按文件内容计算一次，再同步到引用它的壁纸
+ALTER TABLE `wp_file_blob`
+  ADD COLUMN `phash` bigint(20) DEFAULT NULL COMMENT '感知哈希（dHash）' AFTER `file_type`;
+
+ALTER TABLE `wp_wallpaper`
+  ADD COLUMN `phash` bigint(20) DEFAULT NULL COMMENT '感知哈希（dHash）' AFTER `processing_status`,
+  ADD COLUMN `duplicate_of` bigint(20) DEFAULT NULL COMMENT '疑似重复的已有壁纸ID' AFTER `phash`,
+  ADD COLUMN `duplicate_distance` tinyint(4) DEFAULT NULL COMMENT '与已有壁纸的哈希汉明距离' AFTER `duplicate_of`,
+  ADD KEY `idx_duplicate_of` (`duplicate_of`);
@@ -0,0 +1,15 @@
+-- 主色调色板：按占比排序的几种主色，如 "#1a2b3c:35,#ddeeff:20"
+ALTER TABLE `wp_file_blob`
+  ADD COLUMN `palette` varchar(64) DEFAULT NULL COMMENT '主色调色板' AFTER `phash`;
+
+ALTER TABLE `wp_wallpaper`
+  ADD COLUMN `palette` varchar(64) DEFAULT NULL COMMENT '主色调色板' AFTER `duplicate_distance`;
+
+-- 壁纸颜色分类，按颜色筛选时走(bucket, ratio)索引，不扫描壁纸表
+CREATE TABLE IF NOT EXISTS `wp_wallpaper_color` (
+  `wallpaper_id` bigint(20) NOT NULL COMMENT '壁纸ID',
+  `bucket` tinyint(4) NOT NULL COMMENT '颜色分类：1红 2橙 3黄 4绿 5青 6蓝 7紫 8粉 9棕 10黑 11白 12灰',
+  `ratio` tinyint(4) NOT NULL COMMENT '该分类颜色占画面的百分比',
+  PRIMARY KEY (`wallpaper_id`, `bucket`),
+  KEY `idx_bucket_ratio` (`bucket`, `ratio`, `wallpaper_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='壁纸颜色分类表';
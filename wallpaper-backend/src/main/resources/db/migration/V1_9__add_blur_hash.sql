@@ -0,0 +1,6 @@
+-- BlurHash占位图：4x3（竖图3x4）个余弦分量，编码后28个字符
+ALTER TABLE `wp_file_blob`
+  ADD COLUMN `blur_hash` varchar(32) DEFAULT NULL COMMENT 'BlurHash占位图' AFTER `palette`;
+
+ALTER TABLE `wp_wallpaper`
+  ADD COLUMN `blur_hash` varchar(32) DEFAULT NULL COMMENT 'BlurHash占位图' AFTER `palette`;